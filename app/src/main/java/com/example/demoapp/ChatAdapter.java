@@ -11,161 +11,261 @@ import android.view.LayoutInflater;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.navigation.NavOptions;
 import androidx.navigation.Navigation;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.demoapp.ui.Chat.ChatPayload;
+
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.ChatViewHolder> {
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Rows are submitted as whole lists and diffed on a background thread. Rows are
+ * matched by instance: a message changed in place must be announced with
+ * {@link #notifyItemChanged(int)}, as the diff cannot see the change.
+ */
+public class ChatAdapter extends ListAdapter<ChatMessage, ChatAdapter.ChatViewHolder> {
+
+    private static final DiffUtil.ItemCallback<ChatMessage> SAME_INSTANCE =
+            new DiffUtil.ItemCallback<ChatMessage>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ChatMessage a, @NonNull ChatMessage b) {
+                    return a == b;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ChatMessage a, @NonNull ChatMessage b) {
+                    return a == b;
+                }
+            };
 
-    private final List<ChatMessage> chatList;
-    private static final Pattern OSM_PATTERN = Pattern.compile(
-            "(https://www\\.openstreetmap\\.org/\\?mlat=([-+]?\\d*\\.\\d+)&mlon=([-+]?\\d*\\.\\d+))"
-    );
-    private static final Pattern COORD_PATTERN = Pattern.compile(
-            "\"latitude\":([-+]?\\d*\\.\\d+),\"longitude\":([-+]?\\d*\\.\\d+)"
-    );
+    private final ChatRowCache rowCache = new ChatRowCache(ChatRowCache.DEFAULT_MAX_ENTRIES);
+    // Text metrics of each row layout, captured from the first inflated row of that type
+    private final PrecomputedTextCompat.Params[] rowParams = new PrecomputedTextCompat.Params[2];
 
-    public ChatAdapter(List<ChatMessage> chatList) {
-        this.chatList = chatList;
+    public ChatAdapter() {
+        super(SAME_INSTANCE);
+        // Render rows ahead of their first bind whenever messages arrive or change
+        registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                prefetch(0, getItemCount());
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                prefetch(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                prefetch(positionStart, itemCount);
+            }
+        });
     }
 
     @NonNull @Override
     public ChatViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         int layout = viewType == 0 ? R.layout.item_message_sent : R.layout.item_message_received;
         View view = LayoutInflater.from(parent.getContext()).inflate(layout, parent, false);
-        return new ChatViewHolder(view);
+        ChatViewHolder holder = new ChatViewHolder(view);
+        holder.messageText.setMovementMethod(LinkMovementMethod.getInstance());
+        holder.params = TextViewCompat.getTextMetricsParams(holder.messageText);
+        synchronized (rowParams) {
+            if (rowParams[viewType] == null) rowParams[viewType] = holder.params;
+        }
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull ChatViewHolder holder, int position) {
-        ChatMessage chat = chatList.get(position);
-        String originalText = chat.getMessage();
-        String formattedText = formatMessage(originalText, chat);
+        ChatMessage message = getItem(position);
+        ChatRowCache.Entry cached = rowCache.get(message);
+        if (cached == null) {
+            // Not prefetched yet, or changed since: render on the spot and lay it out in the background
+            ChatRowCache.Source source = new ChatRowCache.Source(message);
+            SpannableString text = format(message);
+            rowCache.put(message, source, text);
+            holder.messageText.setText(text);
+            prefetch(position, 1);
+        } else if (cached.text instanceof PrecomputedTextCompat
+                && ((PrecomputedTextCompat) cached.text).getParams().equals(holder.params)) {
+            TextViewCompat.setPrecomputedText(holder.messageText, (PrecomputedTextCompat) cached.text);
+        } else {
+            holder.messageText.setText(cached.text);
+        }
+    }
 
-        SpannableString spannable = new SpannableString(formattedText);
+    /**
+     * Formats and lays out the given rows on a background thread. The messages and
+     * what they render from are captured here on the main thread; a message changed
+     * while its row is being built is simply re-rendered on its next bind.
+     */
+    private void prefetch(int positionStart, int itemCount) {
+        List<ChatMessage> rows = getCurrentList();
+        int end = Math.min(positionStart + itemCount, rows.size());
+        if (positionStart >= end) return;
+        List<ChatMessage> batch = new ArrayList<>(rows.subList(positionStart, end));
+        ChatRowCache.Source[] sources = new ChatRowCache.Source[batch.size()];
+        for (int i = 0; i < sources.length; i++) sources[i] = new ChatRowCache.Source(batch.get(i));
 
-        // Make coordinates clickable
-        makeCoordinatesClickable(spannable, formattedText);
+        Schedulers.computation().scheduleDirect(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                ChatMessage message = batch.get(i);
+                if (!sources[i].matches(message) || rowCache.get(message) != null) continue;
+                rowCache.put(message, sources[i], render(message));
+            }
+        });
+    }
 
-        holder.messageText.setText(spannable);
-        holder.messageText.setMovementMethod(LinkMovementMethod.getInstance());
+    private CharSequence render(ChatMessage message) {
+        SpannableString text = format(message);
+        PrecomputedTextCompat.Params params;
+        synchronized (rowParams) {
+            params = rowParams[message.isSent() ? 0 : 1];
+        }
+        return params != null ? PrecomputedTextCompat.create(text, params) : text;
     }
 
-    private String formatMessage(String originalText, ChatMessage chat) {
+    /**
+     * Builds the row text from fields parsed when the message was received or created.
+     * The location span is placed where the coordinates are appended, so no text
+     * scanning is needed.
+     */
+    private static SpannableString format(ChatMessage chat) {
         StringBuilder formatted = new StringBuilder();
+        ChatPayload payload = chat.getPayload();
+        int coordStart = -1;
+        int coordEnd = -1;
 
-        // Extract information from JSON if it's a JSON message
-        if (originalText.startsWith("{") && originalText.endsWith("}")) {
-            try {
-                // Parse JSON to extract components
-                String senderMac = extractValue(originalText, "sender_mac");
-                String message = extractValue(originalText, "message");
-                String latitude = extractValue(originalText, "latitude");
-                String longitude = extractValue(originalText, "longitude");
-                String groupId = extractValue(originalText, "group_id");
-                String type = extractValue(originalText, "type");
-
-                // Build formatted message
-                if (senderMac != null && !senderMac.equals("SELF")) {
-                    formatted.append("From: ").append(chat.getSenderName()).append("\n");
-                }
+        if (payload != null) {
+            String senderMac = payload.getSenderMac();
+            if (senderMac != null && !senderMac.equals("SELF")) {
+                formatted.append("From: ").append(chat.getSenderName()).append("\n");
+            }
 
-                if (groupId != null && !groupId.isEmpty()) {
-                    formatted.append("To: Group ").append(groupId).append("\n");
-                } else {
-                    formatted.append("To: All\n");
-                }
+            String groupId = payload.getGroupId();
+            if (groupId != null && !groupId.isEmpty()) {
+                formatted.append("To: Group ").append(groupId).append("\n");
+            } else {
+                formatted.append("To: All\n");
+            }
 
-                if (latitude != null && longitude != null &&
-                        !latitude.equals("null") && !longitude.equals("null")) {
-                    formatted.append("Location: ").append(latitude).append(", ").append(longitude).append("\n");
-                }
+            if (payload.hasLocation()) {
+                formatted.append("Location: ");
+                coordStart = formatted.length();
+                formatted.append(payload.getLatitude()).append(", ").append(payload.getLongitude());
+                coordEnd = formatted.length();
+                formatted.append("\n");
+            }
 
-                if (message != null && !message.isEmpty()) {
-                    formatted.append("Message: ").append(message);
-                } else if (type != null) {
-                    // Handle system messages
-                    switch (type) {
-                        case "group_create":
-                            formatted.append("System: Group created");
-                            break;
-                        case "group_join":
-                            formatted.append("System: Device joined");
-                            break;
-                        case "group_invite":
-                            formatted.append("System: Invitation sent");
-                            break;
-                        default:
-                            formatted.append("System: ").append(type);
-                    }
+            String text = payload.getText();
+            if (text != null && !text.isEmpty()) {
+                formatted.append("Message: ").append(text);
+            } else {
+                // Handle system messages
+                switch (payload.getType()) {
+                    case ChatPayload.TYPE_CHAT:
+                        break;
+                    case ChatPayload.TYPE_GROUP_CREATE:
+                        formatted.append("System: Group created");
+                        break;
+                    case ChatPayload.TYPE_GROUP_JOIN:
+                        formatted.append("System: Device joined");
+                        break;
+                    case ChatPayload.TYPE_GROUP_INVITE:
+                        formatted.append("System: Invitation sent");
+                        break;
+                    default:
+                        formatted.append("System: ").append(payload.getType());
                 }
-
-            } catch (Exception e) {
-                // If JSON parsing fails, fall back to original text
-                formatted.append(originalText);
             }
+        } else if (chat.isGroupMessage() && !chat.isSent()) {
+            // For non-protocol messages, add sender info for group messages
+            formatted.append("From: ").append(chat.getSenderName()).append("\n");
+            formatted.append("To: Group ").append(chat.getGroupId()).append("\n");
+            formatted.append(chat.getMessage());
         } else {
-            // For non-JSON messages, use the original format but add sender info for group messages
-            if (chat.isGroupMessage() && !chat.isSent()) {
-                formatted.append("From: ").append(chat.getSenderName()).append("\n");
-                formatted.append("To: Group ").append(chat.getGroupId()).append("\n");
-                formatted.append(originalText);
-            } else {
-                formatted.append(originalText);
-            }
+            formatted.append(chat.getMessage());
         }
 
-        return formatted.toString();
-    }
+        String error = chat.getDeliveryError();
+        switch (chat.getDeliveryState()) {
+            case ChatMessage.DELIVERY_QUEUED:
+                formatted.append("\nQueued");
+                break;
+            case ChatMessage.DELIVERY_SENT:
+                formatted.append("\nSent");
+                break;
+            case ChatMessage.DELIVERY_DELIVERED:
+                formatted.append("\nDelivered");
+                break;
+            case ChatMessage.DELIVERY_FAILED:
+                formatted.append("\nFailed");
+                break;
+            default:
+                // Rows stored before delivery states existed only have the error
+                if (error != null) formatted.append(" (couldn't send: ").append(error).append(")");
+                error = null;
+        }
+        if (error != null) formatted.append(" (").append(error).append(")");
 
-    private String extractValue(String json, String key) {
-        Pattern pattern = Pattern.compile("\"" + key + "\":\"?([^\",}]+)\"?,?");
-        Matcher matcher = pattern.matcher(json);
-        if (matcher.find()) {
-            return matcher.group(1).replace("\"", "");
+        SpannableString spannable = new SpannableString(formatted);
+        if (coordStart >= 0) {
+            spannable.setSpan(new MapLinkSpan(payload.getLatitude(), payload.getLongitude()),
+                    coordStart, coordEnd, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
-        return null;
+        return spannable;
     }
 
-    private void makeCoordinatesClickable(SpannableString spannable, String text) {
-        // Look for coordinate patterns like "12.3456, 78.9012"
-        Pattern coordPattern = Pattern.compile("(\\d+\\.\\d+),\\s*(\\d+\\.\\d+)");
-        Matcher matcher = coordPattern.matcher(text);
-
-        while (matcher.find()) {
-            final double lat = Double.parseDouble(matcher.group(1));
-            final double lon = Double.parseDouble(matcher.group(2));
-
-            spannable.setSpan(new ClickableSpan() {
-                @Override public void onClick(@NonNull @NotNull View widget) {
-                    Bundle args = new Bundle();
-                    args.putDouble("lat", lat);
-                    args.putDouble("lon", lon);
-                    Navigation.findNavController(widget)
-                            .navigate(R.id.action_chatFragment_to_mapFragment, args);
-                }
-            }, matcher.start(), matcher.end(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    /**
+     * Opens the map at a message's coordinates. The nav graph declares them as floats,
+     * about a metre of precision, which is plenty for centering the map. A map already
+     * on the back stack is replaced, so repeated taps don't pile up map screens.
+     */
+    private static final class MapLinkSpan extends ClickableSpan {
+        private static final NavOptions SINGLE_MAP = new NavOptions.Builder()
+                .setLaunchSingleTop(true)
+                .setPopUpTo(R.id.navigation_map, true)
+                .build();
+
+        private final double lat;
+        private final double lon;
+
+        MapLinkSpan(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
         }
-    }
 
-    @Override
-    public int getItemCount() {
-        return chatList.size();
+        @Override
+        public void onClick(@NonNull @NotNull View widget) {
+            Bundle args = new Bundle();
+            args.putFloat("lat", (float) lat);
+            args.putFloat("lon", (float) lon);
+            Navigation.findNavController(widget)
+                    .navigate(R.id.action_chatFragment_to_mapFragment, args, SINGLE_MAP);
+        }
     }
 
     @Override
     public int getItemViewType(int pos) {
-        ChatMessage message = chatList.get(pos);
+        ChatMessage message = getItem(pos);
         return message.isSent() ? 0 : 1;
     }
 
     static class ChatViewHolder extends RecyclerView.ViewHolder {
         TextView messageText;
+        @Nullable PrecomputedTextCompat.Params params;
 
         ChatViewHolder(View itemView) {
             super(itemView);
@@ -1,12 +1,32 @@
 package com.example.demoapp;
 
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ui.Chat.ChatPayload;
+
 public class ChatMessage {
+    // Delivery states of a message this device sent; received messages stay at NONE
+    public static final int DELIVERY_NONE = 0;
+    public static final int DELIVERY_QUEUED = 1;
+    public static final int DELIVERY_SENT = 2;
+    public static final int DELIVERY_DELIVERED = 3;
+    public static final int DELIVERY_FAILED = 4;
+
     private String message;
     private boolean isSent;
     private String senderName;
     private String senderMac;
     private boolean isGroupMessage;
     private String groupId;
+    // Row id in the chat history store, -1 until stored; set on the store's thread
+    private volatile long id = -1;
+    private long timestamp;
+    // Parsed protocol message, or null for system notes and unparseable text
+    @Nullable private final ChatPayload payload;
+    @Nullable private String deliveryError;
+    // Links the row to its outbox entries across peers and restarts; 0 if not sent by us
+    private long deliveryTag;
+    private int deliveryState = DELIVERY_NONE;
 
     // Constructor for simple messages (backward compatibility)
     public ChatMessage(String message, boolean isSentByUser) {
@@ -16,17 +36,27 @@ public class ChatMessage {
         this.senderMac = isSentByUser ? "SELF" : "UNKNOWN";
         this.isGroupMessage = false;
         this.groupId = null;
+        this.timestamp = System.currentTimeMillis();
+        this.payload = null;
     }
 
-    // Full constructor with all fields
     public ChatMessage(String message, boolean isSent, String senderName,
                        String senderMac, boolean isGroupMessage, String groupId) {
+        this(message, isSent, senderName, senderMac, isGroupMessage, groupId, null);
+    }
+
+    // Full constructor with all fields
+    public ChatMessage(String message, boolean isSent, String senderName,
+                       String senderMac, boolean isGroupMessage, String groupId,
+                       @Nullable ChatPayload payload) {
         this.message = message;
         this.isSent = isSent;
         this.senderName = senderName;
         this.senderMac = senderMac;
         this.isGroupMessage = isGroupMessage;
         this.groupId = groupId;
+        this.timestamp = System.currentTimeMillis();
+        this.payload = payload;
     }
 
     // Getters
@@ -59,6 +89,32 @@ public class ChatMessage {
         return groupId;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Nullable
+    public ChatPayload getPayload() {
+        return payload;
+    }
+
+    @Nullable
+    public String getDeliveryError() {
+        return deliveryError;
+    }
+
+    public long getDeliveryTag() {
+        return deliveryTag;
+    }
+
+    public int getDeliveryState() {
+        return deliveryState;
+    }
+
     // Setters
     public void setMessage(String message) {
         this.message = message;
@@ -83,4 +139,24 @@ public class ChatMessage {
     public void setGroupId(String groupId) {
         this.groupId = groupId;
     }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public void setDeliveryError(@Nullable String deliveryError) {
+        this.deliveryError = deliveryError;
+    }
+
+    public void setDeliveryTag(long deliveryTag) {
+        this.deliveryTag = deliveryTag;
+    }
+
+    public void setDeliveryState(int deliveryState) {
+        this.deliveryState = deliveryState;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.example.demoapp;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+
+/**
+ * Rendered row text for {@link ChatAdapter}, most recently used first.
+ *
+ * Stored messages are keyed by their store id, so a row reloaded as a new
+ * {@link ChatMessage} instance when the history is paged back in still hits; a message
+ * whose insert has not run yet is keyed by its instance until then. Each entry
+ * remembers the {@link Source} it was rendered from, the fields that still change
+ * once a row is stored, so a message changed after rendering (a delivery error, an
+ * edited text) misses instead of showing stale text.
+ *
+ * Safe to use from any thread; {@link LruCache} synchronizes internally.
+ */
+class ChatRowCache {
+
+    /** Enough for the whole paged history window plus some headroom. */
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /** What a row's text is rendered from; capture it before rendering. */
+    static final class Source {
+        final String message;
+        final int deliveryState;
+        @Nullable final String deliveryError;
+
+        Source(ChatMessage message) {
+            this.message = message.getMessage();
+            this.deliveryState = message.getDeliveryState();
+            this.deliveryError = message.getDeliveryError();
+        }
+
+        boolean matches(ChatMessage m) {
+            return deliveryState == m.getDeliveryState()
+                    && equal(message, m.getMessage())
+                    && equal(deliveryError, m.getDeliveryError());
+        }
+
+        private static boolean equal(@Nullable String a, @Nullable String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    static final class Entry {
+        final Source source;
+        /** Either a plain Spannable or a {@link PrecomputedTextCompat} of it. */
+        final CharSequence text;
+
+        Entry(Source source, CharSequence text) {
+            this.source = source;
+            this.text = text;
+        }
+    }
+
+    private final LruCache<Object, Entry> entries;
+
+    ChatRowCache(int maxEntries) {
+        entries = new LruCache<>(maxEntries);
+    }
+
+    /** Returns the entry rendered from the message as it is now, or null. */
+    @Nullable
+    Entry get(ChatMessage message) {
+        Entry entry = entries.get(keyOf(message));
+        if (entry != null && entry.source.matches(message)) {
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Stores text rendered from {@code source}. A result that is already stale only
+     * costs a miss on the next lookup.
+     */
+    void put(ChatMessage message, Source source, CharSequence text) {
+        entries.put(keyOf(message), new Entry(source, text));
+    }
+
+    private static Object keyOf(ChatMessage message) {
+        long id = message.getId();
+        return id >= 0 ? (Object) id : message;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.demoapp.ble;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.polidea.rxandroidble3.RxBleClient;
+import com.polidea.rxandroidble3.RxBleConnection;
+import com.polidea.rxandroidble3.RxBleDevice;
+import com.polidea.rxandroidble3.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/**
+ * Owns the process' {@link RxBleClient} and its GATT connections, so links survive
+ * fragments being destroyed on navigation or configuration changes.
+ *
+ * Each device has one shared connection, opened by its first subscriber, with the
+ * MTU negotiated once. It closes {@link #LINGER_MS} after its last subscriber leaves,
+ * which covers a screen being recreated. A screen that wants a link to stay up while
+ * it is not showing {@link #hold}s it under an owner key and {@link #release}s it
+ * when the user disconnects. The held links are what keeps several peers
+ * connected at once.
+ *
+ * While anyone subscribes, a dropped or failed link is retried according to
+ * {@link ReconnectPolicy}; every successful (re)connection is emitted as a new
+ * {@link BleLink}, so subscribers restore their notifications on each one.
+ */
+public final class BleConnectionManager {
+
+    private static final String TAG = "BleConnectionManager";
+    /** How long an unused connection stays open before it is closed. */
+    public static final long LINGER_MS = 5000;
+
+    private static BleConnectionManager instance;
+
+    private final RxBleClient client;
+    private final ReconnectPolicy policy = new ReconnectPolicy();
+    private final Map<String, Observable<BleLink>> links = new HashMap<>();
+    private final Map<String, LinkMetrics> metrics = new HashMap<>();
+    // Owner key -> held device -> the subscription keeping it open
+    private final Map<String, Map<String, Disposable>> holds = new HashMap<>();
+
+    private BleConnectionManager(Context context) {
+        client = RxBleClient.create(context);
+    }
+
+    public static synchronized BleConnectionManager get(Context context) {
+        if (instance == null) instance = new BleConnectionManager(context.getApplicationContext());
+        return instance;
+    }
+
+    public RxBleClient client() {
+        return client;
+    }
+
+    /**
+     * The shared link to {@code mac}. Every subscriber gets the same connection, and a
+     * new one after each reconnect; the stream does not end when the link drops.
+     */
+    public synchronized Observable<BleLink> link(String mac) {
+        Observable<BleLink> shared = links.get(mac);
+        if (shared == null) {
+            shared = reconnecting(client.getBleDevice(mac), metrics(mac))
+                    .replay(1)
+                    .refCount(LINGER_MS, TimeUnit.MILLISECONDS);
+            links.put(mac, shared);
+        }
+        return shared;
+    }
+
+    public synchronized LinkMetrics metrics(String mac) {
+        LinkMetrics m = metrics.get(mac);
+        if (m == null) {
+            m = new LinkMetrics();
+            metrics.put(mac, m);
+        }
+        return m;
+    }
+
+    private Observable<BleLink> reconnecting(RxBleDevice device, LinkMetrics linkMetrics) {
+        String mac = device.getMacAddress();
+        return Observable.defer(() -> {
+            // Attempts since the link was last up; reset on every successful connect
+            AtomicInteger attempt = new AtomicInteger();
+            AtomicBoolean wasConnected = new AtomicBoolean();
+            return Observable.defer(() -> {
+                        boolean autoConnect = policy.useAutoConnect(attempt.getAndIncrement());
+                        wasConnected.set(false);
+                        linkMetrics.attemptStarted();
+                        Observable<RxBleConnection> connection = autoConnect
+                                ? device.establishConnection(true)
+                                : device.establishConnection(false, new Timeout(
+                                        ReconnectPolicy.DIRECT_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                        return connection.flatMapSingle(conn -> BleMtu.negotiate(conn)
+                                .map(mtu -> new BleLink(mac, conn, mtu)));
+                    })
+                    .doOnNext(link -> {
+                        attempt.set(0);
+                        wasConnected.set(true);
+                        linkMetrics.connected(System.currentTimeMillis());
+                        Log.d(TAG, mac + " up, mtu " + link.mtu + "; " + linkMetrics.stats());
+                    })
+                    .retryWhen(errors -> errors.flatMap(t -> {
+                        linkMetrics.down(System.currentTimeMillis(), wasConnected.get());
+                        long delay = policy.delayMs(Math.max(attempt.get(), 1));
+                        Log.w(TAG, mac + " down (" + t + "), retry in " + delay + " ms");
+                        return Observable.timer(delay, TimeUnit.MILLISECONDS);
+                    }));
+        });
+    }
+
+    /**
+     * Keeps the link to {@code mac} open, and reconnecting, on behalf of {@code owner}.
+     * An owner may hold several devices; holding one twice has no effect.
+     */
+    public synchronized void hold(String owner, String mac) {
+        Map<String, Disposable> owned = holds.get(owner);
+        if (owned == null) {
+            owned = new LinkedHashMap<>();
+            holds.put(owner, owned);
+        }
+        if (owned.containsKey(mac)) return;
+        Disposable subscription = link(mac).subscribe(link -> { }, t -> {
+            Log.w(TAG, "held link to " + mac + " failed", t);
+            release(owner, mac);
+        });
+        // An immediate error has already run the handler above
+        if (!subscription.isDisposed()) owned.put(mac, subscription);
+    }
+
+    public synchronized void release(String owner, String mac) {
+        Map<String, Disposable> owned = holds.get(owner);
+        if (owned == null) return;
+        Disposable subscription = owned.remove(mac);
+        if (subscription != null) subscription.dispose();
+    }
+
+    public synchronized void releaseAll(String owner) {
+        Map<String, Disposable> owned = holds.remove(owner);
+        if (owned == null) return;
+        for (Disposable subscription : owned.values()) subscription.dispose();
+    }
+
+    /** The devices {@code owner} holds, oldest first; lets a recreated screen reattach. */
+    public synchronized List<String> heldDevices(String owner) {
+        Map<String, Disposable> owned = holds.get(owner);
+        return owned != null ? new ArrayList<>(owned.keySet()) : Collections.<String>emptyList();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demoapp.ble;
+
+/**
+ * Wire layout of one framed chunk on the Nordic UART characteristics.
+ *
+ * <pre>
+ *  0      marker: 1 | version (3 bits) | flags (4 bits)
+ *  1..2   message id        (u16, big endian)
+ *  3..4   chunk index       (u16)
+ *  5..6   chunk count       (u16)
+ *  7..9   total length      (u24, payload bytes of the whole message)
+ *  10..11 CRC-16 over bytes 0..9 and this chunk's payload
+ *  12..   payload
+ * </pre>
+ *
+ * The marker always has its top bit set, so a frame can never be confused with the
+ * '{' that starts a legacy unframed JSON message.
+ */
+public final class BleFrame {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    public static final int MAX_TOTAL_LENGTH = 0xFFFFFF;
+    public static final int MAX_CHUNK_COUNT = 0xFFFF;
+
+    /** Payload is a binary-encoded chat message rather than UTF-8 JSON. */
+    public static final int FLAG_BINARY = 1;
+    /** Payload is a {@link FrameBatch} of several messages. */
+    public static final int FLAG_BATCH = 1 << 1;
+    /** Payload is raw DEFLATE; inflate it before looking at the other flags. */
+    public static final int FLAG_DEFLATE = 1 << 2;
+    /** Payload is a {@link FrameAck} for the other side's frame; never acknowledged itself. */
+    public static final int FLAG_CONTROL = 1 << 3;
+
+    static final int MARKER = 0x80 | (VERSION << 4);
+    static final int MARKER_MASK = 0xF0;
+    static final int FLAGS_MASK = 0x0F;
+    static final int CRC_OFFSET = 10;
+
+    private BleFrame() {
+    }
+
+    /** True when the chunk starts with a frame header of a version we understand. */
+    public static boolean isFrame(byte[] chunk) {
+        return chunk.length >= HEADER_SIZE && (chunk[0] & MARKER_MASK) == MARKER;
+    }
+
+    /** Message id of a chunk that passed {@link #isFrame}. */
+    public static int idOf(byte[] chunk) {
+        return readU16(chunk, 1);
+    }
+
+    static int readU16(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    static int readU24(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 16) | ((b[offset + 1] & 0xFF) << 8) | (b[offset + 2] & 0xFF);
+    }
+
+    static void writeU16(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 8);
+        b[offset + 1] = (byte) value;
+    }
+
+    static void writeU24(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 16);
+        b[offset + 1] = (byte) (value >>> 8);
+        b[offset + 2] = (byte) value;
+    }
+
+    static int checksum(byte[] chunk) {
+        int crc = Crc16.compute(chunk, 0, CRC_OFFSET);
+        return Crc16.update(crc, chunk, HEADER_SIZE, chunk.length - HEADER_SIZE);
+    }
+}
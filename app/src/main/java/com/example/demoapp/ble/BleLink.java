@@ -0,0 +1,27 @@
+package com.example.demoapp.ble;
+
+import com.polidea.rxandroidble3.RxBleConnection;
+
+/** A connected peer together with the MTU negotiated once for that connection. */
+public final class BleLink {
+
+    public final String mac;
+    public final RxBleConnection connection;
+    public final int mtu;
+    /**
+     * Frame ids for everything written on this connection. The peer remembers recent ids
+     * until the connection drops, so every session on the link must keep counting here.
+     */
+    public final FrameEncoder frames = new FrameEncoder();
+
+    BleLink(String mac, RxBleConnection connection, int mtu) {
+        this.mac = mac;
+        this.connection = connection;
+        this.mtu = mtu;
+    }
+
+    /** Largest value that fits in one write on this link, see {@link BleMtu#payloadSize}. */
+    public int chunkSize() {
+        return BleMtu.payloadSize(mtu);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.demoapp.ble;
+
+import com.polidea.rxandroidble3.RxBleConnection;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * ATT MTU negotiation. Ask for the largest MTU once, right after connecting, and size
+ * every write from the result instead of re-requesting it per message.
+ */
+public final class BleMtu {
+
+    /** The MTU every link starts with before an exchange. */
+    public static final int DEFAULT = 23;
+    /** The largest MTU Android will request (Android 14 always asks for this). */
+    public static final int MAX = 517;
+
+    private static final int ATT_WRITE_HEADER = 3;
+    private static final int MAX_ATTRIBUTE_LENGTH = 512;
+
+    private BleMtu() {
+    }
+
+    /**
+     * Requests {@link #MAX}; the peer answers with the largest value it supports. If the
+     * exchange fails the link keeps whatever MTU it already had.
+     */
+    public static Single<Integer> negotiate(RxBleConnection connection) {
+        return connection.requestMtu(MAX)
+                .onErrorReturn(t -> connection.getMtu());
+    }
+
+    /** Largest value that fits in one characteristic write at this MTU. */
+    public static int payloadSize(int mtu) {
+        return Math.min(Math.max(mtu, DEFAULT) - ATT_WRITE_HEADER, MAX_ATTRIBUTE_LENGTH);
+    }
+}
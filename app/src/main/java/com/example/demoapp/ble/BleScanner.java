@@ -0,0 +1,83 @@
+package com.example.demoapp.ble;
+
+import android.os.ParcelUuid;
+
+import com.polidea.rxandroidble3.RxBleClient;
+import com.polidea.rxandroidble3.scan.ScanFilter;
+import com.polidea.rxandroidble3.scan.ScanResult;
+import com.polidea.rxandroidble3.scan.ScanSettings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+
+/**
+ * Bounded, filtered BLE scans shared by the chat and sensor screens.
+ *
+ * Filters are handed to the controller, so advertisements that don't match never
+ * wake the app. Every scan stops on its own after its duration, and results are
+ * delivered as a de-duplicated list at most every {@link #UI_DEBOUNCE_MS}, not
+ * one callback per advertisement.
+ *
+ * The scan mode is one of {@link ScanSettings#SCAN_MODE_LOW_LATENCY} (user is
+ * waiting), {@link ScanSettings#SCAN_MODE_BALANCED} or
+ * {@link ScanSettings#SCAN_MODE_LOW_POWER} (background); the controller
+ * duty-cycles the radio accordingly.
+ */
+public final class BleScanner {
+
+    /** How long a user-started scan runs before it stops itself. */
+    public static final long DEFAULT_DURATION_MS = 10_000;
+    public static final long UI_DEBOUNCE_MS = 250;
+
+    private BleScanner() {
+    }
+
+    /** Matches devices advertising this service, e.g. the chat peers' UART service. */
+    public static ScanFilter serviceFilter(UUID service) {
+        return new ScanFilter.Builder().setServiceUuid(new ParcelUuid(service)).build();
+    }
+
+    /** Matches one known device, e.g. the air quality sensor. */
+    public static ScanFilter macFilter(String mac) {
+        return new ScanFilter.Builder().setDeviceAddress(mac).build();
+    }
+
+    /**
+     * Scans for {@code durationMs} and emits every device found so far, in discovery
+     * order with each device's latest result, at most every {@link #UI_DEBOUNCE_MS}.
+     * The last list is always delivered before completion.
+     */
+    public static Observable<List<ScanResult>> discover(RxBleClient client, int scanMode,
+                                                         long durationMs, ScanFilter... filters) {
+        return Observable.defer(() -> {
+            Map<String, ScanResult> found = new LinkedHashMap<>();
+            return scan(client, scanMode, durationMs, filters).map(result -> {
+                found.put(result.getBleDevice().getMacAddress(), result);
+                return (List<ScanResult>) new ArrayList<>(found.values());
+            });
+        }).throttleLatest(UI_DEBOUNCE_MS, TimeUnit.MILLISECONDS, true);
+    }
+
+    /** Scans until the first match or until {@code durationMs} passes, whichever is first. */
+    public static Maybe<ScanResult> findFirst(RxBleClient client, int scanMode, long durationMs,
+                                              ScanFilter... filters) {
+        return scan(client, scanMode, durationMs, filters).firstElement();
+    }
+
+    private static Observable<ScanResult> scan(RxBleClient client, int scanMode, long durationMs,
+                                               ScanFilter... filters) {
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(scanMode)
+                .setCallbackType(ScanSettings.CALLBACK_TYPE_ALL_MATCHES)
+                .build();
+        return client.scanBleDevices(settings, filters)
+                .take(durationMs, TimeUnit.MILLISECONDS);
+    }
+}
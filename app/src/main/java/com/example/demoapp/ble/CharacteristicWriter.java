@@ -0,0 +1,144 @@
+package com.example.demoapp.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.polidea.rxandroidble3.RxBleConnection;
+import com.polidea.rxandroidble3.exceptions.BleGattCannotStartException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleEmitter;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+
+/**
+ * Every write to one characteristic, acknowledged or not, goes through one of these.
+ *
+ * The write type is a field of the shared {@link BluetoothGattCharacteristic}, and the
+ * stack reads it only when RxAndroidBle runs the queued write, possibly much later. So
+ * a write is handed to RxAndroidBle only while every write still in its queue has the
+ * same type; a write of the other type waits until those have finished. Writes of one
+ * type still overlap, which keeps write-without-response pipelined.
+ *
+ * Thread-safe.
+ */
+public final class CharacteristicWriter {
+
+    private final IntConsumer setWriteType;
+    private final Function<byte[], Single<byte[]>> gattWrite;
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+    // Type and number of the writes handed to the connection and not finished yet
+    private int activeType;
+    private int active;
+
+    public CharacteristicWriter(RxBleConnection connection, BluetoothGattCharacteristic characteristic) {
+        this(characteristic::setWriteType, chunk -> connection.writeCharacteristic(characteristic, chunk));
+    }
+
+    CharacteristicWriter(IntConsumer setWriteType, Function<byte[], Single<byte[]>> gattWrite) {
+        this.setWriteType = setWriteType;
+        this.gattWrite = gattWrite;
+    }
+
+    /** Write request: each chunk completes only after the peer's write response. */
+    public ChunkWriter acknowledged() {
+        return chunk -> write(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, chunk);
+    }
+
+    /**
+     * Write command: each chunk completes as soon as the local stack has queued it, so
+     * several chunks can go out in one connection interval. A refused write is reported
+     * as {@link WriteBufferFullException}.
+     */
+    public ChunkWriter withoutResponse() {
+        return chunk -> write(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE, chunk)
+                .onErrorResumeNext(t -> Single.error(
+                        t instanceof BleGattCannotStartException ? new WriteBufferFullException(t) : t));
+    }
+
+    private Single<byte[]> write(int type, byte[] chunk) {
+        return Single.create(emitter -> {
+            Pending pending = new Pending(type, chunk, emitter);
+            emitter.setCancellable(() -> cancel(pending));
+            synchronized (this) {
+                waiting.add(pending);
+            }
+            pump();
+        });
+    }
+
+    /** Hands over every waiting write that may run alongside the active ones. */
+    private void pump() {
+        List<Pending> ready = new ArrayList<>();
+        synchronized (this) {
+            while (!waiting.isEmpty()) {
+                Pending next = waiting.peek();
+                if (active > 0 && next.type != activeType) break;
+                waiting.poll();
+                if (next.emitter.isDisposed()) continue;
+                if (active == 0 && next.type != activeType) {
+                    activeType = next.type;
+                    setWriteType.accept(next.type);
+                }
+                active++;
+                next.started = true;
+                ready.add(next);
+            }
+        }
+        for (Pending pending : ready) {
+            pending.disposables.add(gattWrite.apply(pending.chunk).subscribe(
+                    value -> finish(pending, value, null),
+                    t -> finish(pending, null, t)));
+        }
+    }
+
+    private void finish(Pending pending, byte[] value, Throwable error) {
+        synchronized (this) {
+            if (pending.finished) return;
+            pending.finished = true;
+            active--;
+        }
+        if (error != null) {
+            pending.emitter.tryOnError(error);
+        } else if (value != null) {
+            pending.emitter.onSuccess(value);
+        }
+        pump();
+    }
+
+    /**
+     * A write disposed before it was handed over just leaves the queue. One already handed
+     * over is disposed, which takes it out of RxAndroidBle's queue unless it is running;
+     * a running write has read its type already.
+     */
+    private void cancel(Pending pending) {
+        synchronized (this) {
+            if (!pending.started) {
+                waiting.remove(pending);
+                return;
+            }
+        }
+        pending.disposables.dispose();
+        finish(pending, null, null);
+    }
+
+    private static final class Pending {
+        final int type;
+        final byte[] chunk;
+        final SingleEmitter<byte[]> emitter;
+        final CompositeDisposable disposables = new CompositeDisposable();
+        // Guarded by the writer
+        boolean started;
+        boolean finished;
+
+        Pending(int type, byte[] chunk, SingleEmitter<byte[]> emitter) {
+            this.type = type;
+            this.chunk = chunk;
+            this.emitter = emitter;
+        }
+    }
+}
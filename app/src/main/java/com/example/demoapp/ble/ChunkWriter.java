@@ -0,0 +1,11 @@
+package com.example.demoapp.ble;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Writes one chunk to the peer. Emits the chunk once the stack has accepted it, or
+ * fails with {@link WriteBufferFullException} when it has no room right now.
+ */
+public interface ChunkWriter {
+    Single<byte[]> write(byte[] chunk);
+}
@@ -0,0 +1,70 @@
+package com.example.demoapp.ble;
+
+import java.util.BitSet;
+
+/**
+ * Receiver's report on one framed message, sent back in a {@link BleFrame#FLAG_CONTROL}
+ * frame. A complete ack means the whole message arrived; a partial one lists the
+ * chunks received so far, so the sender resends only the others.
+ *
+ * <pre>
+ *  0..1   message id    (u16)
+ *  2..3   chunk count   (u16, 0 for a complete ack)
+ *  4..    bitmap of received chunks, bit i of byte i / 8, LSB first
+ * </pre>
+ */
+public final class FrameAck {
+
+    public final int id;
+    /** Chunks in the message, or 0 for a complete ack. */
+    public final int count;
+    private final BitSet received;
+
+    private FrameAck(int id, int count, BitSet received) {
+        this.id = id;
+        this.count = count;
+        this.received = received;
+    }
+
+    public static FrameAck complete(int id) {
+        return new FrameAck(id, 0, new BitSet());
+    }
+
+    public static FrameAck partial(int id, int count, BitSet received) {
+        return new FrameAck(id, count, (BitSet) received.clone());
+    }
+
+    public boolean isComplete() {
+        return count == 0;
+    }
+
+    /** True if the receiver still lacks this chunk; always false for a complete ack. */
+    public boolean isMissing(int index) {
+        return count != 0 && index < count && !received.get(index);
+    }
+
+    public byte[] encode() {
+        byte[] out = new byte[4 + (count + 7) / 8];
+        BleFrame.writeU16(out, 0, id);
+        BleFrame.writeU16(out, 2, count);
+        for (int i = received.nextSetBit(0); i >= 0 && i < count; i = received.nextSetBit(i + 1)) {
+            out[4 + i / 8] |= (byte) (1 << (i % 8));
+        }
+        return out;
+    }
+
+    /** @throws IllegalArgumentException if {@code data} is not an ack */
+    public static FrameAck decode(byte[] data) {
+        if (data.length < 4) throw new IllegalArgumentException("Ack too short: " + data.length);
+        int id = BleFrame.readU16(data, 0);
+        int count = BleFrame.readU16(data, 2);
+        if (data.length != 4 + (count + 7) / 8) {
+            throw new IllegalArgumentException("Ack for " + count + " chunks has " + data.length + " bytes");
+        }
+        BitSet received = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            if ((data[4 + i / 8] & (1 << (i % 8))) != 0) received.set(i);
+        }
+        return new FrameAck(id, count, received);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.demoapp.ble;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Receiving side of {@link FrameEncoder}. Each message gets one buffer of its declared
+ * total length as soon as any chunk arrives; chunks are copied straight into place, so
+ * out-of-order delivery costs nothing and duplicates are ignored. Chunks whose CRC does
+ * not match are dropped before anything is parsed.
+ *
+ * After each {@link #feed} the {@link FrameAck} to send back, if any, is available from
+ * {@link #takeAck}: complete when a message finishes (or a chunk of an already finished
+ * one comes again, meaning our ack was lost), partial when the last chunk or a repeated
+ * chunk arrives while others are still missing. Control frames are never acknowledged.
+ *
+ * Not thread-safe: feed it from a single thread or a serialized Rx stream.
+ */
+public class FrameAssembler {
+
+    /** A fully reassembled message. */
+    public static final class Message {
+        public final int id;
+        public final int flags;
+        public final byte[] payload;
+
+        Message(int id, int flags, byte[] payload) {
+            this.id = id;
+            this.flags = flags;
+            this.payload = payload;
+        }
+    }
+
+    private static final int MAX_PENDING = 8;
+    private static final int RECENT_IDS = 32;
+
+    private final Map<Integer, Pending> pending = new LinkedHashMap<Integer, Pending>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Pending> eldest) {
+            if (size() > MAX_PENDING) {
+                evicted++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private final int[] recentIds = new int[RECENT_IDS];
+    private int recentCount;
+    private int recentNext;
+
+    private int corrupt;
+    private int duplicates;
+    private int evicted;
+    private FrameAck ack;
+
+    /** Returns the completed message when this chunk was the last one missing, else null. */
+    public Message feed(byte[] chunk) {
+        ack = null;
+        if (!BleFrame.isFrame(chunk)
+                || BleFrame.readU16(chunk, BleFrame.CRC_OFFSET) != BleFrame.checksum(chunk)) {
+            corrupt++;
+            return null;
+        }
+        int flags = chunk[0] & BleFrame.FLAGS_MASK;
+        int id = BleFrame.readU16(chunk, 1);
+        int index = BleFrame.readU16(chunk, 3);
+        int count = BleFrame.readU16(chunk, 5);
+        int total = BleFrame.readU24(chunk, 7);
+        int length = chunk.length - BleFrame.HEADER_SIZE;
+
+        if (count == 0 || index >= count || length > total) {
+            corrupt++;
+            return null;
+        }
+        boolean acked = (flags & BleFrame.FLAG_CONTROL) == 0;
+        if (isRecent(id)) {
+            duplicates++;
+            if (acked) ack = FrameAck.complete(id);
+            return null;
+        }
+
+        Pending p = pending.get(id);
+        if (p == null || p.count != count || p.data.length != total) {
+            // Unknown id, or the id was reused for a different message: start over
+            p = new Pending(total, count);
+            pending.put(id, p);
+        }
+        if (p.received.get(index)) {
+            duplicates++;
+            if (acked) ack = FrameAck.partial(id, count, p.received);
+            return null;
+        }
+
+        int offset;
+        if (index == count - 1) {
+            offset = total - length;
+            p.lastLength = length;
+        } else {
+            if (p.chunkLength < 0) p.chunkLength = length;
+            if (p.chunkLength != length || (long) index * length + length > total) {
+                corrupt++;
+                pending.remove(id);
+                return null;
+            }
+            offset = index * length;
+        }
+        System.arraycopy(chunk, BleFrame.HEADER_SIZE, p.data, offset, length);
+        p.received.set(index);
+        if (++p.receivedCount < count) {
+            if (acked && index == count - 1) ack = FrameAck.partial(id, count, p.received);
+            return null;
+        }
+
+        pending.remove(id);
+        long covered = count == 1 ? p.lastLength : (long) (count - 1) * p.chunkLength + p.lastLength;
+        if (covered != total) {
+            corrupt++;
+            return null;
+        }
+        remember(id);
+        if (acked) ack = FrameAck.complete(id);
+        return new Message(id, flags, p.data);
+    }
+
+    /** The ack produced by the last {@link #feed}, or null; cleared once taken. */
+    public FrameAck takeAck() {
+        FrameAck taken = ack;
+        ack = null;
+        return taken;
+    }
+
+    /** Drops every partially received message, e.g. after the link was re-established. */
+    public void reset() {
+        pending.clear();
+        recentCount = 0;
+        recentNext = 0;
+    }
+
+    public int getCorruptChunks() {
+        return corrupt;
+    }
+
+    public int getDuplicateChunks() {
+        return duplicates;
+    }
+
+    public int getEvictedMessages() {
+        return evicted;
+    }
+
+    private boolean isRecent(int id) {
+        for (int i = 0; i < recentCount; i++) {
+            if (recentIds[i] == id) return true;
+        }
+        return false;
+    }
+
+    private void remember(int id) {
+        recentIds[recentNext] = id;
+        recentNext = (recentNext + 1) % RECENT_IDS;
+        if (recentCount < RECENT_IDS) recentCount++;
+    }
+
+    private static final class Pending {
+        final byte[] data;
+        final int count;
+        final BitSet received;
+        int receivedCount;
+        int chunkLength = -1;
+        int lastLength;
+
+        Pending(int total, int count) {
+            this.data = new byte[total];
+            this.count = count;
+            this.received = new BitSet(count);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demoapp.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs several small messages into the payload of one {@link BleFrame#FLAG_BATCH} frame,
+ * so they share a single header and write. Each item is stored as
+ * {@code varint length | flags byte | payload}.
+ */
+public final class FrameBatch {
+
+    /** One message inside a batch; flags use the same bits as a frame header. */
+    public static final class Item {
+        public final int flags;
+        public final byte[] payload;
+
+        public Item(int flags, byte[] payload) {
+            this.flags = flags;
+            this.payload = payload;
+        }
+    }
+
+    private FrameBatch() {
+    }
+
+    /** Bytes an item adds to a batch payload. */
+    public static int packedSize(int payloadLength) {
+        int varint = 1;
+        for (int v = payloadLength >>> 7; v != 0; v >>>= 7) varint++;
+        return varint + 1 + payloadLength;
+    }
+
+    public static byte[] pack(List<Item> items) {
+        int size = 0;
+        for (Item item : items) size += packedSize(item.payload.length);
+        byte[] out = new byte[size];
+        int pos = 0;
+        for (Item item : items) {
+            int v = item.payload.length;
+            while ((v & ~0x7F) != 0) {
+                out[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out[pos++] = (byte) v;
+            out[pos++] = (byte) item.flags;
+            System.arraycopy(item.payload, 0, out, pos, item.payload.length);
+            pos += item.payload.length;
+        }
+        return out;
+    }
+
+    /** @throws IllegalArgumentException if the batch is truncated */
+    public static List<Item> unpack(byte[] data) {
+        List<Item> items = new ArrayList<>();
+        int pos = 0;
+        while (pos < data.length) {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= data.length || shift > 28) throw new IllegalArgumentException("Malformed batch");
+                int b = data[pos++] & 0xFF;
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+            if (pos >= data.length || length < 0 || length > data.length - pos - 1) {
+                throw new IllegalArgumentException("Truncated batch");
+            }
+            int flags = data[pos++] & 0xFF;
+            byte[] payload = new byte[length];
+            System.arraycopy(data, pos, payload, 0, length);
+            pos += length;
+            items.add(new Item(flags, payload));
+        }
+        return items;
+    }
+}
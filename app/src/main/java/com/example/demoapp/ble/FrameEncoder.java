@@ -0,0 +1,49 @@
+package com.example.demoapp.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits an outgoing payload into {@link BleFrame} chunks that each fit one write.
+ * Safe to share between threads; message ids wrap at 16 bits.
+ */
+public class FrameEncoder {
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * @param flags        frame flags (low 4 bits) applied to every chunk
+     * @param maxChunkSize the largest write the link accepts, header included
+     */
+    public List<byte[]> encode(byte[] payload, int flags, int maxChunkSize) {
+        int room = maxChunkSize - BleFrame.HEADER_SIZE;
+        if (room <= 0) {
+            throw new IllegalArgumentException("Chunk size " + maxChunkSize + " leaves no room for payload");
+        }
+        if (payload.length > BleFrame.MAX_TOTAL_LENGTH) {
+            throw new IllegalArgumentException("Payload too large: " + payload.length);
+        }
+        int count = Math.max(1, (payload.length + room - 1) / room);
+        if (count > BleFrame.MAX_CHUNK_COUNT) {
+            throw new IllegalArgumentException("Payload needs " + count + " chunks");
+        }
+
+        int id = nextId.getAndIncrement() & 0xFFFF;
+        List<byte[]> chunks = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * room;
+            int length = Math.min(room, payload.length - offset);
+            byte[] chunk = new byte[BleFrame.HEADER_SIZE + length];
+            chunk[0] = (byte) (BleFrame.MARKER | (flags & BleFrame.FLAGS_MASK));
+            BleFrame.writeU16(chunk, 1, id);
+            BleFrame.writeU16(chunk, 3, index);
+            BleFrame.writeU16(chunk, 5, count);
+            BleFrame.writeU24(chunk, 7, payload.length);
+            System.arraycopy(payload, offset, chunk, BleFrame.HEADER_SIZE, length);
+            BleFrame.writeU16(chunk, BleFrame.CRC_OFFSET, BleFrame.checksum(chunk));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.demoapp.ble;
+
+/**
+ * Optional protocol features, as a bit set. A peer that supports them exposes its set
+ * in a readable features characteristic, and is then sent ours in a "hello" message.
+ * Legacy peers lack the characteristic and never get a hello, which they would show as
+ * a chat message; they are spoken to in unframed JSON only. A feature is only used
+ * when both peers advertise it.
+ */
+public final class LinkFeatures {
+
+    /** Chunks carry a {@link BleFrame} header. */
+    public static final int FRAMING = 1;
+
+    /** Chat messages may be sent in the compact binary codec (requires {@link #FRAMING}). */
+    public static final int BINARY_CODEC = 1 << 1;
+
+    /** Several queued messages may share one frame (requires {@link #FRAMING}). */
+    public static final int BATCH = 1 << 2;
+
+    /** Large frame payloads may be DEFLATE-compressed (requires {@link #FRAMING}). */
+    public static final int DEFLATE = 1 << 3;
+
+    /**
+     * Framed messages are acknowledged with a {@link FrameAck}, and only the chunks the
+     * receiver reports missing are sent again (requires {@link #FRAMING}).
+     */
+    public static final int ACK = 1 << 4;
+
+    /** Everything this build understands. */
+    public static final int SUPPORTED = FRAMING | BINARY_CODEC | BATCH | DEFLATE | ACK;
+
+    private LinkFeatures() {
+    }
+
+    public static boolean has(int features, int feature) {
+        return (features & feature) == feature;
+    }
+
+    /** The bit set in a features characteristic value: little endian, up to four bytes. */
+    public static int fromBytes(byte[] value) {
+        int features = 0;
+        for (int i = 0; i < Math.min(value.length, 4); i++) features |= (value[i] & 0xFF) << (8 * i);
+        return features;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demoapp.ble;
+
+/**
+ * Reconnect statistics for one device: how often connection attempts succeed and
+ * how long the link was down before it came back. Thread-safe.
+ */
+public final class LinkMetrics {
+
+    private int attempts;
+    private int successes;
+    private int drops;
+    private int reconnects;
+    private long totalReconnectMs;
+    private long maxReconnectMs;
+    private long downSinceMs = -1;
+
+    synchronized void attemptStarted() {
+        attempts++;
+    }
+
+    /** The link came up; {@code nowMs} ends the outage that started at the last drop or failure. */
+    synchronized void connected(long nowMs) {
+        successes++;
+        if (downSinceMs >= 0) {
+            long downMs = nowMs - downSinceMs;
+            reconnects++;
+            totalReconnectMs += downMs;
+            maxReconnectMs = Math.max(maxReconnectMs, downMs);
+            downSinceMs = -1;
+        }
+    }
+
+    /** An attempt failed, or a connected link dropped ({@code wasConnected}). */
+    synchronized void down(long nowMs, boolean wasConnected) {
+        if (wasConnected) drops++;
+        if (downSinceMs < 0) downSinceMs = nowMs;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    public synchronized int getDrops() {
+        return drops;
+    }
+
+    /** Share of connection attempts that succeeded, 0..1. */
+    public synchronized double successRate() {
+        return attempts == 0 ? 0 : (double) successes / attempts;
+    }
+
+    /** Mean time from a drop (or first failure) to the link being back, in ms. */
+    public synchronized long meanReconnectMs() {
+        return reconnects == 0 ? 0 : totalReconnectMs / reconnects;
+    }
+
+    public synchronized long maxReconnectMs() {
+        return maxReconnectMs;
+    }
+
+    public synchronized String stats() {
+        return "attempts " + attempts + ", success " + Math.round(successRate() * 100) + "%"
+                + ", drops " + drops + ", reconnects " + reconnects
+                + ", mean " + meanReconnectMs() + " ms, max " + maxReconnectMs + " ms";
+    }
+}
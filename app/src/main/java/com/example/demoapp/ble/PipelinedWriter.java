@@ -0,0 +1,69 @@
+package com.example.demoapp.ble;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Sends a message's chunks with at most {@code window} writes in flight. Each completed
+ * write returns one credit. When the stack refuses a write with
+ * {@link WriteBufferFullException}, the whole window pauses with exponential backoff, so
+ * new chunks cannot starve the ones waiting to be retried.
+ *
+ * With a window above one, a retried chunk can reach the peer after a later one, so
+ * only use that for {@link BleFrame} messages, whose chunks carry their own index.
+ * A window of one gives the old strictly sequential behaviour.
+ */
+public class PipelinedWriter {
+
+    public static final int DEFAULT_WINDOW = 8;
+
+    private static final long INITIAL_BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 20;
+    private static final int MAX_RETRIES = 20;
+
+    private final ChunkWriter writer;
+    private final int window;
+    private final Scheduler scheduler;
+    private final AtomicLong backoffs = new AtomicLong();
+    // Scheduler time (ms) before which no write may be attempted
+    private final AtomicLong pausedUntil = new AtomicLong();
+
+    public PipelinedWriter(ChunkWriter writer, int window, Scheduler scheduler) {
+        this.writer = writer;
+        this.window = window;
+        this.scheduler = scheduler;
+    }
+
+    /** Emits each chunk as it is accepted, then completes; fails on the first lost chunk. */
+    public Flowable<byte[]> write(List<byte[]> chunks) {
+        return Flowable.fromIterable(chunks)
+                .flatMapSingle(this::writeWithBackoff, false, window);
+    }
+
+    /** How many times a write had to wait for the stack's buffer to drain. */
+    public long getBackoffCount() {
+        return backoffs.get();
+    }
+
+    private Single<byte[]> writeWithBackoff(byte[] chunk) {
+        return Single.defer(() -> {
+            long wait = pausedUntil.get() - scheduler.now(TimeUnit.MILLISECONDS);
+            return wait > 0
+                    ? writer.write(chunk).delaySubscription(wait, TimeUnit.MILLISECONDS, scheduler)
+                    : writer.write(chunk);
+        }).retryWhen(errors -> errors
+                .zipWith(Flowable.range(0, MAX_RETRIES + 1), (t, attempt) -> {
+                    if (!(t instanceof WriteBufferFullException) || attempt == MAX_RETRIES) throw t;
+                    backoffs.incrementAndGet();
+                    long resumeAt = scheduler.now(TimeUnit.MILLISECONDS)
+                            + Math.min(INITIAL_BACKOFF_MS << attempt, MAX_BACKOFF_MS);
+                    pausedUntil.accumulateAndGet(resumeAt, Math::max);
+                    return attempt;
+                }));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demoapp.ble;
+
+import java.util.Random;
+
+/**
+ * When and how to retry a lost or failed connection. The first attempts connect
+ * directly, which is fast when the peer is in range; after that the link falls back
+ * to autoConnect, which lets the controller wait for the peer's advertisements at
+ * low duty cycle. Delays grow exponentially with "equal jitter" (half fixed, half
+ * random), so peers that dropped together don't retry in lockstep.
+ */
+public final class ReconnectPolicy {
+
+    public static final long BASE_DELAY_MS = 500;
+    public static final long MAX_DELAY_MS = 30_000;
+    /** Direct connect attempts in a row before switching to autoConnect. */
+    public static final int DIRECT_ATTEMPTS = 2;
+    /** How long a direct connect may take before it counts as failed. */
+    public static final long DIRECT_CONNECT_TIMEOUT_MS = 10_000;
+
+    private final Random random;
+
+    public ReconnectPolicy() {
+        this(new Random());
+    }
+
+    public ReconnectPolicy(Random random) {
+        this.random = random;
+    }
+
+    /** @param attempt 0 for the first try after a link went down */
+    public boolean useAutoConnect(int attempt) {
+        return attempt >= DIRECT_ATTEMPTS;
+    }
+
+    /** Delay before retrying after {@code failures} consecutive failed attempts (at least 1). */
+    public long delayMs(int failures) {
+        int shift = Math.min(Math.max(failures, 1) - 1, 20);
+        long cap = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << shift);
+        long half = cap / 2;
+        return half + (long) (random.nextDouble() * (cap - half));
+    }
+}
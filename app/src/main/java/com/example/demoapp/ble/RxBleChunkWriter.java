@@ -0,0 +1,27 @@
+package com.example.demoapp.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.polidea.rxandroidble3.RxBleConnection;
+
+import java.util.UUID;
+
+/**
+ * {@link ChunkWriter}s backed by an {@link RxBleConnection}. Writers for a discovered
+ * characteristic come from its {@link CharacteristicWriter}.
+ */
+public final class RxBleChunkWriter {
+
+    private RxBleChunkWriter() {
+    }
+
+    /** Write request: each chunk completes only after the peer's write response. */
+    public static ChunkWriter acknowledged(RxBleConnection connection, UUID characteristic) {
+        return chunk -> connection.writeCharacteristic(characteristic, chunk);
+    }
+
+    public static boolean supportsWriteWithoutResponse(BluetoothGattCharacteristic characteristic) {
+        return (characteristic.getProperties()
+                & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demoapp.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sender's copy of a framed message waiting for its {@link FrameAck}. Keeps the encoded
+ * chunks so that a partial ack can be answered with exactly the missing ones, and
+ * counts retransmission rounds so that a peer that never answers is eventually given up.
+ */
+public final class SentFrame {
+
+    /** Retransmission rounds before the message is reported as failed. */
+    public static final int MAX_RETRANSMITS = 4;
+
+    public final int id;
+    private final List<byte[]> chunks;
+    private int retransmits;
+
+    public SentFrame(List<byte[]> chunks) {
+        if (chunks.isEmpty()) throw new IllegalArgumentException("No chunks");
+        this.id = BleFrame.idOf(chunks.get(0));
+        this.chunks = chunks;
+    }
+
+    public boolean matches(FrameAck ack) {
+        return ack.id == id;
+    }
+
+    /** The chunks {@code ack} reports missing, in order; empty for a complete ack. */
+    public List<byte[]> missing(FrameAck ack) {
+        List<byte[]> out = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (ack.isMissing(i)) out.add(chunks.get(i));
+        }
+        return out;
+    }
+
+    /**
+     * What to send when no ack came in time: the last chunk, which makes the receiver
+     * report what it holds, or complete the message if that chunk was the lost one.
+     */
+    public byte[] probe() {
+        return chunks.get(chunks.size() - 1);
+    }
+
+    /** Counts one more retransmission round; false once the budget is used up. */
+    public boolean startRetransmit() {
+        return ++retransmits <= MAX_RETRANSMITS;
+    }
+
+    public int getRetransmits() {
+        return retransmits;
+    }
+}
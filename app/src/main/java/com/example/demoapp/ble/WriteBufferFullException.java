@@ -0,0 +1,16 @@
+package com.example.demoapp.ble;
+
+/**
+ * The Bluetooth stack refused a write because its outgoing buffer is full. The write
+ * can be retried once the controller has sent some packets.
+ */
+public class WriteBufferFullException extends RuntimeException {
+
+    public WriteBufferFullException(Throwable cause) {
+        super("BLE write buffer full", cause);
+    }
+
+    public WriteBufferFullException() {
+        super("BLE write buffer full");
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.demoapp.sensor;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of geo-tagged readings for the pollution map, one file per UTC day
+ * named {@code yyyyMMdd.geo}. A record is {@link #RECORD_BYTES} bytes: timestamp,
+ * latitude and longitude in microdegrees, and one float per {@link SensorMetric}.
+ * A record cut short by a crash is skipped on {@link #replay}.
+ *
+ * Writes go through a buffered stream on a background thread and reach the file at
+ * most {@link SensorLog#FLUSH_DELAY_MS} after {@link #append}.
+ *
+ * Thread-safe.
+ */
+public class GeoSampleLog {
+
+    static final int RECORD_BYTES = 8 + 4 + 4 + 4 * SensorMetric.COUNT;
+    static final String SUFFIX = ".geo";
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final String TAG = "GeoSampleLog";
+    private static GeoSampleLog instance;
+
+    /** Receives replayed samples; {@code values} is reused between calls. */
+    public interface Visitor {
+        void onSample(long timestamp, double latitude, double longitude, float[] values);
+    }
+
+    private final File dir;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    // Guarded by itself
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.ROOT);
+
+    // Writer thread only
+    private DataOutputStream out;
+    private long outDay = Long.MIN_VALUE;
+    private boolean flushScheduled;
+
+    GeoSampleLog(File dir) {
+        this.dir = dir;
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        if (!dir.isDirectory() && !dir.mkdirs()) Log.e(TAG, "Failed to create " + dir);
+    }
+
+    public static synchronized GeoSampleLog get(Context context) {
+        if (instance == null) {
+            instance = new GeoSampleLog(new File(context.getFilesDir(), "sensor_geo"));
+            instance.pruneBefore(System.currentTimeMillis() - SensorLog.RETENTION_DAYS * DAY_MS);
+        }
+        return instance;
+    }
+
+    /** Records the reading if it carries a location; does nothing otherwise. */
+    public void append(SensorReading reading) {
+        if (!reading.hasLocation()) return;
+        writer.execute(() -> {
+            try {
+                write(reading);
+            } catch (IOException e) {
+                Log.e(TAG, "Write failed", e);
+                closeQuietly();
+            }
+        });
+    }
+
+    private void write(SensorReading reading) throws IOException {
+        long day = Math.floorDiv(reading.timestamp, DAY_MS);
+        if (out == null || day != outDay) {
+            closeQuietly();
+            File file = new File(dir, dayName(reading.timestamp) + SUFFIX);
+            // Drop a partial record left by a crash, so the records stay aligned
+            long valid = file.length() - file.length() % RECORD_BYTES;
+            if (valid != file.length()) {
+                try (FileChannel channel = new FileOutputStream(file, true).getChannel()) {
+                    channel.truncate(valid);
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            outDay = day;
+        }
+        out.writeLong(reading.timestamp);
+        out.writeInt((int) Math.round(reading.latitude * 1e6));
+        out.writeInt((int) Math.round(reading.longitude * 1e6));
+        for (int m = 0; m < SensorMetric.COUNT; m++) out.writeFloat(reading.get(m));
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::flushStream, SensorLog.FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushStream() {
+        flushScheduled = false;
+        try {
+            if (out != null) out.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Flush failed", e);
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Close failed", e);
+        }
+        out = null;
+    }
+
+    /** Writes everything appended so far to the file, waiting for it. */
+    public void flush() {
+        try {
+            writer.submit(this::flushStream).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Flush failed", e.getCause());
+        }
+    }
+
+    /**
+     * Passes every flushed record with a timestamp before {@code until} to the visitor,
+     * oldest day first, reading each file sequentially through one direct buffer.
+     * Returns the number of records visited.
+     */
+    public int replay(long until, Visitor visitor) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return 0;
+        Arrays.sort(files);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 1024);
+        float[] values = new float[SensorMetric.COUNT];
+        int count = 0;
+        for (File file : files) {
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                buffer.clear();
+                while (channel.read(buffer) > 0 || buffer.position() >= RECORD_BYTES) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RECORD_BYTES) {
+                        long timestamp = buffer.getLong();
+                        double latitude = buffer.getInt() / 1e6;
+                        double longitude = buffer.getInt() / 1e6;
+                        for (int m = 0; m < SensorMetric.COUNT; m++) values[m] = buffer.getFloat();
+                        if (timestamp >= until) continue;
+                        visitor.onSample(timestamp, latitude, longitude, values);
+                        count++;
+                    }
+                    buffer.compact();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Replay of " + file.getName() + " failed", e);
+            }
+        }
+        return count;
+    }
+
+    /** Deletes the files of days that ended before {@code time}. */
+    public void pruneBefore(long time) {
+        String day = dayName(time);
+        writer.execute(() -> {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+            if (files == null) return;
+            for (File file : files) {
+                if (file.getName().substring(0, 8).compareTo(day) < 0 && !file.delete()) {
+                    Log.e(TAG, "Failed to delete " + file);
+                }
+            }
+        });
+    }
+
+    private String dayName(long time) {
+        synchronized (dayFormat) {
+            return dayFormat.format(new Date(time));
+        }
+    }
+}
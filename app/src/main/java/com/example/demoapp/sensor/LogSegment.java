@@ -0,0 +1,230 @@
+package com.example.demoapp.sensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One file of the {@link SensorLog}. Layout, little endian:
+ *
+ * <pre>
+ *  file header   16 bytes: magic "SLOG", version (u16), metric count (u16),
+ *                records per block (i32), record size (i32)
+ *  block 0..n    24-byte index header: magic "BLK1", record count (i32),
+ *                first timestamp (i64), last timestamp (i64)
+ *                followed by room for {@link #RECORDS_PER_BLOCK} fixed-width records:
+ *                timestamp (i64), one f32 per {@link SensorMetric}
+ * </pre>
+ *
+ * Blocks are fixed size, so block i starts at a computed offset and a reader finds a
+ * time by binary search over the block headers, then over the records of one block.
+ * A block's header is rewritten after its records, so a crash mid-write leaves at
+ * most some records past the count, which readers ignore.
+ */
+final class LogSegment {
+
+    static final String SUFFIX = ".slog";
+
+    static final int MAGIC = 0x534C4F47;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 16;
+    static final int BLOCK_MAGIC = 0x424C4B31;
+    static final int BLOCK_HEADER_BYTES = 24;
+    static final int RECORDS_PER_BLOCK = 256;
+    static final int RECORD_BYTES = 8 + 4 * SensorMetric.COUNT;
+    static final int BLOCK_BYTES = BLOCK_HEADER_BYTES + RECORDS_PER_BLOCK * RECORD_BYTES;
+
+    private LogSegment() {
+    }
+
+    static long blockOffset(int block) {
+        return FILE_HEADER_BYTES + (long) block * BLOCK_BYTES;
+    }
+
+    /** Appends records to a segment; used only by the log's writer thread. */
+    static final class Writer {
+        final File file;
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private ByteBuffer records = ByteBuffer.allocate(RECORD_BYTES * 64).order(ByteOrder.LITTLE_ENDIAN);
+        private int block;
+        private int countInBlock;
+        private long blockFirst;
+        private long blockLast = Long.MIN_VALUE;
+
+        Writer(File file) throws IOException {
+            this.file = file;
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.truncate(0);
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            fileHeader.putInt(MAGIC).putShort((short) VERSION).putShort((short) SensorMetric.COUNT)
+                    .putInt(RECORDS_PER_BLOCK).putInt(RECORD_BYTES).flip();
+            writeFully(fileHeader, 0);
+        }
+
+        /** Bytes the segment occupies so far. */
+        long size() {
+            return blockOffset(block) + BLOCK_HEADER_BYTES + (long) countInBlock * RECORD_BYTES;
+        }
+
+        /**
+         * Writes {@code n} samples: one positional write per block touched for the
+         * records, then one for that block's header. A timestamp older than the last
+         * one written is stored as that one, so the binary searches stay valid when
+         * the wall clock steps back.
+         */
+        void write(long[] timestamps, float[][] values, int n) throws IOException {
+            int i = 0;
+            while (i < n) {
+                if (countInBlock == RECORDS_PER_BLOCK) {
+                    block++;
+                    countInBlock = 0;
+                }
+                int take = Math.min(n - i, RECORDS_PER_BLOCK - countInBlock);
+                if (records.capacity() < take * RECORD_BYTES) {
+                    records = ByteBuffer.allocate(take * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                records.clear();
+                for (int k = i; k < i + take; k++) {
+                    blockLast = Math.max(timestamps[k], blockLast);
+                    if (k == i && countInBlock == 0) blockFirst = blockLast;
+                    records.putLong(blockLast);
+                    for (int m = 0; m < SensorMetric.COUNT; m++) records.putFloat(values[m][k]);
+                }
+                records.flip();
+                long at = blockOffset(block) + BLOCK_HEADER_BYTES + (long) countInBlock * RECORD_BYTES;
+                writeFully(records, at);
+
+                countInBlock += take;
+                header.clear();
+                header.putInt(BLOCK_MAGIC).putInt(countInBlock).putLong(blockFirst).putLong(blockLast).flip();
+                writeFully(header, blockOffset(block));
+                i += take;
+            }
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        }
+    }
+
+    /** A read-only memory mapping of a segment; nothing is copied onto the heap. */
+    static final class Mapped {
+        final File file;
+        final long length;
+        private final MappedByteBuffer buffer;
+        private final int blocks;
+
+        private Mapped(File file, long length, MappedByteBuffer buffer, int blocks) {
+            this.file = file;
+            this.length = length;
+            this.buffer = buffer;
+            this.blocks = blocks;
+        }
+
+        /** Maps the segment as it is now; returns null if it is not a readable segment. */
+        static Mapped open(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                long length = channel.size();
+                if (length < FILE_HEADER_BYTES + BLOCK_HEADER_BYTES) return null;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                        || buffer.getShort(6) != SensorMetric.COUNT
+                        || buffer.getInt(8) != RECORDS_PER_BLOCK || buffer.getInt(12) != RECORD_BYTES) {
+                    return null;
+                }
+                int blocks = 0;
+                while (blockOffset(blocks) + BLOCK_HEADER_BYTES <= length
+                        && buffer.getInt((int) blockOffset(blocks)) == BLOCK_MAGIC) {
+                    blocks++;
+                }
+                // The mapping stays valid after the channel is closed
+                return new Mapped(file, length, buffer, blocks);
+            }
+        }
+
+        long firstTimestamp() {
+            return blocks == 0 ? Long.MAX_VALUE : buffer.getLong((int) blockOffset(0) + 8);
+        }
+
+        long lastTimestamp() {
+            return blocks == 0 ? Long.MIN_VALUE : buffer.getLong((int) blockOffset(blocks - 1) + 16);
+        }
+
+        /**
+         * Copies one metric's values in {@code [from, to)} into the arrays starting at
+         * {@code offset}, skipping missing values; returns the new offset.
+         */
+        int copyRange(int metric, long from, long to, long[] outTimes, float[] outValues, int offset) {
+            int limit = Math.min(outTimes.length, outValues.length);
+            for (int b = firstBlockFor(from); b < blocks && offset < limit; b++) {
+                int base = (int) blockOffset(b);
+                if (buffer.getLong(base + 8) >= to) break;
+                int count = recordsIn(b);
+                int r = buffer.getLong(base + 8) < from ? firstRecordAtOrAfter(b, count, from) : 0;
+                for (; r < count && offset < limit; r++) {
+                    int at = base + BLOCK_HEADER_BYTES + r * RECORD_BYTES;
+                    long t = buffer.getLong(at);
+                    if (t >= to) return offset;
+                    float v = buffer.getFloat(at + 8 + 4 * metric);
+                    if (Float.isNaN(v)) continue;
+                    outTimes[offset] = t;
+                    outValues[offset] = v;
+                    offset++;
+                }
+            }
+            return offset;
+        }
+
+        /** The block that may hold the first record at or after {@code time}. */
+        private int firstBlockFor(long time) {
+            int lo = 0;
+            int hi = blocks - 1;
+            int found = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buffer.getLong((int) blockOffset(mid) + 8) <= time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        private int firstRecordAtOrAfter(int block, int count, long time) {
+            int base = (int) blockOffset(block) + BLOCK_HEADER_BYTES;
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buffer.getLong(base + mid * RECORD_BYTES) < time) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private int recordsIn(int block) {
+            int base = (int) blockOffset(block);
+            int count = Math.min(buffer.getInt(base + 4), RECORDS_PER_BLOCK);
+            // A header can be ahead of a mapping taken while records were being written
+            long available = (length - base - BLOCK_HEADER_BYTES) / RECORD_BYTES;
+            return (int) Math.max(0, Math.min(count, available));
+        }
+    }
+}
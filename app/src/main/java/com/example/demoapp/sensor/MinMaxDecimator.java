@@ -0,0 +1,177 @@
+package com.example.demoapp.sensor;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a time series to a fixed number of buckets, one per pixel column, keeping
+ * each bucket's min, max, first and last value. Drawing a vertical min-max stroke per
+ * column and joining neighbouring columns last-to-first shows every spike, and costs
+ * the same whether the window spans ten minutes or ten hours.
+ *
+ * The window slides: adding a sample past its end drops whole buckets from the front,
+ * so live appends are O(1) amortized and nothing already bucketed is recomputed.
+ * Samples must arrive in time order; older ones than the current bucket are ignored.
+ *
+ * Not thread-safe.
+ */
+public class MinMaxDecimator {
+
+    private final int buckets;
+    private final float[] min;
+    private final float[] max;
+    private final float[] first;
+    private final float[] last;
+    private final int[] count;
+    private long bucketWidth;
+    // Start time of the oldest bucket and its physical index
+    private long windowStart;
+    private int head;
+    private long lastTime;
+
+    public MinMaxDecimator(int buckets) {
+        if (buckets <= 0) throw new IllegalArgumentException("Buckets " + buckets);
+        this.buckets = buckets;
+        min = new float[buckets];
+        max = new float[buckets];
+        first = new float[buckets];
+        last = new float[buckets];
+        count = new int[buckets];
+        reset(buckets, buckets);
+    }
+
+    /** Empties the decimator and sets a window of {@code span} ms ending at {@code end}. */
+    public void reset(long end, long span) {
+        bucketWidth = Math.max(1, (span + buckets - 1) / buckets);
+        windowStart = end - bucketWidth * buckets;
+        head = 0;
+        lastTime = windowStart - 1;
+        Arrays.fill(count, 0);
+    }
+
+    public void add(long time, float value) {
+        if (Float.isNaN(value) || time < windowStart) return;
+        long offset = (time - windowStart) / bucketWidth;
+        if (offset >= buckets) {
+            slide(offset - buckets + 1);
+            offset = buckets - 1;
+        }
+        int i = (head + (int) offset) % buckets;
+        if (count[i] == 0) {
+            min[i] = max[i] = first[i] = value;
+        } else {
+            if (value < min[i]) min[i] = value;
+            if (value > max[i]) max[i] = value;
+        }
+        last[i] = value;
+        count[i]++;
+        if (time > lastTime) lastTime = time;
+    }
+
+    /** Adds {@code n} samples, e.g. a range copied out of {@link SensorSeries}. */
+    public void addAll(long[] times, float[] values, int n) {
+        for (int k = 0; k < n; k++) add(times[k], values[k]);
+    }
+
+    private void slide(long by) {
+        if (by >= buckets) {
+            Arrays.fill(count, 0);
+            head = 0;
+        } else {
+            for (int k = 0; k < by; k++) {
+                count[head] = 0;
+                head = (head + 1) % buckets;
+            }
+        }
+        windowStart += by * bucketWidth;
+    }
+
+    public int buckets() {
+        return buckets;
+    }
+
+    public long windowStart() {
+        return windowStart;
+    }
+
+    public long windowEnd() {
+        return windowStart + bucketWidth * buckets;
+    }
+
+    /** Time of the newest sample added, or just before the window if there is none. */
+    public long lastTime() {
+        return lastTime;
+    }
+
+    /** Column {@code column}, 0 being the oldest, has at least one sample. */
+    public boolean has(int column) {
+        return count[(head + column) % buckets] > 0;
+    }
+
+    public float min(int column) {
+        return min[(head + column) % buckets];
+    }
+
+    public float max(int column) {
+        return max[(head + column) % buckets];
+    }
+
+    public float first(int column) {
+        return first[(head + column) % buckets];
+    }
+
+    public float last(int column) {
+        return last[(head + column) % buckets];
+    }
+
+    /** Writes the smallest and largest value in the window to {@code out[0..1]}; false if empty. */
+    public boolean range(float[] out) {
+        float lo = Float.POSITIVE_INFINITY;
+        float hi = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < buckets; i++) {
+            if (count[i] == 0) continue;
+            if (min[i] < lo) lo = min[i];
+            if (max[i] > hi) hi = max[i];
+        }
+        out[0] = lo;
+        out[1] = hi;
+        return lo <= hi;
+    }
+
+    /**
+     * Line segments for {@code Canvas.drawLines}: per column a min-max stroke and a join
+     * from the previous non-empty column. Returns the number of floats written to
+     * {@code out}, which needs {@code 8 * buckets()} room.
+     */
+    public int toLines(float left, float top, float width, float height, float lo, float hi, float[] out) {
+        float scale = hi > lo ? height / (hi - lo) : 0;
+        float bottom = top + height;
+        float step = width / buckets;
+        int n = 0;
+        float prevX = 0;
+        float prevY = 0;
+        boolean hasPrev = false;
+        for (int c = 0; c < buckets; c++) {
+            int i = (head + c) % buckets;
+            if (count[i] == 0) {
+                // A gap in the data stays a gap on screen
+                hasPrev = false;
+                continue;
+            }
+            float x = left + (c + 0.5f) * step;
+            if (hasPrev) {
+                out[n++] = prevX;
+                out[n++] = prevY;
+                out[n++] = x;
+                out[n++] = bottom - (first[i] - lo) * scale;
+            }
+            out[n++] = x;
+            out[n++] = bottom - (min[i] - lo) * scale;
+            out[n++] = x;
+            out[n++] = bottom - (max[i] - lo) * scale;
+            prevX = x;
+            prevY = bottom - (last[i] - lo) * scale;
+            hasPrev = true;
+        }
+        return n;
+    }
+}
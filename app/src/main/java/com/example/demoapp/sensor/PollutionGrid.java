@@ -0,0 +1,196 @@
+package com.example.demoapp.sensor;
+
+import java.util.Arrays;
+
+/**
+ * Geo-tagged sensor values aggregated into square cells, one grid per map zoom level.
+ * Cells follow the Web Mercator tile grid: at level {@code z} the world is
+ * {@code 2^z} tiles of 256 px wide, and a cell covers {@link #CELL_PX} of those pixels,
+ * so a level's cells keep a constant on-screen size when drawn at the matching zoom.
+ *
+ * Adding a sample updates one cell per level, O(levels); nothing is recomputed.
+ * Each level is an open-addressing hash of cell coordinates to a running sum and
+ * count in primitive arrays, so hundreds of thousands of samples cost no objects.
+ * {@link #collect} looks up only the cells of a visible range, or scans the level
+ * when it holds fewer cells than the range.
+ *
+ * Thread-safe; one lock guards everything, held briefly per call.
+ */
+public class PollutionGrid {
+
+    public static final int MIN_LEVEL = 3;
+    public static final int MAX_LEVEL = 18;
+    /** Cell edge in tile pixels at its own zoom level. */
+    public static final int CELL_PX = 32;
+    private static final int CELLS_PER_TILE_SHIFT = 3;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final long EMPTY = -1;
+
+    private final Level[] levels = new Level[MAX_LEVEL - MIN_LEVEL + 1];
+    private int samples;
+
+    public PollutionGrid() {
+        for (int i = 0; i < levels.length; i++) levels[i] = new Level();
+    }
+
+    /** Adds one sample; NaN values and positions outside the map are ignored. */
+    public synchronized void add(double latitude, double longitude, float value) {
+        if (Float.isNaN(value) || Double.isNaN(latitude) || Double.isNaN(longitude)) return;
+        double x = mercatorX(longitude);
+        double y = mercatorY(latitude);
+        for (int z = MIN_LEVEL; z <= MAX_LEVEL; z++) {
+            long size = cellsAcross(z);
+            int cx = (int) Math.min(size - 1, (long) (x * size));
+            int cy = (int) Math.min(size - 1, (long) (y * size));
+            levels[z - MIN_LEVEL].add(key(cx, cy), value);
+        }
+        samples++;
+    }
+
+    public synchronized int samples() {
+        return samples;
+    }
+
+    public synchronized int cells(int level) {
+        return levels[level - MIN_LEVEL].size;
+    }
+
+    public synchronized void clear() {
+        for (Level level : levels) level.clear();
+        samples = 0;
+    }
+
+    /**
+     * Copies the non-empty cells of {@code level} with {@code minX <= cx <= maxX} and
+     * {@code minY <= cy <= maxY}: coordinates to {@code outCells} as x, y pairs and mean
+     * values to {@code outMeans}. Returns how many were copied; stops when full.
+     */
+    public synchronized int collect(int level, int minX, int minY, int maxX, int maxY,
+                                    int[] outCells, float[] outMeans) {
+        Level l = levels[level - MIN_LEVEL];
+        int limit = Math.min(outCells.length / 2, outMeans.length);
+        int n = 0;
+        if (l.size == 0) return 0;
+        long area = (long) (maxX - minX + 1) * (maxY - minY + 1);
+        if (area > l.keys.length) {
+            // Fewer stored cells than visible ones: scan the table instead
+            for (int slot = 0; slot < l.keys.length && n < limit; slot++) {
+                long key = l.keys[slot];
+                if (key == EMPTY) continue;
+                int cx = (int) (key >>> 32);
+                int cy = (int) key;
+                if (cx < minX || cx > maxX || cy < minY || cy > maxY) continue;
+                outCells[2 * n] = cx;
+                outCells[2 * n + 1] = cy;
+                outMeans[n] = (float) (l.sums[slot] / l.counts[slot]);
+                n++;
+            }
+            return n;
+        }
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                int slot = l.find(key(cx, cy));
+                if (slot < 0) continue;
+                if (n == limit) return n;
+                outCells[2 * n] = cx;
+                outCells[2 * n + 1] = cy;
+                outMeans[n] = (float) (l.sums[slot] / l.counts[slot]);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** The grid level to draw at a map zoom level. */
+    public static int levelFor(double zoom) {
+        return (int) Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, Math.round(zoom)));
+    }
+
+    /** Number of cells across the world, and down it, at {@code level}. */
+    public static long cellsAcross(int level) {
+        return 1L << (level + CELLS_PER_TILE_SHIFT);
+    }
+
+    /** Longitude as a fraction of the world's width, 0 at -180. */
+    public static double mercatorX(double longitude) {
+        return Math.max(0, Math.min(1, (longitude + 180) / 360));
+    }
+
+    /** Latitude as a fraction of the Web Mercator world's height, 0 at the top. */
+    public static double mercatorY(double latitude) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /** One zoom level: cell key to running sum and count, linear probing. */
+    private static final class Level {
+        long[] keys = emptyKeys(64);
+        double[] sums = new double[64];
+        int[] counts = new int[64];
+        int size;
+
+        void add(long key, float value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            sums[slot] += value;
+            counts[slot]++;
+            // Kept at most half full, so probes stay short
+            if (size * 2 > keys.length) grow();
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void clear() {
+            keys = emptyKeys(64);
+            sums = new double[64];
+            counts = new int[64];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldSums = sums;
+            int[] oldCounts = counts;
+            keys = emptyKeys(oldKeys.length * 2);
+            sums = new double[keys.length];
+            counts = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                sums[slot] = oldSums[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+
+        private static long[] emptyKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.demoapp.sensor;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
+/**
+ * Keeps the pollution map's {@link PollutionGrid} current for the whole process. On
+ * first use it replays {@link GeoSampleLog} into the grid on a background thread;
+ * geo-tagged readings from {@link SensorHub} are added as they arrive. The map only
+ * reads the grid, so panning and zooming never wait for aggregation.
+ */
+public class PollutionHeatmap {
+
+    /** Metric the map shows. */
+    public static final int METRIC = SensorMetric.PM25;
+    /** Changes are announced at most this often while samples stream in. */
+    public static final long UPDATE_INTERVAL_MS = 500;
+    // Replayed samples between progress updates while loading
+    private static final int REPLAY_UPDATE_EVERY = 16_384;
+    private static final String TAG = "PollutionHeatmap";
+    private static PollutionHeatmap instance;
+
+    private final PollutionGrid grid = new PollutionGrid();
+    private final Subject<Integer> changes = BehaviorSubject.<Integer>create().toSerialized();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    private PollutionHeatmap(SensorHub hub) {
+        // Live readings from now on; everything earlier comes from the log
+        long cutoff = System.currentTimeMillis();
+        hub.readings()
+                .filter(reading -> reading.hasLocation() && reading.timestamp >= cutoff)
+                .subscribe(reading -> {
+                    grid.add(reading.latitude, reading.longitude, reading.get(METRIC));
+                    changes.onNext(grid.samples());
+                }, t -> Log.e(TAG, "Readings", t));
+        GeoSampleLog geoLog = hub.geoLog();
+        loader.execute(() -> {
+            geoLog.flush();
+            long started = System.currentTimeMillis();
+            int[] visited = {0};
+            int count = geoLog.replay(cutoff, (timestamp, latitude, longitude, values) -> {
+                grid.add(latitude, longitude, values[METRIC]);
+                if (++visited[0] % REPLAY_UPDATE_EVERY == 0) changes.onNext(grid.samples());
+            });
+            changes.onNext(grid.samples());
+            Log.d(TAG, "Replayed " + count + " samples in " + (System.currentTimeMillis() - started) + " ms");
+        });
+    }
+
+    public static synchronized PollutionHeatmap get(Context context) {
+        if (instance == null) instance = new PollutionHeatmap(SensorHub.get(context));
+        return instance;
+    }
+
+    public PollutionGrid grid() {
+        return grid;
+    }
+
+    /** Emits the sample count whenever the grid changed, at most every {@link #UPDATE_INTERVAL_MS}. */
+    public Observable<Integer> changes() {
+        return changes.throttleLatest(UPDATE_INTERVAL_MS, TimeUnit.MILLISECONDS, true);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.demoapp.sensor;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.demoapp.ble.BleConnectionManager;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
+/**
+ * Owns the sensor's reading stream for the whole process, so the history keeps
+ * filling while the sensor screen is away, e.g. while the chart is open. Every
+ * reading is recorded in {@link SensorSeries#shared()} and {@link SensorLog} before
+ * it is passed on to the screens observing {@link #readings()}.
+ *
+ * While streaming, the hub also follows the phone's location. A reading that arrives
+ * within {@link #MAX_FIX_AGE_MS} of a fix is tagged with it and recorded in
+ * {@link GeoSampleLog} for the pollution map. Without location permission readings
+ * simply stay untagged.
+ *
+ * The stream follows the link held in {@link BleConnectionManager}: it resubscribes
+ * after each automatic reconnect and ends with {@link #stop()}.
+ */
+public class SensorHub {
+
+    /** A fix older than this is not used to tag readings. */
+    public static final long MAX_FIX_AGE_MS = 30_000;
+    private static final long LOCATION_INTERVAL_MS = 5000;
+    private static final String TAG = "SensorHub";
+    private static SensorHub instance;
+
+    private final Context context;
+    private final BleConnectionManager manager;
+    private final SensorSeries series;
+    private final SensorLog log;
+    private final GeoSampleLog geoLog;
+    private final FusedLocationProviderClient locationClient;
+    // Latest fix, written on the main thread and read where readings arrive
+    @Nullable private volatile Location lastFix;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            Location fix = result.getLastLocation();
+            if (fix != null) lastFix = fix;
+        }
+    };
+    private final Subject<SensorReading> readings = PublishSubject.<SensorReading>create().toSerialized();
+    @Nullable private Disposable stream;
+    @Nullable private String mac;
+    private long intervalMs;
+
+    private SensorHub(Context context) {
+        this.context = context;
+        manager = BleConnectionManager.get(context);
+        series = SensorSeries.shared();
+        log = SensorLog.get(context);
+        geoLog = GeoSampleLog.get(context);
+        locationClient = LocationServices.getFusedLocationProviderClient(context);
+    }
+
+    public static synchronized SensorHub get(Context context) {
+        if (instance == null) instance = new SensorHub(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Streams from the sensor at {@code mac}, replacing any earlier stream. The caller
+     * holds the link; calling again with the same device and interval does nothing.
+     */
+    public synchronized void start(String mac, long intervalMs) {
+        if (stream != null && !stream.isDisposed() && mac.equals(this.mac) && intervalMs == this.intervalMs) {
+            return;
+        }
+        stop();
+        this.mac = mac;
+        this.intervalMs = intervalMs;
+        // Runs again after every automatic reconnect; a new link replaces the old stream
+        stream = manager.link(mac)
+                .switchMap(link -> SensorStream.readings(link.connection, SensorStream.MODE_AUTO, intervalMs)
+                        .onErrorResumeNext(t -> {
+                            Log.e(TAG, mac + ": readings", t);
+                            return Observable.empty();
+                        }))
+                .map(this::tag)
+                .subscribe(reading -> {
+                    series.append(reading);
+                    log.append(reading);
+                    geoLog.append(reading);
+                    readings.onNext(reading);
+                }, t -> Log.e(TAG, mac + ": link", t));
+        startLocationUpdates();
+    }
+
+    public synchronized void stop() {
+        if (stream != null) stream.dispose();
+        stream = null;
+        mac = null;
+        locationClient.removeLocationUpdates(locationCallback);
+        lastFix = null;
+    }
+
+    private SensorReading tag(SensorReading reading) {
+        Location fix = lastFix;
+        if (fix == null) return reading;
+        long ageMs = (SystemClock.elapsedRealtimeNanos() - fix.getElapsedRealtimeNanos()) / 1_000_000;
+        return ageMs <= MAX_FIX_AGE_MS ? reading.withLocation(fix.getLatitude(), fix.getLongitude()) : reading;
+    }
+
+    @SuppressLint("MissingPermission")
+    private void startLocationUpdates() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "No location permission; readings stay untagged");
+            return;
+        }
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY,
+                LOCATION_INTERVAL_MS).build();
+        locationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+    }
+
+    public synchronized boolean isRunning() {
+        return stream != null && !stream.isDisposed();
+    }
+
+    /** Readings as they arrive, already recorded; on a computation thread. */
+    public Observable<SensorReading> readings() {
+        return readings;
+    }
+
+    public SensorSeries series() {
+        return series;
+    }
+
+    public SensorLog log() {
+        return log;
+    }
+
+    public GeoSampleLog geoLog() {
+        return geoLog;
+    }
+}
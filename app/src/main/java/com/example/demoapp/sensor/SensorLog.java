@@ -0,0 +1,263 @@
+package com.example.demoapp.sensor;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only on-disk log of sensor readings, in {@link LogSegment} files named
+ * {@code yyyyMMdd-NNN.slog} (UTC day, sequence). A new segment starts when the day
+ * changes, when the current one reaches its size limit, and on every app start.
+ *
+ * {@link #append} only copies the sample into a pending batch; a background thread
+ * writes the batch at most {@link #FLUSH_DELAY_MS} later, or as soon as it holds
+ * {@link #MAX_BATCH} samples. Queries memory-map the segments that overlap the
+ * requested range, so a week of history is searched in place instead of being parsed
+ * or loaded onto the heap.
+ *
+ * Thread-safe.
+ */
+public class SensorLog {
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 8L << 20;
+    /** Segments older than this are deleted when the log is opened. */
+    public static final int RETENTION_DAYS = 30;
+    static final long FLUSH_DELAY_MS = 2000;
+    static final int MAX_BATCH = 512;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String TAG = "SensorLog";
+    private static SensorLog instance;
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    // Guarded by itself
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.ROOT);
+
+    // Batch being filled and written batches for reuse, guarded by this
+    private Batch pending = new Batch();
+    private final ArrayDeque<Batch> spare = new ArrayDeque<>();
+    private boolean flushScheduled;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    // Writer thread only
+    private LogSegment.Writer segment;
+    private long segmentDay = Long.MIN_VALUE;
+    private int sequence;
+
+    // Mappings reused until their file grows, guarded by itself
+    private final Map<String, LogSegment.Mapped> mapped = new HashMap<>();
+
+    SensorLog(File dir, long maxSegmentBytes) {
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        if (!dir.isDirectory() && !dir.mkdirs()) Log.e(TAG, "Failed to create " + dir);
+    }
+
+    public static synchronized SensorLog get(Context context) {
+        if (instance == null) {
+            instance = new SensorLog(new File(context.getFilesDir(), "sensor_log"), DEFAULT_MAX_SEGMENT_BYTES);
+            instance.pruneBefore(System.currentTimeMillis() - RETENTION_DAYS * DAY_MS);
+        }
+        return instance;
+    }
+
+    public void append(SensorReading reading) {
+        Batch full = null;
+        boolean schedule;
+        synchronized (this) {
+            Batch b = pending;
+            // A clock step backwards must not break the ordering the queries rely on
+            lastTimestamp = Math.max(reading.timestamp, lastTimestamp);
+            b.times[b.count] = lastTimestamp;
+            for (int m = 0; m < SensorMetric.COUNT; m++) b.values[m][b.count] = reading.get(m);
+            b.count++;
+            if (b.count == MAX_BATCH) {
+                full = b;
+                pending = spare.isEmpty() ? new Batch() : spare.pop();
+            }
+            schedule = full == null && !flushScheduled;
+            if (schedule) flushScheduled = true;
+        }
+        if (full != null) {
+            Batch batch = full;
+            writer.execute(() -> write(batch));
+        } else if (schedule) {
+            writer.schedule(this::writePending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Writes everything appended so far and waits for it to reach the disk. */
+    public void flush() {
+        try {
+            writer.submit(() -> {
+                writePending();
+                if (segment != null) segment.force();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Flush failed", e.getCause());
+        }
+    }
+
+    /**
+     * Copies one metric's logged values in {@code [from, to)} into the arrays, oldest
+     * first, skipping missing values. Returns how many were copied; stops when the
+     * arrays are full. Samples still in the pending batch are not included.
+     */
+    public int copyRange(int metric, long from, long to, long[] outTimes, float[] outValues) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(LogSegment.SUFFIX));
+        if (files == null || from >= to) return 0;
+        // Names sort by day, then sequence; a segment never holds days before its own
+        Arrays.sort(files);
+        String lastDay = dayName(to - 1);
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().substring(0, 8).compareTo(lastDay) > 0) break;
+            LogSegment.Mapped segment = map(file);
+            if (segment == null || segment.lastTimestamp() < from) continue;
+            count = segment.copyRange(metric, from, to, outTimes, outValues, count);
+            if (count == Math.min(outTimes.length, outValues.length)) break;
+        }
+        return count;
+    }
+
+    /** Deletes segments whose day ended before {@code time}. */
+    public void pruneBefore(long time) {
+        String day = dayName(time);
+        writer.execute(() -> {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(LogSegment.SUFFIX));
+            if (files == null) return;
+            for (File file : files) {
+                if (file.getName().substring(0, 8).compareTo(day) >= 0) continue;
+                synchronized (mapped) {
+                    mapped.remove(file.getName());
+                }
+                if (!file.delete()) Log.w(TAG, "Failed to delete " + file);
+            }
+        });
+    }
+
+    private LogSegment.Mapped map(File file) {
+        synchronized (mapped) {
+            LogSegment.Mapped m = mapped.get(file.getName());
+            if (m != null && m.length == file.length()) return m;
+            try {
+                m = LogSegment.Mapped.open(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to map " + file, e);
+                return null;
+            }
+            if (m != null) mapped.put(file.getName(), m);
+            return m;
+        }
+    }
+
+    /** Writes the partly filled batch; writer thread only. */
+    private void writePending() {
+        Batch batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.count == 0) return;
+            batch = pending;
+            pending = spare.isEmpty() ? new Batch() : spare.pop();
+        }
+        write(batch);
+    }
+
+    private void write(Batch batch) {
+        long[] times = batch.times;
+        float[][] values = batch.values;
+        int n = batch.count;
+        try {
+            int start = 0;
+            while (start < n) {
+                // Samples of one day go to one segment
+                long day = Math.floorDiv(times[start], DAY_MS);
+                int end = start + 1;
+                while (end < n && Math.floorDiv(times[end], DAY_MS) == day) end++;
+                LogSegment.Writer out = segmentFor(day);
+                if (start == 0 && end == n) {
+                    out.write(times, values, n);
+                } else {
+                    out.write(Arrays.copyOfRange(times, start, end), slice(values, start, end), end - start);
+                }
+                start = end;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + n + " samples", e);
+        }
+        batch.count = 0;
+        synchronized (this) {
+            spare.push(batch);
+        }
+    }
+
+    private LogSegment.Writer segmentFor(long day) throws IOException {
+        if (segment != null && day == segmentDay && segment.size() < maxSegmentBytes) return segment;
+        if (segment != null) segment.close();
+        String name = dayName(day * DAY_MS);
+        if (day != segmentDay) {
+            segmentDay = day;
+            sequence = nextSequence(name);
+        } else {
+            sequence++;
+        }
+        File file = new File(dir, String.format(Locale.ROOT, "%s-%03d%s", name, sequence, LogSegment.SUFFIX));
+        segment = new LogSegment.Writer(file);
+        return segment;
+    }
+
+    /** One past the highest sequence already on disk for {@code day}, so restarts never append. */
+    private int nextSequence(String day) {
+        int next = 0;
+        File[] files = dir.listFiles((d, name) -> name.startsWith(day + "-") && name.endsWith(LogSegment.SUFFIX));
+        if (files == null) return next;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                int seq = Integer.parseInt(name.substring(9, name.length() - LogSegment.SUFFIX.length()));
+                next = Math.max(next, seq + 1);
+            } catch (NumberFormatException ignored) {
+                // Not one of ours
+            }
+        }
+        return next;
+    }
+
+    private String dayName(long time) {
+        synchronized (dayFormat) {
+            return dayFormat.format(new Date(time));
+        }
+    }
+
+    private static final class Batch {
+        final long[] times = new long[MAX_BATCH];
+        final float[][] values = new float[SensorMetric.COUNT][MAX_BATCH];
+        int count;
+    }
+
+    private static float[][] slice(float[][] values, int start, int end) {
+        float[][] out = new float[values.length][];
+        for (int m = 0; m < values.length; m++) out[m] = Arrays.copyOfRange(values[m], start, end);
+        return out;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demoapp.sensor;
+
+import java.util.Locale;
+
+/**
+ * The quantities the air quality sensor reports, as small int ids so that readings
+ * and stores can keep one primitive slot per metric.
+ */
+public final class SensorMetric {
+
+    public static final int PM1 = 0;
+    public static final int PM25 = 1;
+    public static final int PM10 = 2;
+    public static final int CO2 = 3;
+    public static final int VOC = 4;
+    public static final int TEMPERATURE = 5;
+    public static final int HUMIDITY = 6;
+    public static final int COUNT = 7;
+
+    private static final String[] LABELS = {
+            "PM1", "PM2.5", "PM10", "CO2", "VOC", "Temp", "Humidity"
+    };
+    private static final String[] UNITS = {
+            "µg/m³", "µg/m³", "µg/m³", "ppm", "ppb", "°C", "%"
+    };
+
+    private SensorMetric() {
+    }
+
+    public static String label(int metric) {
+        return LABELS[metric];
+    }
+
+    public static String unit(int metric) {
+        return UNITS[metric];
+    }
+
+    /** The metric a key in the sensor's output names, or -1 if it is not one we know. */
+    public static int fromKey(String key) {
+        switch (key.trim().toLowerCase(Locale.ROOT).replace("_", "").replace(".", "")) {
+            case "pm1":
+                return PM1;
+            case "pm25":
+                return PM25;
+            case "pm10":
+                return PM10;
+            case "co2":
+            case "eco2":
+                return CO2;
+            case "voc":
+            case "tvoc":
+                return VOC;
+            case "t":
+            case "temp":
+            case "temperature":
+                return TEMPERATURE;
+            case "h":
+            case "rh":
+            case "hum":
+            case "humidity":
+                return HUMIDITY;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demoapp.sensor;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Turns the sensor characteristic's UTF-8 payload into a {@link SensorReading}.
+ * Understands the three shapes the firmware has used:
+ * <ul>
+ *   <li>a JSON object, {@code {"pm25":12.5,"pm10":20}}</li>
+ *   <li>key/value pairs, {@code PM2.5=12.5, PM10:20; T=21.4}</li>
+ *   <li>bare numbers in {@link SensorMetric} id order, {@code 4.1,12.5,20}</li>
+ * </ul>
+ * Unknown keys are ignored; a payload without a single known value yields null.
+ */
+public final class SensorParser {
+
+    private SensorParser() {
+    }
+
+    @Nullable
+    public static SensorReading parse(byte[] payload, long timestamp) {
+        return parse(new String(payload, StandardCharsets.UTF_8), timestamp);
+    }
+
+    @Nullable
+    public static SensorReading parse(String text, long timestamp) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) return null;
+        float[] values = SensorReading.emptyValues();
+        boolean any = trimmed.charAt(0) == '{' ? parseJson(trimmed, values) : parsePairs(trimmed, values);
+        return any ? new SensorReading(timestamp, values) : null;
+    }
+
+    private static boolean parseJson(String text, float[] values) {
+        try {
+            JSONObject json = new JSONObject(text);
+            boolean any = false;
+            for (Iterator<String> keys = json.keys(); keys.hasNext(); ) {
+                String key = keys.next();
+                int metric = SensorMetric.fromKey(key);
+                double value = json.optDouble(key);
+                if (metric < 0 || Double.isNaN(value)) continue;
+                values[metric] = (float) value;
+                any = true;
+            }
+            return any;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private static boolean parsePairs(String text, float[] values) {
+        String[] fields = text.split("[,;\\n]");
+        boolean any = false;
+        int position = 0;
+        for (String field : fields) {
+            String f = field.trim();
+            if (f.isEmpty()) continue;
+            int sep = separator(f);
+            int metric;
+            String number;
+            if (sep < 0) {
+                // Unlabelled values follow the metric order
+                metric = position < SensorMetric.COUNT ? position : -1;
+                number = f;
+            } else {
+                metric = SensorMetric.fromKey(f.substring(0, sep));
+                number = f.substring(sep + 1);
+            }
+            position++;
+            if (metric < 0) continue;
+            float value = parseNumber(number);
+            if (Float.isNaN(value)) continue;
+            values[metric] = value;
+            any = true;
+        }
+        return any;
+    }
+
+    private static int separator(String field) {
+        int eq = field.indexOf('=');
+        return eq >= 0 ? eq : field.indexOf(':');
+    }
+
+    /** The leading number of {@code s}, ignoring a trailing unit; NaN if there is none. */
+    private static float parseNumber(String s) {
+        String t = s.trim();
+        int end = 0;
+        while (end < t.length()) {
+            char c = t.charAt(end);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E') {
+                end++;
+            } else {
+                break;
+            }
+        }
+        if (end == 0) return Float.NaN;
+        try {
+            return Float.parseFloat(t.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
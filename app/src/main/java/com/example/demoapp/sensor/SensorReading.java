@@ -0,0 +1,64 @@
+package com.example.demoapp.sensor;
+
+import java.util.Arrays;
+
+/**
+ * One parsed sample from the air quality sensor: the time it arrived and one value per
+ * {@link SensorMetric}, NaN where the sensor did not report that metric. Readings
+ * recorded while a location fix was available also carry where the phone was.
+ */
+public final class SensorReading {
+
+    /** Wall-clock time the sample was received, in milliseconds. */
+    public final long timestamp;
+    /** Position at capture time in degrees; NaN if there was no recent fix. */
+    public final double latitude;
+    public final double longitude;
+    private final float[] values;
+
+    SensorReading(long timestamp, float[] values) {
+        this(timestamp, values, Double.NaN, Double.NaN);
+    }
+
+    SensorReading(long timestamp, float[] values, double latitude, double longitude) {
+        this.timestamp = timestamp;
+        this.values = values;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /** The same sample tagged with where it was taken. */
+    SensorReading withLocation(double latitude, double longitude) {
+        return new SensorReading(timestamp, values, latitude, longitude);
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    public float get(int metric) {
+        return values[metric];
+    }
+
+    public boolean has(int metric) {
+        return !Float.isNaN(values[metric]);
+    }
+
+    static float[] emptyValues() {
+        float[] values = new float[SensorMetric.COUNT];
+        Arrays.fill(values, Float.NaN);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int m = 0; m < SensorMetric.COUNT; m++) {
+            if (!has(m)) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(SensorMetric.label(m)).append(": ").append(values[m])
+                    .append(' ').append(SensorMetric.unit(m));
+        }
+        return sb.toString();
+    }
+}
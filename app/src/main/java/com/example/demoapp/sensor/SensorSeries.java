@@ -0,0 +1,163 @@
+package com.example.demoapp.sensor;
+
+import java.util.Arrays;
+
+/**
+ * In-memory history of sensor readings: a fixed-capacity ring buffer with one primitive
+ * array for timestamps and one per {@link SensorMetric}, so nothing is boxed and memory
+ * is allocated once. Appending is O(1) and overwrites the oldest sample when full;
+ * timestamps are kept non-decreasing, so a time window is found by binary search and
+ * then scanned directly.
+ *
+ * At the default capacity a sample costs 36 bytes: about 4.5 MB holds 36 hours at
+ * one sample a second, or 3.5 hours at ten.
+ *
+ * Positions passed to the accessors are logical: 0 is the oldest sample held, size()-1
+ * the newest. Thread-safe; one lock guards everything.
+ */
+public class SensorSeries {
+
+    public static final int DEFAULT_CAPACITY = 1 << 17;
+
+    private static SensorSeries shared;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final float[][] values;
+    // Physical index of the oldest sample
+    private int head;
+    private int size;
+
+    public SensorSeries(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity " + capacity);
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        values = new float[SensorMetric.COUNT][capacity];
+    }
+
+    /** The series the sensor screen records into, shared with the chart and map. */
+    public static synchronized SensorSeries shared() {
+        if (shared == null) shared = new SensorSeries(DEFAULT_CAPACITY);
+        return shared;
+    }
+
+    public void append(SensorReading reading) {
+        synchronized (this) {
+            int slot = slotForAppend(reading.timestamp);
+            for (int m = 0; m < SensorMetric.COUNT; m++) values[m][slot] = reading.get(m);
+        }
+    }
+
+    /** Appends one sample; {@code sample} holds one value per metric, NaN if missing. */
+    public void append(long timestamp, float[] sample) {
+        synchronized (this) {
+            int slot = slotForAppend(timestamp);
+            for (int m = 0; m < SensorMetric.COUNT; m++) values[m][slot] = sample[m];
+        }
+    }
+
+    private int slotForAppend(long timestamp) {
+        int slot;
+        if (size < capacity) {
+            slot = (head + size) % capacity;
+            size++;
+        } else {
+            slot = head;
+            head = (head + 1) % capacity;
+        }
+        // A clock step backwards must not break the ordering the queries rely on
+        long newest = size > 1 ? timestamps[(slot + capacity - 1) % capacity] : Long.MIN_VALUE;
+        timestamps[slot] = Math.max(timestamp, newest);
+        return slot;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public synchronized long timestampAt(int position) {
+        return timestamps[slot(position)];
+    }
+
+    public synchronized float valueAt(int metric, int position) {
+        return values[metric][slot(position)];
+    }
+
+    /** Position of the first sample at or after {@code time}; size() if there is none. */
+    public synchronized int firstAtOrAfter(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[(head + mid) % capacity] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Copies the samples of one metric in {@code [from, to)} into the arrays, oldest
+     * first, skipping missing values. Returns how many were copied; stops when the
+     * arrays are full.
+     */
+    public synchronized int copyRange(int metric, long from, long to, long[] outTimes, float[] outValues) {
+        int limit = Math.min(outTimes.length, outValues.length);
+        int count = 0;
+        float[] column = values[metric];
+        for (int p = firstAtOrAfter(from); p < size && count < limit; p++) {
+            int s = (head + p) % capacity;
+            if (timestamps[s] >= to) break;
+            float v = column[s];
+            if (Float.isNaN(v)) continue;
+            outTimes[count] = timestamps[s];
+            outValues[count] = v;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Min, max and mean of one metric over {@code [from, to)}, written to
+     * {@code out[0..2]}; returns the number of samples, 0 leaving {@code out} as NaN.
+     */
+    public synchronized int summarize(int metric, long from, long to, float[] out) {
+        Arrays.fill(out, 0, 3, Float.NaN);
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double sum = 0;
+        int count = 0;
+        float[] column = values[metric];
+        for (int p = firstAtOrAfter(from); p < size; p++) {
+            int s = (head + p) % capacity;
+            if (timestamps[s] >= to) break;
+            float v = column[s];
+            if (Float.isNaN(v)) continue;
+            if (v < min) min = v;
+            if (v > max) max = v;
+            sum += v;
+            count++;
+        }
+        if (count > 0) {
+            out[0] = min;
+            out[1] = max;
+            out[2] = (float) (sum / count);
+        }
+        return count;
+    }
+
+    private int slot(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        return (head + position) % capacity;
+    }
+}
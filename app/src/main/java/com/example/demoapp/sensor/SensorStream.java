@@ -0,0 +1,103 @@
+package com.example.demoapp.sensor;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.util.Log;
+
+import com.polidea.rxandroidble3.RxBleConnection;
+import com.polidea.rxandroidble3.exceptions.BleDisconnectedException;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Readings from the air quality sensor's characteristic as a timestamped stream.
+ *
+ * In {@link #MODE_AUTO} the characteristic's properties decide: notifications or
+ * indications if it has them, so samples arrive without a GATT read round trip each,
+ * otherwise (or if enabling them fails) periodic reads. {@link #MODE_POLL} always reads.
+ * Either way at most one reading per sample interval is emitted, and parsing runs off
+ * the main thread.
+ */
+public final class SensorStream {
+
+    public static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000fef4-0000-1000-8000-00805f9b34fb");
+
+    public static final int MODE_AUTO = 0;
+    public static final int MODE_POLL = 1;
+
+    /** The polling period the screen always used; also the default sample interval. */
+    public static final long DEFAULT_INTERVAL_MS = 5000;
+
+    private static final String TAG = "SensorStream";
+
+    private SensorStream() {
+    }
+
+    /**
+     * @param intervalMs the sample interval; notifications arriving faster are thinned
+     *                   to the latest one per interval
+     */
+    public static Observable<SensorReading> readings(RxBleConnection connection, int mode, long intervalMs) {
+        Observable<byte[]> raw = mode == MODE_POLL
+                ? poll(connection, intervalMs)
+                : pushed(connection, intervalMs)
+                        .onErrorResumeNext(t -> {
+                            Log.w(TAG, "Notifications unavailable, polling instead", t);
+                            return poll(connection, intervalMs);
+                        });
+        // Stamped on arrival, parsed on a worker; unparseable payloads are skipped
+        return raw.map(bytes -> new Received(System.currentTimeMillis(), bytes))
+                .observeOn(Schedulers.computation())
+                .concatMapMaybe(r -> Maybe.fromCallable(() -> SensorParser.parse(r.bytes, r.receivedAt)));
+    }
+
+    private static Observable<byte[]> pushed(RxBleConnection connection, long intervalMs) {
+        return connection.discoverServices()
+                .flatMap(services -> services.getCharacteristic(CHARACTERISTIC_UUID))
+                .flatMapObservable(characteristic -> {
+                    int properties = characteristic.getProperties();
+                    Observable<Observable<byte[]>> setup;
+                    if ((properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0) {
+                        setup = connection.setupNotification(characteristic);
+                    } else if ((properties & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0) {
+                        setup = connection.setupIndication(characteristic);
+                    } else {
+                        Log.d(TAG, "Characteristic cannot notify, polling");
+                        return poll(connection, intervalMs);
+                    }
+                    Observable<byte[]> values = setup.flatMap(obs -> obs);
+                    return intervalMs > 0
+                            ? values.throttleLatest(intervalMs, TimeUnit.MILLISECONDS, true)
+                            : values;
+                });
+    }
+
+    private static Observable<byte[]> poll(RxBleConnection connection, long intervalMs) {
+        // The next read starts an interval after the previous one finished, so slow
+        // reads never pile up. A failed read is retried an interval later; only a
+        // lost connection ends the stream
+        return connection.readCharacteristic(CHARACTERISTIC_UUID)
+                .repeatWhen(done -> done.delay(intervalMs, TimeUnit.MILLISECONDS))
+                .retryWhen(errors -> errors.flatMap(t -> {
+                    if (t instanceof BleDisconnectedException) return Flowable.error(t);
+                    Log.w(TAG, "Read failed, retrying", t);
+                    return Flowable.timer(intervalMs, TimeUnit.MILLISECONDS);
+                }))
+                .toObservable();
+    }
+
+    private static final class Received {
+        final long receivedAt;
+        final byte[] bytes;
+
+        Received(long receivedAt, byte[] bytes) {
+            this.receivedAt = receivedAt;
+            this.bytes = bytes;
+        }
+    }
+}
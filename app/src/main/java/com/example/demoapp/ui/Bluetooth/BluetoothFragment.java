@@ -1,33 +1,39 @@
 package com.example.demoapp.ui.Bluetooth;
 
-import static com.polidea.rxandroidble3.internal.logger.LoggerUtil.bytesToHex;
-
 import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
+import android.text.format.DateFormat;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.Spinner;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.navigation.Navigation;
 
 import com.example.demoapp.R;
+import com.example.demoapp.ble.BleConnectionManager;
+import com.example.demoapp.ble.BleScanner;
+import com.example.demoapp.sensor.SensorHub;
+import com.example.demoapp.sensor.SensorMetric;
+import com.example.demoapp.sensor.SensorReading;
+import com.example.demoapp.sensor.SensorSeries;
+import com.example.demoapp.sensor.SensorStream;
 import com.polidea.rxandroidble3.RxBleClient;
 import com.polidea.rxandroidble3.RxBleDevice;
 import com.polidea.rxandroidble3.RxBleConnection;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import com.polidea.rxandroidble3.scan.ScanSettings;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
@@ -36,30 +42,30 @@ import io.reactivex.rxjava3.disposables.Disposable;
 public class BluetoothFragment extends Fragment {
 
     private static final int PERMISSION_REQUEST_CODE = 1;
-    private static final String CHARACTERISTIC_UUID = "0000fef4-0000-1000-8000-00805f9b34fb";
     private static final String TARGET_DEVICE_MAC = "30:30:F9:77:05:32";
+    // Key under which this screen holds the sensor link in BleConnectionManager
+    private static final String LINK_OWNER = "sensor";
+    private static final String PREFS_NAME = "sensor_prefs";
+    private static final String PREF_INTERVAL_MS = "sample_interval_ms";
+    // Sample intervals offered on screen, with their labels
+    private static final long[] INTERVALS_MS = {1000, 2000, 5000, 10_000, 30_000};
+    private static final String[] INTERVAL_LABELS = {"1 s", "2 s", "5 s", "10 s", "30 s"};
+    // Window of the averages shown under the latest reading
+    private static final long SUMMARY_WINDOW_MS = 10 * 60 * 1000;
     private TextView statusTextView;
     private TextView receivedDataTextView;
 
+    private BleConnectionManager bleManager;
     private RxBleClient rxBleClient;
     private RxBleDevice selectedDevice;
     private RxBleConnection connection;
     private Disposable connectionDisposable;
     private CompositeDisposable disposables = new CompositeDisposable();
-
-    private Handler handler = new Handler();
-    private Runnable updateTask = new Runnable() {
-        @Override
-        public void run() {
-            if (connection != null) {
-                readCharacteristic();
-                handler.postDelayed(this, 5000);
-            }
-        }
-    };
-
-
-
+    private long intervalMs = SensorStream.DEFAULT_INTERVAL_MS;
+    // Streams and records readings; keeps running while this screen is away
+    private SensorHub sensorHub;
+    private SensorSeries series;
+    private final float[] summary = new float[3];
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
@@ -76,9 +82,24 @@ public class BluetoothFragment extends Fragment {
 
         scanButton.setOnClickListener(v -> startScan());
         connectButton.setOnClickListener(v -> connectToDevice());
+        view.findViewById(R.id.btn_chart).setOnClickListener(v ->
+                Navigation.findNavController(v).navigate(R.id.navigation_chart));
+        setUpIntervalSpinner(view.findViewById(R.id.intervalSpinner));
 
         checkPermissions();
-        rxBleClient = RxBleClient.create(getContext());
+        bleManager = BleConnectionManager.get(requireContext());
+        sensorHub = SensorHub.get(requireContext());
+        series = sensorHub.series();
+        rxBleClient = bleManager.client();
+        disposables.add(sensorHub.readings()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::showReading, throwable -> Log.e("BLE", "Error reading sensor", throwable)));
+
+        // Reattach to the sensor link if it stayed up while this screen was away
+        for (String heldMac : bleManager.heldDevices(LINK_OWNER)) {
+            selectedDevice = rxBleClient.getBleDevice(heldMac);
+            connectToDevice();
+        }
 
         return view;
     }
@@ -100,17 +121,17 @@ public class BluetoothFragment extends Fragment {
 
     private void startScan() {
         statusTextView.setText("Scanning...");
-        Disposable scanDisposable = rxBleClient.scanBleDevices()
+        // The controller matches the sensor's address; the scan stops at the first hit
+        Disposable scanDisposable = BleScanner.findFirst(rxBleClient, ScanSettings.SCAN_MODE_LOW_LATENCY,
+                        BleScanner.DEFAULT_DURATION_MS, BleScanner.macFilter(TARGET_DEVICE_MAC))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(scanResult -> {
-                    if (scanResult.getBleDevice().getMacAddress().equals(TARGET_DEVICE_MAC)) {
-                        selectedDevice = scanResult.getBleDevice();
-                        statusTextView.setText("Target device found: " + selectedDevice.getName());
-                    }
+                    selectedDevice = scanResult.getBleDevice();
+                    statusTextView.setText("Target device found: " + selectedDevice.getName());
                 }, throwable -> {
                     statusTextView.setText("Scan failed.");
                     Log.e("BLE", "Scan failed: " + throwable.toString());
-                });
+                }, () -> statusTextView.setText("Target device not found."));
         disposables.add(scanDisposable);
     }
     private void connectToDevice() {
@@ -120,16 +141,18 @@ public class BluetoothFragment extends Fragment {
             return;
         }
 
-        connectionDisposable = selectedDevice.establishConnection(false)
+        String mac = selectedDevice.getMacAddress();
+        bleManager.hold(LINK_OWNER, mac);
+        connectionDisposable = bleManager.link(mac)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
-                        rxBleConnection -> {
-                            connection = rxBleConnection;
+                        link -> {
+                            connection = link.connection;
                             statusTextView.setText("Connected.");
                             Log.d("BLE", "Connected to device.");
 
-                            // Start the periodic task to read the characteristic every 5 seconds
-                            handler.postDelayed(updateTask, 5000);
+                            // Runs again after each automatic reconnect
+                            startReadings();
                         },
                         throwable -> {
                             statusTextView.setText("Connection failed.");
@@ -139,20 +162,48 @@ public class BluetoothFragment extends Fragment {
     }
 
 
-    private void readCharacteristic() {
-        if (connection != null) {
-            connection.readCharacteristic(UUID.fromString(CHARACTERISTIC_UUID))
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(
-                            bytes -> {
-                                // Convert bytes to string (or parse it to JSON if needed)
-                                String data = new String(bytes, StandardCharsets.UTF_8);
-                                receivedDataTextView.setText(data); // Show received data
-                            },
-                            throwable -> {
-                                Log.e("BLE", "Error reading characteristic", throwable);
-                            });
+    private void setUpIntervalSpinner(Spinner spinner) {
+        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        intervalMs = prefs.getLong(PREF_INTERVAL_MS, SensorStream.DEFAULT_INTERVAL_MS);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, INTERVAL_LABELS);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+        for (int i = 0; i < INTERVALS_MS.length; i++) {
+            if (INTERVALS_MS[i] == intervalMs) spinner.setSelection(i, false);
         }
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View v, int position, long id) {
+                if (INTERVALS_MS[position] == intervalMs) return;
+                intervalMs = INTERVALS_MS[position];
+                prefs.edit().putLong(PREF_INTERVAL_MS, intervalMs).apply();
+                startReadings();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    /** Starts the sensor's readings at the current interval; the hub follows reconnects. */
+    private void startReadings() {
+        if (connection == null) return;
+        sensorHub.start(selectedDevice.getMacAddress(), intervalMs);
+    }
+
+    private void showReading(SensorReading reading) {
+        StringBuilder text = new StringBuilder();
+        text.append(DateFormat.format("HH:mm:ss", reading.timestamp)).append('\n').append(reading);
+        long from = reading.timestamp - SUMMARY_WINDOW_MS;
+        int count = series.summarize(SensorMetric.PM25, from, reading.timestamp + 1, summary);
+        if (count > 1) {
+            text.append("\n\nLast 10 min PM2.5: avg ").append(Math.round(summary[2] * 10) / 10f)
+                    .append(", min ").append(summary[0]).append(", max ").append(summary[1])
+                    .append(" (").append(count).append(" samples)");
+        }
+        receivedDataTextView.setText(text);
     }
 
 
@@ -162,10 +213,8 @@ public class BluetoothFragment extends Fragment {
         if (connectionDisposable != null && !connectionDisposable.isDisposed()) {
             connectionDisposable.dispose();
         }
-        if (!disposables.isDisposed()) {
-            disposables.dispose();
-        }
-        handler.removeCallbacks(updateTask);  // Stop the periodic task when the fragment is destroyed
+        // The link itself stays held by the connection manager, and the hub keeps reading
+        disposables.clear();
     }
 
 
@@ -0,0 +1,190 @@
+package com.example.demoapp.ui.Chart;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.example.demoapp.R;
+import com.example.demoapp.sensor.MinMaxDecimator;
+import com.example.demoapp.sensor.SensorHub;
+import com.example.demoapp.sensor.SensorLog;
+import com.example.demoapp.sensor.SensorMetric;
+import com.example.demoapp.sensor.SensorReading;
+import com.example.demoapp.sensor.SensorSeries;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Live chart of one sensor metric over a chosen window. The window is bucketed once,
+ * off the main thread, into one min/max bucket per pixel column; after that each
+ * reading only updates the newest bucket, and drawing costs the same for ten minutes
+ * as for ten hours. Windows longer than the in-memory history are filled from the
+ * on-disk log.
+ */
+public class SensorChartFragment extends Fragment {
+
+    private static final String TAG = "SensorChart";
+    // Windows offered on screen, with their labels
+    private static final long[] WINDOWS_MS = {10 * 60_000L, 60 * 60_000L, 10 * 60 * 60_000L, 24 * 60 * 60_000L};
+    private static final String[] WINDOW_LABELS = {"10 min", "1 h", "10 h", "24 h"};
+    // Samples copied out of the series or the log per step while bucketing
+    private static final int LOAD_CHUNK = 4096;
+
+    /** Either history: both copy one metric's values in a range, oldest first. */
+    private interface RangeSource {
+        int copyRange(int metric, long from, long to, long[] outTimes, float[] outValues);
+    }
+
+    private SensorChartView chartView;
+    private TextView infoTextView;
+    private SensorHub hub;
+    private final CompositeDisposable disposables = new CompositeDisposable();
+    @Nullable private Disposable loadDisposable;
+    // Null while (re)bucketing; live readings are caught up from the series afterwards
+    @Nullable private MinMaxDecimator decimator;
+    private int metric = SensorMetric.PM25;
+    private long windowMs = WINDOWS_MS[0];
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_sensor_chart, container, false);
+        chartView = view.findViewById(R.id.chartView);
+        infoTextView = view.findViewById(R.id.chartInfoTextView);
+        hub = SensorHub.get(requireContext());
+
+        String[] metricLabels = new String[SensorMetric.COUNT];
+        for (int m = 0; m < SensorMetric.COUNT; m++) metricLabels[m] = SensorMetric.label(m);
+        setUpSpinner(view.findViewById(R.id.metricSpinner), metricLabels, metric, position -> {
+            metric = position;
+            reload();
+        });
+        setUpSpinner(view.findViewById(R.id.windowSpinner), WINDOW_LABELS, 0, position -> {
+            windowMs = WINDOWS_MS[position];
+            reload();
+        });
+
+        chartView.setListener(columns -> reload());
+        disposables.add(hub.readings()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::onReading, t -> Log.e(TAG, "Readings", t)));
+        if (!hub.isRunning()) infoTextView.setText("Sensor not connected; showing recorded history.");
+        return view;
+    }
+
+    private interface OnSelected {
+        void onSelected(int position);
+    }
+
+    private void setUpSpinner(Spinner spinner, String[] labels, int selection, OnSelected onSelected) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, labels);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+        spinner.setSelection(selection, false);
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            private int current = selection;
+
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View v, int position, long id) {
+                if (position == current) return;
+                current = position;
+                onSelected.onSelected(position);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    /** Buckets the window again for the current metric, window and width. */
+    private void reload() {
+        int columns = chartView.columns();
+        if (columns <= 0) return;
+        if (loadDisposable != null) disposables.remove(loadDisposable);
+        decimator = null;
+        int loadMetric = metric;
+        long loadWindowMs = windowMs;
+        SensorSeries series = hub.series();
+        SensorLog log = hub.log();
+        long started = SystemClock.elapsedRealtime();
+        loadDisposable = Single.fromCallable(() ->
+                        load(series, log, loadMetric, loadWindowMs, columns, System.currentTimeMillis()))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(loaded -> {
+                    // Readings that arrived while loading are in the series by now
+                    fill(loaded, series::copyRange, loadMetric, loaded.lastTime() + 1, Long.MAX_VALUE,
+                            new long[LOAD_CHUNK], new float[LOAD_CHUNK]);
+                    decimator = loaded;
+                    chartView.setDecimator(loaded);
+                    Log.d(TAG, "Bucketed " + loadWindowMs / 60_000 + " min into " + columns
+                            + " columns in " + (SystemClock.elapsedRealtime() - started) + " ms");
+                }, t -> Log.e(TAG, "Loading history failed", t));
+        disposables.add(loadDisposable);
+    }
+
+    private void onReading(SensorReading reading) {
+        if (reading.has(metric)) {
+            infoTextView.setText(SensorMetric.label(metric) + ": " + reading.get(metric) + " "
+                    + SensorMetric.unit(metric));
+        }
+        if (decimator == null) return;
+        decimator.add(reading.timestamp, reading.get(metric));
+        chartView.invalidate();
+    }
+
+    /**
+     * Buckets {@code [end - windowMs, end)} plus anything newer. The log supplies the
+     * part older than the in-memory series; the series supplies the rest.
+     */
+    private static MinMaxDecimator load(SensorSeries series, @Nullable SensorLog log, int metric,
+                                        long windowMs, int columns, long end) {
+        MinMaxDecimator loaded = new MinMaxDecimator(columns);
+        loaded.reset(end, windowMs);
+        long[] times = new long[LOAD_CHUNK];
+        float[] values = new float[LOAD_CHUNK];
+        long from = loaded.windowStart();
+        long inMemoryFrom = series.size() > 0 ? series.timestampAt(0) : Long.MAX_VALUE;
+        if (log != null && from < inMemoryFrom) {
+            fill(loaded, log::copyRange, metric, from, Math.min(inMemoryFrom, end), times, values);
+        }
+        long seriesFrom = Math.max(from, Math.min(inMemoryFrom, end));
+        fill(loaded, series::copyRange, metric, seriesFrom, Long.MAX_VALUE, times, values);
+        return loaded;
+    }
+
+    private static void fill(MinMaxDecimator target, RangeSource source, int metric, long from, long to,
+                             long[] times, float[] values) {
+        while (from < to) {
+            int n = source.copyRange(metric, from, to, times, values);
+            target.addAll(times, values, n);
+            if (n < times.length) return;
+            from = times[n - 1] + 1;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        chartView.setListener(null);
+        disposables.clear();
+        decimator = null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demoapp.ui.Chart;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.sensor.MinMaxDecimator;
+
+/**
+ * Draws a {@link MinMaxDecimator} with one bucket per pixel column as a single
+ * {@link Canvas#drawLines} call. The line buffer is allocated once per width, so a
+ * frame costs O(width) with no allocation, however many samples the window holds.
+ *
+ * Main thread only.
+ */
+public class SensorChartView extends View {
+
+    /** Told when the drawable width changes, so the owner can re-bucket for it. */
+    public interface Listener {
+        void onColumnsChanged(int columns);
+    }
+
+    private static final float TEXT_SIZE_DP = 12;
+    private final Paint linePaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float[] range = new float[2];
+    @Nullable private MinMaxDecimator decimator;
+    @Nullable private Listener listener;
+    private float[] lines = new float[0];
+    private int columns;
+
+    public SensorChartView(Context context) {
+        this(context, null);
+    }
+
+    public SensorChartView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        // Hairlines without anti-aliasing: one pixel per column, nothing to blend
+        linePaint.setColor(Color.GREEN);
+        linePaint.setStrokeWidth(0);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE_DP * getResources().getDisplayMetrics().density);
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+        if (listener != null && columns > 0) listener.onColumnsChanged(columns);
+    }
+
+    /** Pixel columns available for data; 0 before the first layout. */
+    public int columns() {
+        return columns;
+    }
+
+    public void setDecimator(@Nullable MinMaxDecimator decimator) {
+        this.decimator = decimator;
+        if (decimator != null && lines.length < 8 * decimator.buckets()) {
+            lines = new float[8 * decimator.buckets()];
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int newColumns = Math.max(0, w - getPaddingLeft() - getPaddingRight());
+        if (newColumns == columns) return;
+        columns = newColumns;
+        if (listener != null && columns > 0) listener.onColumnsChanged(columns);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (decimator == null || !decimator.range(range)) return;
+        float lo = range[0];
+        float hi = range[1];
+        if (hi == lo) {
+            lo -= 1;
+            hi += 1;
+        }
+        float textHeight = textPaint.getTextSize();
+        float left = getPaddingLeft();
+        float top = getPaddingTop() + textHeight;
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingBottom() - top - textHeight;
+        int n = decimator.toLines(left, top, width, height, lo, hi, lines);
+        canvas.drawLines(lines, 0, n, linePaint);
+        canvas.drawText(format(range[1]), left, top - textHeight / 4, textPaint);
+        canvas.drawText(format(range[0]), left, top + height + textHeight, textPaint);
+    }
+
+    private static String format(float value) {
+        return String.valueOf(Math.round(value * 10) / 10f);
+    }
+}
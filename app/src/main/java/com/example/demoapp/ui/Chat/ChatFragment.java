@@ -2,6 +2,8 @@ package com.example.demoapp.ui.Chat;
 
 import android.Manifest;
 import android.app.AlertDialog;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.text.TextUtils;
@@ -10,6 +12,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.TextView;
@@ -29,64 +32,74 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.demoapp.ChatAdapter;
 import com.example.demoapp.ChatMessage;
 import com.example.demoapp.R;
+import com.example.demoapp.ble.BleConnectionManager;
+import com.example.demoapp.ble.BleScanner;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 
 import com.polidea.rxandroidble3.RxBleClient;
-import com.polidea.rxandroidble3.RxBleConnection;
 import com.polidea.rxandroidble3.RxBleDevice;
+import com.polidea.rxandroidble3.scan.ScanResult;
+import com.polidea.rxandroidble3.scan.ScanSettings;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
-import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
 
 public class ChatFragment extends Fragment {
     private static final String TAG = "ChatBluetooth";
     private static final UUID SERVICE_UUID = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
-    private static final UUID RX_CHAR_UUID = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
-    private static final UUID TX_CHAR_UUID = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
-    private static final int CHUNK_SIZE = 125; // MTU–3
-
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int HISTORY_MAX_PAGES = 4;
+    // Load the next page this many rows before reaching the end of the window
+    private static final int HISTORY_PREFETCH = 10;
+    // Inbound messages are shown in batches closing after this long; 0 = next display frame
+    private static final long INBOUND_BATCH_WINDOW_MS = 0;
+    private static final String PREFS_NAME = "chat_prefs";
+    private static final String PREF_MESH_RELAY = "mesh_relay";
+
+    private BleConnectionManager bleManager;
     private RxBleClient rxBleClient;
-    private RxBleConnection connection;
+    // Connected chat peers, each with its own link, writers and outbox
+    private PeerPool peers;
     private final CompositeDisposable disposables = new CompositeDisposable();
 
     private TextView statusTextView;
     private EditText messageEditText;
     private RecyclerView chatRecyclerView;
+    // Shows a window onto the stored history, managed by historyPager
     private ChatAdapter chatAdapter;
-    private final ArrayList<ChatMessage> chatMessages = new ArrayList<>();
+    private ChatHistoryStore historyStore;
+    private ChatHistoryPager historyPager;
+    private final DisplayFrameBatcher<InboundEvent> inboundBatcher =
+            new DisplayFrameBatcher<>(INBOUND_BATCH_WINDOW_MS, this::showInboundMessages);
 
     private FusedLocationProviderClient fusedLocationClient;
     private final Map<String, RxBleDevice> discovered = new HashMap<>();
     private final ArrayList<String> deviceNamesList = new ArrayList<>();
-    private RxBleDevice selectedDevice;
+    @Nullable private Disposable scanDisposable;
 
-    // Group chat variables
-    private String currentGroupId = null;
-    private String currentGroupName = "Default Group";
-    private final Map<String, RxBleDevice> groupMembers = new HashMap<>();
-    private final Map<String, String> deviceNames = new HashMap<>();
+    // Group chat state, also updated by the inbound pipeline
+    private final GroupState groups = new GroupState();
     private Button createGroupBtn;
     private Button joinGroupBtn;
     private Button inviteDeviceBtn;
     private TextView groupInfoTextView;
-
-    // Buffer for incoming RX fragments
-    private final ByteArrayOutputStream incomingBuffer = new ByteArrayOutputStream();
+    // Duplicate suppression and forwarding of group messages for out-of-range peers
+    private final MeshRelay relay = MeshRelay.shared();
+    // Delivery state of the rows sent from this screen, combined over all peers
+    private final DeliveryTracker deliveries = DeliveryTracker.shared();
 
     // permissions
     private final ActivityResultLauncher<String[]> permLauncher =
@@ -121,12 +134,32 @@ public class ChatFragment extends Fragment {
         joinGroupBtn = v.findViewById(R.id.btn_join_group);
         inviteDeviceBtn = v.findViewById(R.id.btn_invite_device);
         groupInfoTextView = v.findViewById(R.id.groupInfoTextView);
+        CheckBox relayCheckBox = v.findViewById(R.id.relayCheckBox);
 
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(requireActivity());
-        chatAdapter = new ChatAdapter(chatMessages);
+        chatAdapter = new ChatAdapter();
         chatRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         chatRecyclerView.setAdapter(chatAdapter);
-        rxBleClient = RxBleClient.create(requireContext());
+        historyStore = ChatHistoryStore.get(requireContext());
+        historyPager = new ChatHistoryPager(historyStore, chatAdapter, disposables,
+                null, HISTORY_PAGE_SIZE, HISTORY_MAX_PAGES);
+        historyPager.loadNewest(this::scrollToEnd);
+        chatRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                LinearLayoutManager lm = (LinearLayoutManager) rv.getLayoutManager();
+                int count = chatAdapter.getItemCount();
+                if (lm == null || count == 0) return;
+                if (dy < 0 && lm.findFirstVisibleItemPosition() <= HISTORY_PREFETCH) {
+                    historyPager.loadOlder();
+                } else if (dy > 0 && lm.findLastVisibleItemPosition()
+                        >= count - 1 - HISTORY_PREFETCH) {
+                    historyPager.loadNewer();
+                }
+            }
+        });
+        bleManager = BleConnectionManager.get(requireContext());
+        rxBleClient = bleManager.client();
 
         scanBtn.setOnClickListener(x -> checkPermissions());
         connectBtn.setOnClickListener(x -> showDeviceDialog());
@@ -150,6 +183,20 @@ public class ChatFragment extends Fragment {
         joinGroupBtn.setOnClickListener(x -> joinGroup());
         inviteDeviceBtn.setOnClickListener(x -> inviteDeviceToGroup());
 
+        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        relay.setEnabled(prefs.getBoolean(PREF_MESH_RELAY, false));
+        relayCheckBox.setChecked(relay.isEnabled());
+        relayCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            relay.setEnabled(checked);
+            prefs.edit().putBoolean(PREF_MESH_RELAY, checked).apply();
+        });
+
+        // Reattach to the links that stayed up while the screen was away
+        peers = new PeerPool(bleManager, new File(requireContext().getFilesDir(), "outbox"), groups,
+                relay, peerListener);
+        peers.restore();
+        updateConnectionStatus();
+
         return v;
     }
 
@@ -170,23 +217,28 @@ public class ChatFragment extends Fragment {
         discovered.clear();
         deviceNamesList.clear();
 
-        Disposable d = rxBleClient.scanBleDevices()
+        // Only chat peers advertising the UART service wake us; the scan ends by itself
+        if (scanDisposable != null) scanDisposable.dispose();
+        scanDisposable = BleScanner.discover(rxBleClient, ScanSettings.SCAN_MODE_LOW_LATENCY,
+                        BleScanner.DEFAULT_DURATION_MS, BleScanner.serviceFilter(SERVICE_UUID))
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(scanResult -> {
-                    RxBleDevice dev = scanResult.getBleDevice();
-                    String mac = dev.getMacAddress();
-                    String name = dev.getName() != null ? dev.getName() : mac;
-                    if (!discovered.containsKey(mac)) {
-                        discovered.put(mac, dev);
-                        deviceNamesList.add(name + " (" + mac + ")");
-                        deviceNames.put(mac, name);
-                        statusTextView.setText("Found " + discovered.size());
+                .subscribe(results -> {
+                    for (ScanResult scanResult : results) {
+                        RxBleDevice dev = scanResult.getBleDevice();
+                        String mac = dev.getMacAddress();
+                        String name = dev.getName() != null ? dev.getName() : mac;
+                        if (!discovered.containsKey(mac)) {
+                            discovered.put(mac, dev);
+                            deviceNamesList.add(name + " (" + mac + ")");
+                            groups.putDeviceName(mac, name);
+                        }
                     }
+                    statusTextView.setText("Found " + discovered.size());
                 }, t -> {
                     statusTextView.setText("Scan failed");
                     Log.e(TAG, "scan", t);
-                });
-        disposables.add(d);
+                }, () -> statusTextView.setText("Scan finished, found " + discovered.size()));
+        disposables.add(scanDisposable);
     }
 
     private void showDeviceDialog() {
@@ -195,119 +247,115 @@ public class ChatFragment extends Fragment {
             return;
         }
         new AlertDialog.Builder(requireContext())
-                .setTitle("Select device")
+                .setTitle("Add peer")
                 .setItems(deviceNamesList.toArray(new String[0]), (dlg, which) -> {
                     String pick = deviceNamesList.get(which);
                     String mac = pick.substring(pick.indexOf('(') + 1, pick.indexOf(')'));
-                    selectedDevice = discovered.get(mac);
-                    statusTextView.setText("Selected " + pick);
-                    connect();
+                    statusTextView.setText("Connecting to " + pick);
+                    peers.connect(mac);
+                    peers.select(mac);
                 }).show();
     }
 
-    private void connect() {
-        if (selectedDevice == null) return;
-        Disposable d = selectedDevice.establishConnection(false)
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(conn -> {
-                    connection = conn;
-                    statusTextView.setText("Connected");
-                    subscribeNotifications();
-                }, t -> {
-                    statusTextView.setText("Connect failed");
-                    Log.e(TAG, "conn", t);
-                });
-        disposables.add(d);
-    }
+    private final PeerSession.Listener peerListener = new PeerSession.Listener() {
+        @Override
+        public void onInbound(PeerSession peer, InboundEvent event) {
+            if (event.forward != null) relayToOthers(peer, event.forward);
+            applyInboundEvent(peer, event);
+        }
 
-    private void subscribeNotifications() {
-        Disposable d = connection
-                .setupNotification(TX_CHAR_UUID)
-                .flatMap(obs -> obs)
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(bytes -> {
-                    incomingBuffer.write(bytes, 0, bytes.length);
-                    String currentData = new String(incomingBuffer.toByteArray(), StandardCharsets.UTF_8);
-
-                    if (isCompleteJson(currentData)) {
-                        try {
-                            JSONObject json = new JSONObject(currentData);
-                            handleIncomingMessage(json);
-                        } catch (JSONException e) {
-                            addChatMessage("RX: " + currentData, false, "Unknown", "UNKNOWN",
-                                    currentGroupId != null, currentGroupId);
-                        }
-                        incomingBuffer.reset();
-                    }
-                }, t -> Log.e(TAG, "notif", t));
-        disposables.add(d);
-    }
+        @Override
+        public void onLinkChanged(PeerSession peer) {
+            updateConnectionStatus();
+        }
 
-    private boolean isCompleteJson(String data) {
-        int braceCount = 0;
-        for (char c : data.toCharArray()) {
-            if (c == '{') braceCount++;
-            else if (c == '}') braceCount--;
+        @Override
+        public void onDelivery(PeerSession peer, List<OutboundQueue.Entry> entries, int state,
+                               boolean last, @Nullable String error) {
+            String reason = error != null ? groups.nameOf(peer.mac, peer.mac) + ": " + error : null;
+            for (OutboundQueue.Entry entry : entries) {
+                if (entry.tag != 0) updateDelivery(entry.tag, peer.mac, state, last, reason);
+            }
         }
-        return braceCount == 0 && data.trim().endsWith("}");
-    }
+    };
 
-    private void handleIncomingMessage(JSONObject json) {
+    /** Passes a group message on to every other group member. */
+    private void relayToOthers(PeerSession from, ChatPayload forward) {
+        List<String> recipients = groupMembers(from.mac);
+        if (recipients.isEmpty()) return;
         try {
-            String type = json.optString("type", "");
+            peers.send(recipients, 0, forward.toJson().toString(), ChatPayloadCodec.encode(forward),
+                    OutboundQueue.PRIORITY_CHAT);
+            Log.d(TAG, relay.stats());
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to relay message", e);
+        }
+    }
 
-            switch (type) {
-                case "group_create":
-                    handleGroupCreate(json);
-                    break;
-                case "group_join":
-                    handleGroupJoin(json);
-                    break;
-                case "group_invite":
-                    handleGroupInvite(json);
-                    break;
-                case "group_message":
-                    handleGroupMessage(json);
-                    break;
-                default:
-                    String senderMac = json.optString("sender_mac", "Unknown");
-                    String senderName = deviceNames.getOrDefault(senderMac, "Unknown");
-                    String message = json.optString("message", json.toString());
+    private void updateConnectionStatus() {
+        if (peers.isEmpty()) return;
+        int connected = peers.connectedCount();
+        if (connected == peers.size()) {
+            statusTextView.setText("Connected to " + connected + (connected == 1 ? " peer" : " peers"));
+        } else {
+            statusTextView.setText("Connected to " + connected + " of " + peers.size() + " peers, reconnecting…");
+        }
+    }
 
-                    addChatMessage(message, false, senderName, senderMac,
-                            currentGroupId != null, currentGroupId);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling incoming message", e);
-            addChatMessage("RX: " + json.toString(), false, "Unknown", "UNKNOWN",
-                    currentGroupId != null, currentGroupId);
+    private void applyInboundEvent(PeerSession from, InboundEvent event) {
+        switch (event.kind) {
+            case InboundEvent.KIND_INVITE:
+                new AlertDialog.Builder(requireContext())
+                        .setTitle("Group Invitation")
+                        .setMessage("Join group: " + event.groupName + "?")
+                        .setPositiveButton("Join", (dialog, which) -> {
+                            // The inviter is in the group, so the join goes to them
+                            groups.addMember(from.mac);
+                            joinExistingGroup(event.groupId);
+                        })
+                        .setNegativeButton("Decline", null)
+                        .show();
+                break;
+            default:
+                if (event.groupChanged) updateGroupUI();
+                inboundBatcher.offer(event);
         }
     }
 
+    /** Stores and shows the messages that arrived within one batch window, as one insert. */
+    private void showInboundMessages(List<InboundEvent> events) {
+        List<ChatMessage> messages = new ArrayList<>(events.size());
+        for (InboundEvent event : events) {
+            ChatMessage message = new ChatMessage(event.text, false, event.senderName, event.senderMac,
+                    event.isGroupMessage, event.groupId, event.payload);
+            historyStore.insertAsync(message);
+            messages.add(message);
+        }
+        // Don't pull the user away from older messages they are reading
+        historyPager.appendAll(messages, isAtBottom() ? this::scrollToEnd : null);
+    }
+
     private void createNewGroup() {
-        if (connection == null) {
+        if (peers.isEmpty()) {
             Toast.makeText(requireContext(), "Not connected to any device", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        currentGroupId = UUID.randomUUID().toString().substring(0, 8);
-        currentGroupName = "Group " + currentGroupId;
-
-        groupMembers.clear();
-        groupMembers.put("SELF", null);
-        deviceNames.put("SELF", "Me");
+        String groupId = UUID.randomUUID().toString().substring(0, 8);
+        String groupName = "Group " + groupId;
+        groups.create(groupId, groupName);
 
         updateGroupUI();
 
         JSONObject groupInfo = new JSONObject();
         try {
             groupInfo.put("type", "group_create");
-            groupInfo.put("group_id", currentGroupId);
-            groupInfo.put("group_name", currentGroupName);
+            groupInfo.put("group_id", groupId);
+            groupInfo.put("group_name", groupName);
             groupInfo.put("creator", "SELF");
             sendJsonMessage(groupInfo);
 
-            addChatMessage("Group created: " + currentGroupName, false, "System", "SYSTEM", false, "");
+            addChatMessage("Group created: " + groupName, false, "System", "SYSTEM", false, "");
         } catch (JSONException e) {
             Log.e(TAG, "Failed to create group message", e);
         }
@@ -330,18 +378,18 @@ public class ChatFragment extends Fragment {
     }
 
     private void joinExistingGroup(String groupId) {
-        currentGroupId = groupId;
-        currentGroupName = "Group " + groupId;
+        String groupName = "Group " + groupId;
+        groups.enter(groupId, groupName);
 
         JSONObject joinMessage = new JSONObject();
         try {
             joinMessage.put("type", "group_join");
-            joinMessage.put("group_id", currentGroupId);
+            joinMessage.put("group_id", groupId);
             joinMessage.put("device_mac", "SELF");
             joinMessage.put("device_name", "Me");
             sendJsonMessage(joinMessage);
 
-            addChatMessage("Joined group: " + currentGroupName, false, "System", "SYSTEM", false, "");
+            addChatMessage("Joined group: " + groupName, false, "System", "SYSTEM", false, "");
         } catch (JSONException e) {
             Log.e(TAG, "Failed to create join message", e);
         }
@@ -350,7 +398,8 @@ public class ChatFragment extends Fragment {
     }
 
     private void inviteDeviceToGroup() {
-        if (currentGroupId == null) {
+        GroupState.Group group = groups.getCurrent();
+        if (group == null) {
             Toast.makeText(requireContext(), "Create or join a group first", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -369,11 +418,11 @@ public class ChatFragment extends Fragment {
                     JSONObject inviteMessage = new JSONObject();
                     try {
                         inviteMessage.put("type", "group_invite");
-                        inviteMessage.put("group_id", currentGroupId);
-                        inviteMessage.put("group_name", currentGroupName);
-                        sendJsonMessage(inviteMessage);
+                        inviteMessage.put("group_id", group.id);
+                        inviteMessage.put("group_name", group.name);
+                        sendJsonMessage(inviteMessage, mac);
 
-                        addChatMessage("Invitation sent to " + deviceNames.get(mac), false,
+                        addChatMessage("Invitation sent to " + groups.nameOf(mac, mac), false,
                                 "System", "SYSTEM", false, "");
                     } catch (JSONException e) {
                         Log.e(TAG, "Failed to create invite message", e);
@@ -382,84 +431,50 @@ public class ChatFragment extends Fragment {
     }
 
     private void updateGroupUI() {
-        if (currentGroupId != null) {
-            groupInfoTextView.setText("Group: " + currentGroupName + " (" +
-                    groupMembers.size() + " members)");
+        GroupState.Group group = groups.getCurrent();
+        if (group != null) {
+            groupInfoTextView.setText("Group: " + group.name + " (" +
+                    groups.memberCount() + " members)");
             groupInfoTextView.setVisibility(View.VISIBLE);
         } else {
             groupInfoTextView.setVisibility(View.GONE);
         }
     }
 
-    private void handleGroupCreate(JSONObject json) {
-        String groupId = json.optString("group_id");
-        String groupName = json.optString("group_name", "Group " + groupId);
-        String creator = json.optString("creator");
-
-        currentGroupId = groupId;
-        currentGroupName = groupName;
-        groupMembers.put(creator, null);
-
-        updateGroupUI();
-        addChatMessage("Group created: " + groupName, false, "System", "SYSTEM", true, groupId);
-    }
-
-    private void handleGroupJoin(JSONObject json) {
-        String deviceMac = json.optString("device_mac");
-        String deviceName = json.optString("device_name", deviceMac);
-
-        groupMembers.put(deviceMac, null);
-        deviceNames.put(deviceMac, deviceName);
-
-        updateGroupUI();
-        addChatMessage(deviceName + " joined the group", false, "System", "SYSTEM", true, currentGroupId);
-    }
-
-    private void handleGroupInvite(JSONObject json) {
-        String groupId = json.optString("group_id");
-        String groupName = json.optString("group_name", "Group " + groupId);
-
-        new AlertDialog.Builder(requireContext())
-                .setTitle("Group Invitation")
-                .setMessage("Join group: " + groupName + "?")
-                .setPositiveButton("Join", (dialog, which) -> joinExistingGroup(groupId))
-                .setNegativeButton("Decline", null)
-                .show();
-    }
-
-    private void handleGroupMessage(JSONObject json) {
-        String senderMac = json.optString("sender_mac");
-        String senderName = deviceNames.getOrDefault(senderMac, "Unknown");
-        String message = json.optString("message");
-
-        addChatMessage(message, false, senderName, senderMac, true, currentGroupId);
+    private void sendJsonMessage(JSONObject json) {
+        sendJsonMessage(json, null);
     }
 
-    private void sendJsonMessage(JSONObject json) {
+    /** @param toMac the one peer to send to, or null to pick recipients by message type */
+    private void sendJsonMessage(JSONObject json, @Nullable String toMac) {
         try {
             // Always include sender information
             json.put("sender_mac", "SELF");
             json.put("sender_name", "Me");
 
-            // Include group info if in a group
-            if (currentGroupId != null) {
-                json.put("group_id", currentGroupId);
-                json.put("type", "group_message");
+            // Include group info if in a group, without hiding group control types
+            String groupId = groups.getGroupId();
+            if (groupId != null) {
+                json.put("group_id", groupId);
+                if (!json.has("type")) json.put("type", "group_message");
+            }
+            // Group messages carry an id and hop limit so relaying peers can pass them on
+            if (ChatPayload.TYPE_GROUP_MESSAGE.equals(json.optString("type"))) {
+                json.put("msg_id", Long.toHexString(relay.newMessageId()));
+                json.put("ttl", MeshRelay.DEFAULT_TTL);
             }
 
-            splitAndSend(json.toString());
+            splitAndSend(json.toString(), ChatPayload.fromJson(json), toMac);
         } catch (JSONException e) {
             Log.e(TAG, "Failed to add sender info to message", e);
             // Fallback: just send the original message
-            splitAndSend(json.toString());
+            splitAndSend(json.toString(), null, toMac);
         }
     }
 
     private void disconnect() {
-        disposables.clear();
-        connection = null;
-        currentGroupId = null;
-        groupMembers.clear();
+        peers.disconnectAll();
+        groups.leave();
         updateGroupUI();
         statusTextView.setText("Disconnected");
     }
@@ -509,7 +524,7 @@ public class ChatFragment extends Fragment {
                         } else {
                             sb.append("Location unavailable");
                         }
-                        splitAndSend(sb.toString());
+                        splitAndSend(sb.toString(), null, null);
                     }
                 })
                 .addOnFailureListener(e -> {
@@ -519,71 +534,145 @@ public class ChatFragment extends Fragment {
                 });
     }
 
-    private void splitAndSend(String msg) {
-        if (connection == null) {
+    /**
+     * @param msg     the text legacy peers receive (JSON for protocol messages)
+     * @param payload the parsed form of {@code msg}, or null if it has none
+     * @param toMac   the one peer to send to, or null to pick recipients by message type
+     */
+    private void splitAndSend(String msg, @Nullable ChatPayload payload, @Nullable String toMac) {
+        if (peers.isEmpty()) {
             Toast.makeText(requireContext(), "Not connected to any device", Toast.LENGTH_SHORT).show();
             return;
         }
+        List<String> recipients = recipientsFor(payload, toMac);
+        if (recipients.isEmpty()) {
+            Toast.makeText(requireContext(), "No peer to send this to", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-        try {
-            JSONObject json = new JSONObject(msg);
-            String displayText = "TX: " + json.toString(2);
-            addChatMessage(displayText, true, "Me", "SELF",
-                    currentGroupId != null, currentGroupId);
-        } catch (JSONException e) {
-            addChatMessage("TX: " + msg, true, "Me", "SELF",
-                    currentGroupId != null, currentGroupId);
+        String groupId = groups.getGroupId();
+        long tag = DeliveryTracker.newTag();
+        ChatMessage message;
+        if (payload != null) {
+            String text = payload.getText();
+            message = addChatMessage(text != null ? text : "", true, "Me", "SELF",
+                    groupId != null, groupId, payload, tag);
+        } else {
+            message = addChatMessage("TX: " + msg, true, "Me", "SELF", groupId != null, groupId, null, tag);
         }
+        deliveries.track(tag, recipients);
         messageEditText.setText("");
 
-        Disposable d = connection
-                .requestMtu(128)
-                .flatMapPublisher(mtu -> {
-                    byte[] data = msg.getBytes(StandardCharsets.UTF_8);
-                    List<byte[]> chunks = new ArrayList<>();
-                    for (int i = 0; i < data.length; i += CHUNK_SIZE) {
-                        int end = Math.min(data.length, i + CHUNK_SIZE);
-                        chunks.add(Arrays.copyOfRange(data, i, end));
-                    }
-                    return Flowable.fromIterable(chunks);
-                })
-                .concatMap(chunk ->
-                        connection.writeCharacteristic(RX_CHAR_UUID, chunk).toFlowable()
-                )
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(
-                        bytes -> Log.d(TAG, "chunk sent, size=" + bytes.length),
-                        t -> {
-                            Log.e(TAG, "send failed", t);
-                            updateLastChatMessageWithError(msg, t.getMessage());
-                        }
-                );
-        disposables.add(d);
+        int priority = payload != null && isControlMessage(payload)
+                ? OutboundQueue.PRIORITY_CONTROL : OutboundQueue.PRIORITY_CHAT;
+        // Each recipient's outbox keeps it until that peer is reachable
+        peers.send(recipients, tag, msg, payload != null ? ChatPayloadCodec.encode(payload) : null, priority);
+        if (peers.connectedCount() == 0) {
+            Toast.makeText(requireContext(), "Not connected, message queued", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Group messages go to the group's members among the pooled peers, and anything
+     * outside a group to the chat peer. A create or join goes to the members already
+     * known, else to the chat peer, which the message makes a member.
+     */
+    private List<String> recipientsFor(@Nullable ChatPayload payload, @Nullable String toMac) {
+        if (toMac != null) {
+            return peers.get(toMac) != null ? Collections.singletonList(toMac) : Collections.emptyList();
+        }
+        String type = payload != null ? payload.getType() : ChatPayload.TYPE_CHAT;
+        boolean announce = ChatPayload.TYPE_GROUP_CREATE.equals(type) || ChatPayload.TYPE_GROUP_JOIN.equals(type);
+        if (groups.getGroupId() != null) {
+            List<String> members = groupMembers(null);
+            if (!announce || !members.isEmpty()) return members;
+        }
+        String chatPeer = peers.chatPeer();
+        if (chatPeer == null) return Collections.emptyList();
+        if (announce) groups.addMember(chatPeer);
+        return Collections.singletonList(chatPeer);
+    }
+
+    /** Pooled peers in the current group, optionally leaving one out. */
+    private List<String> groupMembers(@Nullable String exceptMac) {
+        List<String> members = new ArrayList<>();
+        for (String mac : peers.macs()) {
+            if (!mac.equals(exceptMac) && groups.isMember(mac)) members.add(mac);
+        }
+        return members;
+    }
+
+    private static boolean isControlMessage(ChatPayload payload) {
+        switch (payload.getType()) {
+            case ChatPayload.TYPE_GROUP_CREATE:
+            case ChatPayload.TYPE_GROUP_JOIN:
+            case ChatPayload.TYPE_GROUP_INVITE:
+                return true;
+            default:
+                return false;
+        }
     }
 
     private void addChatMessage(String text, boolean isSent, String senderName,
                                 String senderMac, boolean isGroupMessage, String groupId) {
-        chatMessages.add(new ChatMessage(text, isSent, senderName, senderMac, isGroupMessage, groupId));
-        chatAdapter.notifyItemInserted(chatMessages.size() - 1);
-        chatRecyclerView.scrollToPosition(chatMessages.size() - 1);
+        addChatMessage(text, isSent, senderName, senderMac, isGroupMessage, groupId, null, 0);
     }
 
-    private void updateLastChatMessageWithError(String fullMessage, String errorMsg) {
-        if (!chatMessages.isEmpty()) {
-            ChatMessage lastMsg = chatMessages.get(chatMessages.size() - 1);
-            try {
-                JSONObject json = new JSONObject(fullMessage);
-                lastMsg.setMessage("TX: " + json.toString(2) + " (couldn't send: " + errorMsg + ")");
-            } catch (JSONException e) {
-                lastMsg.setMessage("TX: " + fullMessage + " (couldn't send: " + errorMsg + ")");
-            }
-            chatAdapter.notifyItemChanged(chatMessages.size() - 1);
+    /** @param deliveryTag non-zero for a message being sent; its row starts out queued */
+    private ChatMessage addChatMessage(String text, boolean isSent, String senderName,
+                                       String senderMac, boolean isGroupMessage, String groupId,
+                                       @Nullable ChatPayload payload, long deliveryTag) {
+        ChatMessage message = new ChatMessage(text, isSent, senderName, senderMac, isGroupMessage,
+                groupId, payload);
+        if (deliveryTag != 0) {
+            message.setDeliveryTag(deliveryTag);
+            message.setDeliveryState(ChatMessage.DELIVERY_QUEUED);
+        }
+        historyStore.insertAsync(message);
+        // The user's own messages always scroll into view
+        historyPager.append(message, isSent || isAtBottom() ? this::scrollToEnd : null);
+        return message;
+    }
+
+    private boolean isAtBottom() {
+        LinearLayoutManager lm = (LinearLayoutManager) chatRecyclerView.getLayoutManager();
+        int count = chatAdapter.getItemCount();
+        return lm == null || count == 0 || lm.findLastVisibleItemPosition() >= count - 1;
+    }
+
+    private void scrollToEnd() {
+        int count = chatAdapter.getItemCount();
+        if (count > 0) chatRecyclerView.scrollToPosition(count - 1);
+    }
+
+    /** Shows one peer's delivery report on the row the message belongs to. */
+    private void updateDelivery(long tag, String mac, int state, boolean last, @Nullable String error) {
+        DeliveryTracker.Report report;
+        if (deliveries.isTracked(tag)) {
+            report = deliveries.update(tag, mac, state, last, error);
+            if (report == null) return;
+        } else {
+            // Sent before the app restarted, so the other peers' reports are unknown
+            report = new DeliveryTracker.Report(tag, state, error);
+        }
+        historyStore.updateDeliveryAsync(tag, report.state, report.error);
+        List<ChatMessage> rows = chatAdapter.getCurrentList();
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            ChatMessage message = rows.get(i);
+            if (message.getDeliveryTag() != tag) continue;
+            message.setDeliveryState(report.state);
+            message.setDeliveryError(report.error);
+            chatAdapter.notifyItemChanged(i);
+            break;
         }
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        inboundBatcher.flushNow();
+        // The peer links stay held by the connection manager and are picked up again by restore()
+        peers.closeAll();
         disposables.clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.example.demoapp.ui.Chat;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ChatAdapter;
+import com.example.demoapp.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+
+/**
+ * Keeps a bounded window of the chat history and submits it to the adapter.
+ * Pages are loaded from {@link ChatHistoryStore} as the user scrolls towards either end,
+ * and the far end of the window is trimmed, so memory stays flat however long the
+ * history grows. Each change is submitted as one snapshot, which the adapter diffs
+ * off the main thread.
+ *
+ * Main thread only; queries run on the store's scheduler.
+ */
+public class ChatHistoryPager {
+
+    private static final String TAG = "ChatHistoryPager";
+
+    private final ChatHistoryStore store;
+    private final List<ChatMessage> window = new ArrayList<>();
+    private final ChatAdapter adapter;
+    private final CompositeDisposable disposables;
+    @Nullable private final String groupId;
+    private final int pageSize;
+    private final int maxSize;
+
+    private boolean loading;
+    private boolean hasOlder;
+    private boolean hasNewer;
+    // Messages appended while the newest page loads; stored after its query, so not in it
+    @Nullable private List<ChatMessage> appendedDuringLoad;
+
+    /**
+     * @param groupId  only page this group's messages, or null for all of them
+     * @param maxPages how many pages the window may hold before trimming
+     */
+    public ChatHistoryPager(ChatHistoryStore store, ChatAdapter adapter, CompositeDisposable disposables,
+                            @Nullable String groupId, int pageSize, int maxPages) {
+        this.store = store;
+        this.adapter = adapter;
+        this.disposables = disposables;
+        this.groupId = groupId;
+        this.pageSize = pageSize;
+        this.maxSize = pageSize * maxPages;
+    }
+
+    /**
+     * Replaces the window with the newest page, followed by anything appended while it
+     * loaded; {@code onLoaded} runs once it is shown.
+     */
+    public void loadNewest(Runnable onLoaded) {
+        loading = true;
+        appendedDuringLoad = new ArrayList<>();
+        disposables.add(Single.fromCallable(() -> store.loadBefore(groupId, Long.MAX_VALUE, pageSize))
+                .subscribeOn(store.scheduler())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(page -> {
+                    loading = false;
+                    window.clear();
+                    window.addAll(page);
+                    if (appendedDuringLoad != null) window.addAll(appendedDuringLoad);
+                    appendedDuringLoad = null;
+                    hasOlder = page.size() == pageSize;
+                    hasNewer = false;
+                    trimHead();
+                    adapter.submitList(new ArrayList<>(window), onLoaded);
+                }, this::onError));
+    }
+
+    public void loadOlder() {
+        if (loading || !hasOlder || window.isEmpty()) return;
+        ChatMessage first = window.get(0);
+        loading = true;
+        // The id is read on the store thread, where a pending insert may still set it
+        disposables.add(Single.fromCallable(() -> store.loadBefore(groupId, first.getId(), pageSize))
+                .subscribeOn(store.scheduler())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(page -> {
+                    loading = false;
+                    hasOlder = page.size() == pageSize;
+                    window.addAll(0, page);
+                    trimTail();
+                    adapter.submitList(new ArrayList<>(window));
+                }, this::onError));
+    }
+
+    public void loadNewer() {
+        if (loading || !hasNewer || window.isEmpty()) return;
+        ChatMessage last = window.get(window.size() - 1);
+        loading = true;
+        disposables.add(Single.fromCallable(() -> store.loadAfter(groupId, last.getId(), pageSize))
+                .subscribeOn(store.scheduler())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(page -> {
+                    loading = false;
+                    hasNewer = page.size() == pageSize;
+                    window.addAll(page);
+                    trimHead();
+                    adapter.submitList(new ArrayList<>(window));
+                }, this::onError));
+    }
+
+    public boolean append(ChatMessage message, @Nullable Runnable onShown) {
+        return appendAll(Collections.singletonList(message), onShown);
+    }
+
+    /**
+     * Shows messages that were just stored, as one update. Returns false when the user
+     * has paged away from the newest messages; they will appear when they scroll back down.
+     *
+     * @param onShown runs once the adapter shows them, e.g. to scroll to the end
+     */
+    public boolean appendAll(List<ChatMessage> messages, @Nullable Runnable onShown) {
+        if (appendedDuringLoad != null) appendedDuringLoad.addAll(messages);
+        if (hasNewer) return false;
+        window.addAll(messages);
+        // Trimming during a load would leave a gap next to the page that is arriving
+        if (!loading) trimHead();
+        adapter.submitList(new ArrayList<>(window), onShown);
+        return true;
+    }
+
+    private void trimHead() {
+        int excess = window.size() - maxSize;
+        if (excess <= 0) return;
+        window.subList(0, excess).clear();
+        hasOlder = true;
+    }
+
+    private void trimTail() {
+        int excess = window.size() - maxSize;
+        if (excess <= 0) return;
+        window.subList(window.size() - excess, window.size()).clear();
+        hasNewer = true;
+    }
+
+    private void onError(Throwable t) {
+        loading = false;
+        appendedDuringLoad = null;
+        Log.e(TAG, "history query failed", t);
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.demoapp.ui.Chat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * On-disk chat history, indexed by group and insertion order (row ids grow with time).
+ * All database work runs on one background thread, exposed as {@link #scheduler()}, so
+ * a page query always sees every insert issued before it. Coordinates of geotagged
+ * messages are also kept in their own columns, so the map reads them without
+ * decoding payloads.
+ */
+public class ChatHistoryStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "chat_history.db";
+    private static final int DB_VERSION = 4;
+
+    private static final String TABLE = "messages";
+    private static final String[] COLUMNS = {
+            "_id", "timestamp", "group_id", "is_sent", "sender_name", "sender_mac", "is_group", "message",
+            "payload", "error", "tag", "state"
+    };
+
+    private static ChatHistoryStore instance;
+
+    private final Scheduler scheduler = Schedulers.from(Executors.newSingleThreadExecutor());
+
+    private ChatHistoryStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    public static synchronized ChatHistoryStore get(Context context) {
+        if (instance == null) instance = new ChatHistoryStore(context.getApplicationContext());
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "group_id TEXT, "
+                + "is_sent INTEGER NOT NULL, "
+                + "sender_name TEXT, "
+                + "sender_mac TEXT, "
+                + "is_group INTEGER NOT NULL, "
+                + "message TEXT, "
+                + "payload BLOB, "
+                + "error TEXT, "
+                + "tag INTEGER NOT NULL DEFAULT 0, "
+                + "state INTEGER NOT NULL DEFAULT 0, "
+                + "latitude REAL, "
+                + "longitude REAL)");
+        db.execSQL("CREATE INDEX idx_messages_group ON " + TABLE + " (group_id, _id)");
+        db.execSQL("CREATE INDEX idx_messages_tag ON " + TABLE + " (tag) WHERE tag != 0");
+        db.execSQL("CREATE INDEX idx_messages_time ON " + TABLE + " (timestamp)");
+        db.execSQL("CREATE INDEX idx_messages_location ON " + TABLE + " (_id) WHERE latitude IS NOT NULL");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN payload BLOB");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN error TEXT");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN tag INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN state INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE INDEX idx_messages_tag ON " + TABLE + " (tag) WHERE tag != 0");
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN latitude REAL");
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN longitude REAL");
+            db.execSQL("CREATE INDEX idx_messages_location ON " + TABLE + " (_id) WHERE latitude IS NOT NULL");
+            backfillLocations(db);
+        }
+    }
+
+    /** Copies the coordinates of rows stored before they had their own columns. */
+    private static void backfillLocations(SQLiteDatabase db) {
+        try (Cursor c = db.query(TABLE, new String[]{"_id", "payload"}, "payload IS NOT NULL",
+                null, null, null, null)) {
+            while (c.moveToNext()) {
+                ChatPayload payload = decodePayload(c.getBlob(1));
+                if (payload == null || !payload.hasLocation()) continue;
+                ContentValues values = new ContentValues();
+                values.put("latitude", payload.getLatitude());
+                values.put("longitude", payload.getLongitude());
+                db.update(TABLE, values, "_id = ?", new String[]{String.valueOf(c.getLong(0))});
+            }
+        }
+    }
+
+    /** The thread every read and write runs on. */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /** Stores the message and sets its id once written. */
+    public void insertAsync(ChatMessage message) {
+        scheduler.scheduleDirect(() -> {
+            ContentValues values = new ContentValues();
+            values.put("timestamp", message.getTimestamp());
+            values.put("group_id", message.getGroupId());
+            values.put("is_sent", message.isSent() ? 1 : 0);
+            values.put("sender_name", message.getSenderName());
+            values.put("sender_mac", message.getSenderMac());
+            values.put("is_group", message.isGroupMessage() ? 1 : 0);
+            values.put("message", message.getMessage());
+            ChatPayload payload = message.getPayload();
+            if (payload != null) values.put("payload", ChatPayloadCodec.encode(payload));
+            if (payload != null && payload.hasLocation()) {
+                values.put("latitude", payload.getLatitude());
+                values.put("longitude", payload.getLongitude());
+            }
+            values.put("error", message.getDeliveryError());
+            values.put("tag", message.getDeliveryTag());
+            values.put("state", message.getDeliveryState());
+            message.setId(getWritableDatabase().insert(TABLE, null, values));
+        });
+    }
+
+    /** Persists a changed text or delivery state; runs after the message's own insert. */
+    public void updateAsync(ChatMessage message) {
+        String text = message.getMessage();
+        String error = message.getDeliveryError();
+        int state = message.getDeliveryState();
+        scheduler.scheduleDirect(() -> {
+            if (message.getId() < 0) return;
+            ContentValues values = new ContentValues();
+            values.put("message", text);
+            values.put("error", error);
+            values.put("state", state);
+            getWritableDatabase().update(TABLE, values, "_id = ?",
+                    new String[]{String.valueOf(message.getId())});
+        });
+    }
+
+    /**
+     * Updates the delivery state of a row that is no longer in memory, e.g. one sent
+     * before a restart whose outbox entry was only now acknowledged.
+     */
+    public void updateDeliveryAsync(long tag, int state, @Nullable String error) {
+        scheduler.scheduleDirect(() -> {
+            ContentValues values = new ContentValues();
+            values.put("error", error);
+            values.put("state", state);
+            getWritableDatabase().update(TABLE, values, "tag = ?", new String[]{String.valueOf(tag)});
+        });
+    }
+
+    /**
+     * Up to {@code limit} messages older than {@code beforeId}, oldest first.
+     * Pass {@link Long#MAX_VALUE} for the newest page. A null group means all messages.
+     * Must run on {@link #scheduler()}.
+     */
+    public List<ChatMessage> loadBefore(@Nullable String groupId, long beforeId, int limit) {
+        List<ChatMessage> page = query(groupId, "_id < ?", beforeId, "_id DESC", limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /** Up to {@code limit} messages newer than {@code afterId}, oldest first. */
+    public List<ChatMessage> loadAfter(@Nullable String groupId, long afterId, int limit) {
+        return query(groupId, "_id > ?", afterId, "_id ASC", limit);
+    }
+
+    /**
+     * Ids and coordinates of up to {@code outIds.length} geotagged messages newer than
+     * {@code afterId}, oldest first. Returns how many were copied. Must run on
+     * {@link #scheduler()}.
+     */
+    public int loadLocations(long afterId, long[] outIds, double[] outLatitudes, double[] outLongitudes) {
+        int limit = Math.min(outIds.length, Math.min(outLatitudes.length, outLongitudes.length));
+        int count = 0;
+        try (Cursor c = getReadableDatabase().query(TABLE, new String[]{"_id", "latitude", "longitude"},
+                "latitude IS NOT NULL AND _id > ?", new String[]{String.valueOf(afterId)},
+                null, null, "_id ASC", String.valueOf(limit))) {
+            while (c.moveToNext()) {
+                outIds[count] = c.getLong(0);
+                outLatitudes[count] = c.getDouble(1);
+                outLongitudes[count] = c.getDouble(2);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** The message with this row id, or null. Must run on {@link #scheduler()}. */
+    @Nullable
+    public ChatMessage load(long id) {
+        List<ChatMessage> rows = query(null, "_id = ?", id, "_id ASC", 1);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private List<ChatMessage> query(@Nullable String groupId, String idClause, long id,
+                                    String order, int limit) {
+        String selection = groupId != null ? "group_id = ? AND " + idClause : idClause;
+        String[] args = groupId != null
+                ? new String[]{groupId, String.valueOf(id)}
+                : new String[]{String.valueOf(id)};
+        List<ChatMessage> page = new ArrayList<>(limit);
+        try (Cursor c = getReadableDatabase().query(TABLE, COLUMNS, selection, args,
+                null, null, order, String.valueOf(limit))) {
+            while (c.moveToNext()) {
+                ChatMessage m = new ChatMessage(c.getString(7), c.getInt(3) != 0, c.getString(4),
+                        c.getString(5), c.getInt(6) != 0, c.getString(2), decodePayload(c.getBlob(8)));
+                m.setId(c.getLong(0));
+                m.setTimestamp(c.getLong(1));
+                m.setDeliveryError(c.getString(9));
+                m.setDeliveryTag(c.getLong(10));
+                m.setDeliveryState(c.getInt(11));
+                page.add(m);
+            }
+        }
+        return page;
+    }
+
+    @Nullable
+    private static ChatPayload decodePayload(@Nullable byte[] blob) {
+        if (blob == null) return null;
+        try {
+            return ChatPayloadCodec.decode(blob);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
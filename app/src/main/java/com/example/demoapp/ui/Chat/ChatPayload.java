@@ -0,0 +1,332 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * One chat protocol message, independent of how it travels on the wire. Converts to
+ * and from the JSON objects that {@link ChatFragment} has always exchanged, and is the
+ * input and output of {@link ChatPayloadCodec}.
+ */
+public final class ChatPayload {
+
+    public static final String TYPE_CHAT = "";
+    public static final String TYPE_GROUP_CREATE = "group_create";
+    public static final String TYPE_GROUP_JOIN = "group_join";
+    public static final String TYPE_GROUP_INVITE = "group_invite";
+    public static final String TYPE_GROUP_MESSAGE = "group_message";
+
+    private final String type;
+    @Nullable private final String senderMac;
+    @Nullable private final String senderName;
+    @Nullable private final String groupId;
+    @Nullable private final String groupName;
+    @Nullable private final String creator;
+    @Nullable private final String deviceMac;
+    @Nullable private final String deviceName;
+    @Nullable private final String text;
+    private final boolean hasLocation;
+    private final double latitude;
+    private final double longitude;
+    private final boolean locationUnavailable;
+    // Relay header: a random id (0 = none) and the hops the message may still travel
+    private final long messageId;
+    private final int ttl;
+
+    private ChatPayload(Builder b) {
+        type = b.type;
+        senderMac = b.senderMac;
+        senderName = b.senderName;
+        groupId = b.groupId;
+        groupName = b.groupName;
+        creator = b.creator;
+        deviceMac = b.deviceMac;
+        deviceName = b.deviceName;
+        text = b.text;
+        hasLocation = b.hasLocation;
+        latitude = b.latitude;
+        longitude = b.longitude;
+        locationUnavailable = b.locationUnavailable;
+        messageId = b.messageId;
+        ttl = b.ttl;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @Nullable
+    public String getSenderMac() {
+        return senderMac;
+    }
+
+    @Nullable
+    public String getSenderName() {
+        return senderName;
+    }
+
+    @Nullable
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @Nullable
+    public String getGroupName() {
+        return groupName;
+    }
+
+    @Nullable
+    public String getCreator() {
+        return creator;
+    }
+
+    @Nullable
+    public String getDeviceMac() {
+        return deviceMac;
+    }
+
+    @Nullable
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public boolean isLocationUnavailable() {
+        return locationUnavailable;
+    }
+
+    /** Network-wide id used to suppress duplicates, or 0 if the sender set none. */
+    public long getMessageId() {
+        return messageId;
+    }
+
+    /** Hops this copy may still travel, including the one that delivered it; 0 if unset. */
+    public int getTtl() {
+        return ttl;
+    }
+
+    /** A builder preset with every field of this payload. */
+    public Builder toBuilder() {
+        Builder b = new Builder(type)
+                .sender(senderMac, senderName)
+                .group(groupId, groupName)
+                .creator(creator)
+                .device(deviceMac, deviceName)
+                .text(text)
+                .relay(messageId, ttl);
+        if (hasLocation) b.location(latitude, longitude);
+        else if (locationUnavailable) b.locationUnavailable();
+        return b;
+    }
+
+    public static String locationUrl(double latitude, double longitude) {
+        return "https://www.openstreetmap.org/?mlat=" + latitude + "&mlon=" + longitude;
+    }
+
+    /** The JSON form used by legacy peers; location_url is rebuilt from the coordinates. */
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        if (!type.isEmpty()) json.put("type", type);
+        putIfPresent(json, "group_id", groupId);
+        putIfPresent(json, "group_name", groupName);
+        putIfPresent(json, "creator", creator);
+        putIfPresent(json, "device_mac", deviceMac);
+        putIfPresent(json, "device_name", deviceName);
+        putIfPresent(json, "message", text);
+        if (hasLocation) {
+            json.put("latitude", latitude);
+            json.put("longitude", longitude);
+            json.put("location_url", locationUrl(latitude, longitude));
+        } else if (locationUnavailable) {
+            json.put("location", "unavailable");
+        }
+        putIfPresent(json, "sender_mac", senderMac);
+        putIfPresent(json, "sender_name", senderName);
+        if (messageId != 0) json.put("msg_id", Long.toHexString(messageId));
+        if (ttl > 0) json.put("ttl", ttl);
+        return json;
+    }
+
+    /**
+     * Reads a protocol JSON object. Returns null when the object carries a type or a key
+     * this model does not know, so callers can keep sending it as JSON without losing data.
+     */
+    @Nullable
+    public static ChatPayload fromJson(JSONObject json) {
+        Builder b = new Builder(TYPE_CHAT);
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.opt(key);
+            switch (key) {
+                case "type":
+                    if (!(value instanceof String) || !isKnownType((String) value)) return null;
+                    b.type = (String) value;
+                    break;
+                case "latitude":
+                case "longitude":
+                    if (!(value instanceof Number)) return null;
+                    break;
+                case "location_url":
+                    break;
+                case "msg_id":
+                    if (!(value instanceof String)) return null;
+                    b.messageId = parseMessageId((String) value);
+                    if (b.messageId == 0) return null;
+                    break;
+                case "ttl":
+                    if (!(value instanceof Integer) || (Integer) value < 0) return null;
+                    b.ttl = (Integer) value;
+                    break;
+                case "location":
+                    if (!"unavailable".equals(value)) return null;
+                    b.locationUnavailable = true;
+                    break;
+                default:
+                    if (!(value instanceof String) || !b.setString(key, (String) value)) return null;
+            }
+        }
+        boolean hasLat = json.has("latitude");
+        if (hasLat != json.has("longitude")) return null;
+        if (hasLat) b.location(json.optDouble("latitude"), json.optDouble("longitude"));
+        return b.build();
+    }
+
+    static boolean isKnownType(String type) {
+        switch (type) {
+            case TYPE_CHAT:
+            case TYPE_GROUP_CREATE:
+            case TYPE_GROUP_JOIN:
+            case TYPE_GROUP_INVITE:
+            case TYPE_GROUP_MESSAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Parses up to 16 hex digits as an unsigned id; returns 0 if malformed. */
+    private static long parseMessageId(String hex) {
+        if (hex.isEmpty() || hex.length() > 16) return 0;
+        long id = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) return 0;
+            id = (id << 4) | digit;
+        }
+        return id;
+    }
+
+    private static void putIfPresent(JSONObject json, String key, @Nullable String value)
+            throws JSONException {
+        if (value != null) json.put(key, value);
+    }
+
+    public static final class Builder {
+        private String type;
+        private String senderMac;
+        private String senderName;
+        private String groupId;
+        private String groupName;
+        private String creator;
+        private String deviceMac;
+        private String deviceName;
+        private String text;
+        private boolean hasLocation;
+        private double latitude;
+        private double longitude;
+        private boolean locationUnavailable;
+        private long messageId;
+        private int ttl;
+
+        public Builder(String type) {
+            this.type = type;
+        }
+
+        public Builder sender(@Nullable String mac, @Nullable String name) {
+            senderMac = mac;
+            senderName = name;
+            return this;
+        }
+
+        public Builder group(@Nullable String id, @Nullable String name) {
+            groupId = id;
+            groupName = name;
+            return this;
+        }
+
+        public Builder creator(@Nullable String creator) {
+            this.creator = creator;
+            return this;
+        }
+
+        public Builder device(@Nullable String mac, @Nullable String name) {
+            deviceMac = mac;
+            deviceName = name;
+            return this;
+        }
+
+        public Builder text(@Nullable String text) {
+            this.text = text;
+            return this;
+        }
+
+        public Builder location(double latitude, double longitude) {
+            hasLocation = true;
+            locationUnavailable = false;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            return this;
+        }
+
+        public Builder locationUnavailable() {
+            hasLocation = false;
+            locationUnavailable = true;
+            return this;
+        }
+
+        public Builder relay(long messageId, int ttl) {
+            this.messageId = messageId;
+            this.ttl = ttl;
+            return this;
+        }
+
+        public ChatPayload build() {
+            return new ChatPayload(this);
+        }
+
+        boolean setString(String key, String value) {
+            switch (key) {
+                case "sender_mac": senderMac = value; return true;
+                case "sender_name": senderName = value; return true;
+                case "group_id": groupId = value; return true;
+                case "group_name": groupName = value; return true;
+                case "creator": creator = value; return true;
+                case "device_mac": deviceMac = value; return true;
+                case "device_name": deviceName = value; return true;
+                case "message": text = value; return true;
+                default: return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.demoapp.ui.Chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of {@link ChatPayload}, used instead of JSON text once both peers
+ * advertise {@link com.example.demoapp.ble.LinkFeatures#BINARY_CODEC}.
+ *
+ * <pre>
+ *  version (1 byte) | type tag (1 byte) | field mask (varint) | fields in mask-bit order
+ * </pre>
+ *
+ * Strings are a varint length followed by UTF-8; MAC addresses are packed into six raw
+ * bytes; coordinates are zigzag varints in 1e-7 degree units (about 1 cm). The location
+ * URL is not sent at all and is rebuilt from the coordinates on the receiving side.
+ */
+public final class ChatPayloadCodec {
+
+    public static final int VERSION = 1;
+
+    private static final int F_SENDER_MAC = 1;
+    private static final int F_SENDER_NAME = 1 << 1;
+    private static final int F_GROUP_ID = 1 << 2;
+    private static final int F_GROUP_NAME = 1 << 3;
+    private static final int F_CREATOR = 1 << 4;
+    private static final int F_DEVICE_MAC = 1 << 5;
+    private static final int F_DEVICE_NAME = 1 << 6;
+    private static final int F_TEXT = 1 << 7;
+    private static final int F_LOCATION = 1 << 8;
+    private static final int F_LOCATION_UNAVAILABLE = 1 << 9;
+    private static final int F_MSG_ID = 1 << 10;
+    private static final int F_TTL = 1 << 11;
+
+    private static final String[] TYPES = {
+            ChatPayload.TYPE_CHAT,
+            ChatPayload.TYPE_GROUP_CREATE,
+            ChatPayload.TYPE_GROUP_JOIN,
+            ChatPayload.TYPE_GROUP_INVITE,
+            ChatPayload.TYPE_GROUP_MESSAGE
+    };
+
+    private static final double COORD_SCALE = 1e7;
+
+    private ChatPayloadCodec() {
+    }
+
+    public static byte[] encode(ChatPayload p) {
+        int mask = 0;
+        if (p.getSenderMac() != null) mask |= F_SENDER_MAC;
+        if (p.getSenderName() != null) mask |= F_SENDER_NAME;
+        if (p.getGroupId() != null) mask |= F_GROUP_ID;
+        if (p.getGroupName() != null) mask |= F_GROUP_NAME;
+        if (p.getCreator() != null) mask |= F_CREATOR;
+        if (p.getDeviceMac() != null) mask |= F_DEVICE_MAC;
+        if (p.getDeviceName() != null) mask |= F_DEVICE_NAME;
+        if (p.getText() != null) mask |= F_TEXT;
+        if (p.hasLocation()) mask |= F_LOCATION;
+        if (p.isLocationUnavailable()) mask |= F_LOCATION_UNAVAILABLE;
+        if (p.getMessageId() != 0) mask |= F_MSG_ID;
+        if (p.getTtl() > 0) mask |= F_TTL;
+
+        Writer w = new Writer(32 + (p.getText() != null ? p.getText().length() * 3 : 0));
+        w.writeByte(VERSION);
+        w.writeByte(typeTag(p.getType()));
+        w.writeVarint(mask);
+        if ((mask & F_SENDER_MAC) != 0) w.writeMac(p.getSenderMac());
+        if ((mask & F_SENDER_NAME) != 0) w.writeString(p.getSenderName());
+        if ((mask & F_GROUP_ID) != 0) w.writeString(p.getGroupId());
+        if ((mask & F_GROUP_NAME) != 0) w.writeString(p.getGroupName());
+        if ((mask & F_CREATOR) != 0) w.writeMac(p.getCreator());
+        if ((mask & F_DEVICE_MAC) != 0) w.writeMac(p.getDeviceMac());
+        if ((mask & F_DEVICE_NAME) != 0) w.writeString(p.getDeviceName());
+        if ((mask & F_TEXT) != 0) w.writeString(p.getText());
+        if ((mask & F_LOCATION) != 0) {
+            w.writeVarint(zigzag(Math.round(p.getLatitude() * COORD_SCALE)));
+            w.writeVarint(zigzag(Math.round(p.getLongitude() * COORD_SCALE)));
+        }
+        if ((mask & F_MSG_ID) != 0) w.writeLong(p.getMessageId());
+        if ((mask & F_TTL) != 0) w.writeVarint(p.getTtl());
+        return w.toByteArray();
+    }
+
+    /** @throws IllegalArgumentException if the data is truncated or of an unknown version */
+    public static ChatPayload decode(byte[] data) {
+        Reader r = new Reader(data);
+        int version = r.readByte();
+        if (version != VERSION) throw new IllegalArgumentException("Unknown codec version " + version);
+        int tag = r.readByte();
+        if (tag >= TYPES.length) throw new IllegalArgumentException("Unknown type tag " + tag);
+        int mask = (int) r.readVarint();
+
+        ChatPayload.Builder b = new ChatPayload.Builder(TYPES[tag]);
+        String senderMac = (mask & F_SENDER_MAC) != 0 ? r.readMac() : null;
+        String senderName = (mask & F_SENDER_NAME) != 0 ? r.readString() : null;
+        String groupId = (mask & F_GROUP_ID) != 0 ? r.readString() : null;
+        String groupName = (mask & F_GROUP_NAME) != 0 ? r.readString() : null;
+        String creator = (mask & F_CREATOR) != 0 ? r.readMac() : null;
+        String deviceMac = (mask & F_DEVICE_MAC) != 0 ? r.readMac() : null;
+        String deviceName = (mask & F_DEVICE_NAME) != 0 ? r.readString() : null;
+        String text = (mask & F_TEXT) != 0 ? r.readString() : null;
+        b.sender(senderMac, senderName).group(groupId, groupName).creator(creator)
+                .device(deviceMac, deviceName).text(text);
+        if ((mask & F_LOCATION) != 0) {
+            double lat = unzigzag(r.readVarint()) / COORD_SCALE;
+            double lon = unzigzag(r.readVarint()) / COORD_SCALE;
+            b.location(lat, lon);
+        } else if ((mask & F_LOCATION_UNAVAILABLE) != 0) {
+            b.locationUnavailable();
+        }
+        long messageId = (mask & F_MSG_ID) != 0 ? r.readLong() : 0;
+        int ttl = (mask & F_TTL) != 0 ? (int) r.readVarint() : 0;
+        b.relay(messageId, ttl);
+        return b.build();
+    }
+
+    private static int typeTag(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) return i;
+        }
+        throw new IllegalArgumentException("Type has no binary tag: " + type);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        // Upper case only, so that decoding gives back exactly the same string
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        /** Ids are random, so a varint would usually be longer than eight fixed bytes. */
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) buf[pos++] = (byte) (v >>> shift);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint((long) bytes.length << 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        /** "AA:BB:CC:DD:EE:FF" goes out as a marker plus six bytes; anything else as a string. */
+        void writeMac(String s) {
+            if (s.length() != 17) {
+                writeString(s);
+                return;
+            }
+            byte[] mac = new byte[6];
+            for (int i = 0; i < 6; i++) {
+                int hi = hexDigit(s.charAt(i * 3));
+                int lo = hexDigit(s.charAt(i * 3 + 1));
+                if (hi < 0 || lo < 0 || (i < 5 && s.charAt(i * 3 + 2) != ':')) {
+                    writeString(s);
+                    return;
+                }
+                mac[i] = (byte) ((hi << 4) | lo);
+            }
+            writeVarint(1);
+            ensure(6);
+            System.arraycopy(mac, 0, buf, pos, 6);
+            pos += 6;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            require(1);
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            require(8);
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | (data[pos++] & 0xFF);
+            return v;
+        }
+
+        String readString() {
+            long header = readVarint();
+            if ((header & 1) != 0) throw new IllegalArgumentException("Expected string");
+            return readUtf8(header >>> 1);
+        }
+
+        String readMac() {
+            long header = readVarint();
+            if ((header & 1) == 0) return readUtf8(header >>> 1);
+            require(6);
+            char[] out = new char[17];
+            for (int i = 0; i < 6; i++) {
+                int b = data[pos++] & 0xFF;
+                out[i * 3] = HEX[b >>> 4];
+                out[i * 3 + 1] = HEX[b & 0xF];
+                if (i < 5) out[i * 3 + 2] = ':';
+            }
+            return new String(out);
+        }
+
+        private String readUtf8(long length) {
+            if (length > data.length - pos) throw new IllegalArgumentException("Truncated string");
+            String s = new String(data, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return s;
+        }
+
+        private void require(int n) {
+            if (data.length - pos < n) throw new IllegalArgumentException("Truncated payload");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ChatMessage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Folds the per-peer delivery reports of a message fanned out to several peers into
+ * one state for its chat row. The row fails as soon as one peer fails it; otherwise it
+ * shows the least advanced peer, so it reads "delivered" only once every peer acked.
+ * Rows are forgotten once every peer sent its last report: delivered or failed, or sent
+ * on a link without acks. Only the newest {@link #MAX_ROWS} rows are kept, so rows of
+ * peers that never come back don't pile up.
+ *
+ * Lives as long as the process, like the peer links and outboxes whose reports it
+ * folds, so a recreated chat screen keeps combining the reports of earlier sends.
+ * Rows are kept by delivery tag, not by {@link ChatMessage} instance.
+ *
+ * Main thread only.
+ */
+class DeliveryTracker {
+
+    /** Rows kept at most; the oldest is dropped first. */
+    static final int MAX_ROWS = 256;
+
+    /** Combined delivery state of one row after a report. */
+    static final class Report {
+        final long tag;
+        final int state;
+        @Nullable final String error;
+
+        Report(long tag, int state, @Nullable String error) {
+            this.tag = tag;
+            this.state = state;
+            this.error = error;
+        }
+    }
+
+    private static final class Row {
+        final Map<String, Integer> peers = new HashMap<>();
+        // Peers that will not report again
+        final Set<String> settled = new HashSet<>();
+        int state = ChatMessage.DELIVERY_QUEUED;
+        @Nullable String error;
+    }
+
+    private static DeliveryTracker shared;
+
+    private final Map<Long, Row> rows = new LinkedHashMap<Long, Row>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Row> eldest) {
+            return size() > MAX_ROWS;
+        }
+    };
+
+    static DeliveryTracker shared() {
+        if (shared == null) shared = new DeliveryTracker();
+        return shared;
+    }
+
+    /** A random non-zero tag; random so rows stay distinct across restarts. */
+    static long newTag() {
+        long tag;
+        do {
+            tag = ThreadLocalRandom.current().nextLong();
+        } while (tag == 0);
+        return tag;
+    }
+
+    /** Starts tracking a row just queued for {@code macs}. */
+    void track(long tag, Collection<String> macs) {
+        Row row = new Row();
+        for (String mac : macs) row.peers.put(mac, ChatMessage.DELIVERY_QUEUED);
+        rows.put(tag, row);
+    }
+
+    boolean isTracked(long tag) {
+        return rows.containsKey(tag);
+    }
+
+    /**
+     * Applies one peer's report. Returns the row's new state if its combined state or
+     * error changed, null if it did not or the tag is unknown.
+     *
+     * @param last  true if the peer will not report on this row again
+     * @param error why the peer's entry is queued again or failed, or null
+     */
+    @Nullable
+    Report update(long tag, String mac, int state, boolean last, @Nullable String error) {
+        Row row = rows.get(tag);
+        if (row == null) return null;
+        // Reports can only move a peer forward, except a requeue after a lost link
+        if (row.settled.contains(mac)) return null;
+        row.peers.put(mac, state);
+        if (last) row.settled.add(mac);
+
+        int combined = ChatMessage.DELIVERY_DELIVERED;
+        for (int peerState : row.peers.values()) {
+            if (peerState == ChatMessage.DELIVERY_FAILED) {
+                combined = ChatMessage.DELIVERY_FAILED;
+            } else if (combined != ChatMessage.DELIVERY_FAILED) {
+                combined = Math.min(combined, peerState);
+            }
+        }
+        if (row.settled.size() == row.peers.size()) rows.remove(tag);
+
+        // A failure's reason stays; otherwise the latest report's reason (or none) is shown
+        String shownError = combined == ChatMessage.DELIVERY_FAILED && error == null ? row.error : error;
+        if (combined == row.state && equal(shownError, row.error)) return null;
+        row.state = combined;
+        row.error = shownError;
+        return new Report(tag, combined, shownError);
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
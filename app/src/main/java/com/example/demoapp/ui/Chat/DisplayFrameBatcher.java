@@ -0,0 +1,59 @@
+package com.example.demoapp.ui.Chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.core.util.Consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects items offered on the main thread and hands them over as one list, so a
+ * burst costs one adapter update and one layout pass instead of one per item.
+ *
+ * With a window of 0 a batch closes at the next display frame; otherwise it closes
+ * that many milliseconds after its first item. Main thread only.
+ */
+class DisplayFrameBatcher<T> {
+
+    private final long windowMs;
+    private final Consumer<List<T>> sink;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+    private final Runnable flushRunnable = this::flush;
+    private List<T> pending = new ArrayList<>();
+    private boolean scheduled;
+
+    DisplayFrameBatcher(long windowMs, Consumer<List<T>> sink) {
+        this.windowMs = windowMs;
+        this.sink = sink;
+    }
+
+    void offer(T item) {
+        pending.add(item);
+        if (scheduled) return;
+        scheduled = true;
+        if (windowMs > 0) {
+            handler.postDelayed(flushRunnable, windowMs);
+        } else {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /** Delivers the open batch right away, e.g. before the view goes away. */
+    void flushNow() {
+        handler.removeCallbacks(flushRunnable);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        flush();
+    }
+
+    private void flush() {
+        scheduled = false;
+        if (pending.isEmpty()) return;
+        List<T> batch = pending;
+        pending = new ArrayList<>();
+        sink.accept(batch);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Group membership and known device names, shared between the UI thread and the
+ * inbound pipeline. The current group id and name are swapped together as one
+ * immutable {@link Group}, so a reader never sees the id of one group with the
+ * name of another.
+ */
+public class GroupState {
+
+    public static final class Group {
+        public final String id;
+        public final String name;
+
+        Group(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @Nullable private volatile Group current;
+    private final Set<String> members = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> deviceNames = new ConcurrentHashMap<>();
+
+    @Nullable
+    public Group getCurrent() {
+        return current;
+    }
+
+    @Nullable
+    public String getGroupId() {
+        Group group = current;
+        return group != null ? group.id : null;
+    }
+
+    public int memberCount() {
+        return members.size();
+    }
+
+    /** Starts a new group with only this device in it. */
+    public void create(String groupId, String groupName) {
+        members.clear();
+        members.add("SELF");
+        deviceNames.put("SELF", "Me");
+        current = new Group(groupId, groupName);
+    }
+
+    /** Switches to a group this device joined or was told about. */
+    public void enter(String groupId, String groupName) {
+        current = new Group(groupId, groupName);
+    }
+
+    public void addMember(String mac) {
+        members.add(mac);
+    }
+
+    public boolean isMember(String mac) {
+        return members.contains(mac);
+    }
+
+    public void leave() {
+        current = null;
+        members.clear();
+    }
+
+    public void putDeviceName(String mac, String name) {
+        deviceNames.put(mac, name);
+    }
+
+    public String nameOf(String mac, String fallback) {
+        String name = deviceNames.get(mac);
+        return name != null ? name : fallback;
+    }
+}
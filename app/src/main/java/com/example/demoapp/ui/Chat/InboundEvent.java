@@ -0,0 +1,79 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable result of handling one inbound frame off the main thread. The UI only
+ * applies it: it shows the message, refreshes the group header, or asks the user
+ * about an invitation.
+ */
+final class InboundEvent {
+
+    static final int KIND_HELLO = 0;
+    static final int KIND_MESSAGE = 1;
+    static final int KIND_INVITE = 2;
+    /** A copy of a relayed message that was already seen; dropped before the UI. */
+    static final int KIND_DUPLICATE = 3;
+
+    final int kind;
+    /** Feature bits from a hello, see {@link com.example.demoapp.ble.LinkFeatures}. */
+    final int features;
+    final String text;
+    final String senderName;
+    final String senderMac;
+    final boolean isGroupMessage;
+    @Nullable final String groupId;
+    /** Name of the group an invitation is for. */
+    @Nullable final String groupName;
+    @Nullable final ChatPayload payload;
+    /** The message changed group state, so the group header needs refreshing. */
+    final boolean groupChanged;
+    /** Copy of the message to relay to the other peers, or null. */
+    @Nullable final ChatPayload forward;
+
+    private InboundEvent(int kind, int features, String text, String senderName, String senderMac,
+                         boolean isGroupMessage, @Nullable String groupId, @Nullable String groupName,
+                         @Nullable ChatPayload payload, boolean groupChanged,
+                         @Nullable ChatPayload forward) {
+        this.kind = kind;
+        this.features = features;
+        this.text = text;
+        this.senderName = senderName;
+        this.senderMac = senderMac;
+        this.isGroupMessage = isGroupMessage;
+        this.groupId = groupId;
+        this.groupName = groupName;
+        this.payload = payload;
+        this.groupChanged = groupChanged;
+        this.forward = forward;
+    }
+
+    static InboundEvent hello(int features) {
+        return new InboundEvent(KIND_HELLO, features, "", "", "", false, null, null, null, false, null);
+    }
+
+    static InboundEvent message(String text, String senderName, String senderMac, boolean isGroupMessage,
+                                @Nullable String groupId, @Nullable ChatPayload payload) {
+        return message(text, senderName, senderMac, isGroupMessage, groupId, payload, null);
+    }
+
+    static InboundEvent message(String text, String senderName, String senderMac, boolean isGroupMessage,
+                                @Nullable String groupId, @Nullable ChatPayload payload,
+                                @Nullable ChatPayload forward) {
+        return new InboundEvent(KIND_MESSAGE, 0, text, senderName, senderMac, isGroupMessage,
+                groupId, null, payload, false, forward);
+    }
+
+    /** A system note for a group change, e.g. "X joined the group". */
+    static InboundEvent groupNote(String text, @Nullable String groupId) {
+        return new InboundEvent(KIND_MESSAGE, 0, text, "System", "SYSTEM", true, groupId, null, null, true, null);
+    }
+
+    static InboundEvent invite(String groupId, String groupName) {
+        return new InboundEvent(KIND_INVITE, 0, "", "", "", false, groupId, groupName, null, false, null);
+    }
+
+    static InboundEvent duplicate() {
+        return new InboundEvent(KIND_DUPLICATE, 0, "", "", "", false, null, null, null, false, null);
+    }
+}
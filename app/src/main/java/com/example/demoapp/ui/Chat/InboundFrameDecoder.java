@@ -0,0 +1,123 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ble.BleFrame;
+import com.example.demoapp.ble.FrameAck;
+import com.example.demoapp.ble.FrameAssembler;
+import com.example.demoapp.ble.FrameBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Turns raw notification chunks into complete {@link Frame}s. Framed chunks go through
+ * {@link FrameAssembler}; anything else is treated as legacy unframed JSON. Binary
+ * payloads come out already decoded, so only JSON frames are left to parse. A legacy
+ * message that is still being received keeps priority, because its continuation chunks
+ * may start with a UTF-8 byte that looks like a frame marker.
+ *
+ * Acks are passed to the {@link AckHandler}, if any: acks the assembler wants sent for
+ * the peer's frames, and acks the peer sent for ours.
+ *
+ * Not thread-safe: feed it from a single thread or a serialized Rx stream.
+ */
+public class InboundFrameDecoder {
+
+    /** Called on the decoding thread. */
+    public interface AckHandler {
+        /** The peer reported on one of our frames. */
+        void onAck(FrameAck ack);
+
+        /** The peer's frame needs this ack sent back. */
+        void sendAck(FrameAck ack);
+    }
+
+    @Nullable private final AckHandler acks;
+    private final JsonFrameReassembler legacy = new JsonFrameReassembler();
+    private final FrameAssembler framed = new FrameAssembler();
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    private int undecodable;
+
+    public InboundFrameDecoder() {
+        this(null);
+    }
+
+    public InboundFrameDecoder(@Nullable AckHandler acks) {
+        this.acks = acks;
+    }
+
+    /** One complete inbound message: JSON text, or a payload decoded from the binary form. */
+    public static final class Frame {
+        /** The JSON text of a legacy or JSON frame; null for a binary one. */
+        @Nullable public final String json;
+        /** The decoded payload of a binary frame; null for a JSON one. */
+        @Nullable public final ChatPayload payload;
+
+        private Frame(@Nullable String json, @Nullable ChatPayload payload) {
+            this.json = json;
+            this.payload = payload;
+        }
+
+        public static Frame json(String json) {
+            return new Frame(json, null);
+        }
+
+        public static Frame binary(ChatPayload payload) {
+            return new Frame(null, payload);
+        }
+    }
+
+    public List<Frame> feed(byte[] chunk) {
+        if (legacy.pendingBytes() == 0 && BleFrame.isFrame(chunk)) {
+            FrameAssembler.Message message = framed.feed(chunk);
+            FrameAck reply = framed.takeAck();
+            if (reply != null && acks != null) acks.sendAck(reply);
+            if (message == null) return Collections.emptyList();
+            try {
+                int flags = message.flags;
+                byte[] payload = message.payload;
+                if ((flags & BleFrame.FLAG_CONTROL) != 0) {
+                    if (acks != null) acks.onAck(FrameAck.decode(payload));
+                    return Collections.emptyList();
+                }
+                if ((flags & BleFrame.FLAG_DEFLATE) != 0) {
+                    payload = compressor.decompress(payload, BleFrame.MAX_TOTAL_LENGTH);
+                    flags &= ~BleFrame.FLAG_DEFLATE;
+                }
+                if ((flags & BleFrame.FLAG_BATCH) == 0) {
+                    return Collections.singletonList(decode(flags, payload));
+                }
+                List<FrameBatch.Item> items = FrameBatch.unpack(payload);
+                List<Frame> out = new ArrayList<>(items.size());
+                for (FrameBatch.Item item : items) out.add(decode(item.flags, item.payload));
+                return out;
+            } catch (IllegalArgumentException | DataFormatException e) {
+                undecodable++;
+                return Collections.emptyList();
+            }
+        }
+        List<String> texts = legacy.feed(chunk);
+        if (texts.isEmpty()) return Collections.emptyList();
+        List<Frame> out = new ArrayList<>(texts.size());
+        for (String text : texts) out.add(Frame.json(text));
+        return out;
+    }
+
+    private static Frame decode(int flags, byte[] payload) {
+        if ((flags & BleFrame.FLAG_BINARY) == 0) return Frame.json(new String(payload, StandardCharsets.UTF_8));
+        return Frame.binary(ChatPayloadCodec.decode(payload));
+    }
+
+    public int getUndecodableMessages() {
+        return undecodable;
+    }
+
+    public void reset() {
+        legacy.reset();
+        framed.reset();
+    }
+}
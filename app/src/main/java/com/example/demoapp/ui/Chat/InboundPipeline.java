@@ -0,0 +1,179 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ble.LinkFeatures;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executors;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Turns complete inbound frames into {@link InboundEvent}s: parses JSON frames (binary
+ * ones arrive already decoded), applies group changes to the shared {@link GroupState} and resolves sender
+ * names, all on {@link #SCHEDULER}. Frames must be fed in arrival order from
+ * that one thread, so group updates apply in the order the peer sent them.
+ */
+class InboundPipeline {
+
+    /** Dedicated thread for decoding, parsing and dispatching received messages. */
+    static final Scheduler SCHEDULER = Schedulers.from(
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "ble-inbound")));
+
+    private final GroupState groups;
+    private final MeshRelay relay;
+    // The peer whose link delivers these frames
+    private final String linkMac;
+
+    InboundPipeline(GroupState groups, MeshRelay relay, String linkMac) {
+        this.groups = groups;
+        this.relay = relay;
+        this.linkMac = linkMac;
+    }
+
+    InboundEvent process(InboundFrameDecoder.Frame frame) {
+        if (frame.payload == null) return process(frame.json);
+        try {
+            return dispatch(frame.payload);
+        } catch (RuntimeException e) {
+            return unparsed(String.valueOf(frame.payload.getText()));
+        }
+    }
+
+    InboundEvent process(String frame) {
+        JSONObject json;
+        try {
+            json = new JSONObject(frame);
+        } catch (JSONException e) {
+            return unparsed(frame);
+        }
+        try {
+            return dispatch(json);
+        } catch (RuntimeException e) {
+            // A malformed message must not end the notification stream
+            return unparsed(frame);
+        }
+    }
+
+    private InboundEvent dispatch(JSONObject json) {
+        switch (json.optString("type", "")) {
+            case "hello":
+                return InboundEvent.hello(json.optInt("features", 0) & LinkFeatures.SUPPORTED);
+            case "group_create": {
+                String groupId = json.optString("group_id");
+                String groupName = json.optString("group_name", "Group " + groupId);
+                groups.enter(groupId, groupName);
+                groups.addMember(memberMac(json.optString("creator")));
+                return InboundEvent.groupNote("Group created: " + groupName, groupId);
+            }
+            case "group_join": {
+                String deviceMac = memberMac(json.optString("device_mac"));
+                // A peer calling itself "Me" keeps the name it was scanned under
+                String deviceName = groups.nameOf(deviceMac, json.optString("device_name", deviceMac));
+                groups.addMember(deviceMac);
+                groups.putDeviceName(deviceMac, deviceName);
+                return InboundEvent.groupNote(deviceName + " joined the group", groups.getGroupId());
+            }
+            case "group_invite": {
+                String groupId = json.optString("group_id");
+                return InboundEvent.invite(groupId, json.optString("group_name", "Group " + groupId));
+            }
+            case "group_message": {
+                ChatPayload payload = ChatPayload.fromJson(json);
+                if (payload != null && !relay.firstSeen(payload)) return InboundEvent.duplicate();
+                String senderMac = memberMac(json.optString("sender_mac"));
+                String senderName = senderName(senderMac, json.optString("sender_name", null));
+                if (payload != null) payload = withSender(payload, senderMac, senderName);
+                return InboundEvent.message(json.optString("message"), senderName,
+                        senderMac, true, groups.getGroupId(), payload,
+                        payload != null ? relay.forwardCopy(payload) : null);
+            }
+            default: {
+                ChatPayload payload = ChatPayload.fromJson(json);
+                if (payload != null && !relay.firstSeen(payload)) return InboundEvent.duplicate();
+                String senderMac = memberMac(json.optString("sender_mac"));
+                String groupId = groups.getGroupId();
+                return InboundEvent.message(json.optString("message", json.toString()),
+                        groups.nameOf(senderMac, "Unknown"), senderMac, groupId != null, groupId, payload);
+            }
+        }
+    }
+
+    /** Same handling as {@link #dispatch(JSONObject)}, for a payload that needs no parsing. */
+    private InboundEvent dispatch(ChatPayload payload) {
+        switch (payload.getType()) {
+            case ChatPayload.TYPE_GROUP_CREATE: {
+                String groupId = orEmpty(payload.getGroupId());
+                String groupName = payload.getGroupName() != null ? payload.getGroupName() : "Group " + groupId;
+                groups.enter(groupId, groupName);
+                groups.addMember(memberMac(orEmpty(payload.getCreator())));
+                return InboundEvent.groupNote("Group created: " + groupName, groupId);
+            }
+            case ChatPayload.TYPE_GROUP_JOIN: {
+                String deviceMac = memberMac(orEmpty(payload.getDeviceMac()));
+                String deviceName = groups.nameOf(deviceMac,
+                        payload.getDeviceName() != null ? payload.getDeviceName() : deviceMac);
+                groups.addMember(deviceMac);
+                groups.putDeviceName(deviceMac, deviceName);
+                return InboundEvent.groupNote(deviceName + " joined the group", groups.getGroupId());
+            }
+            case ChatPayload.TYPE_GROUP_INVITE: {
+                String groupId = orEmpty(payload.getGroupId());
+                return InboundEvent.invite(groupId,
+                        payload.getGroupName() != null ? payload.getGroupName() : "Group " + groupId);
+            }
+            case ChatPayload.TYPE_GROUP_MESSAGE: {
+                if (!relay.firstSeen(payload)) return InboundEvent.duplicate();
+                String senderMac = memberMac(orEmpty(payload.getSenderMac()));
+                String senderName = senderName(senderMac, payload.getSenderName());
+                payload = withSender(payload, senderMac, senderName);
+                return InboundEvent.message(orEmpty(payload.getText()), senderName,
+                        senderMac, true, groups.getGroupId(), payload, relay.forwardCopy(payload));
+            }
+            default: {
+                if (!relay.firstSeen(payload)) return InboundEvent.duplicate();
+                String senderMac = memberMac(orEmpty(payload.getSenderMac()));
+                String groupId = groups.getGroupId();
+                return InboundEvent.message(orEmpty(payload.getText()),
+                        groups.nameOf(senderMac, "Unknown"), senderMac, groupId != null, groupId, payload);
+            }
+        }
+    }
+
+    /**
+     * Peers name themselves "SELF" in the messages they originate; membership and
+     * attribution are kept by the MAC of the link the message came over, so group
+     * traffic can be addressed to it.
+     */
+    private String memberMac(String declared) {
+        return declared.isEmpty() || "SELF".equals(declared) ? linkMac : declared;
+    }
+
+    /** A known device name, else the one the sender gave unless it is its own "Me". */
+    private String senderName(String senderMac, @Nullable String declared) {
+        return groups.nameOf(senderMac, declared != null && !declared.isEmpty() && !"Me".equals(declared)
+                ? declared : "Unknown");
+    }
+
+    /**
+     * The payload with its sender resolved on the first hop, so the copy relayed on
+     * names the originator instead of "SELF".
+     */
+    private static ChatPayload withSender(ChatPayload payload, String senderMac, String senderName) {
+        if (senderMac.equals(payload.getSenderMac()) && senderName.equals(payload.getSenderName())) return payload;
+        return payload.toBuilder().sender(senderMac, senderName).build();
+    }
+
+    private static String orEmpty(@Nullable String value) {
+        return value != null ? value : "";
+    }
+
+    private InboundEvent unparsed(String frame) {
+        String groupId = groups.getGroupId();
+        return InboundEvent.message("RX: " + frame, "Unknown", "UNKNOWN", groupId != null, groupId, null);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.demoapp.ui.Chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rebuilds complete JSON objects from the chunks delivered by BLE notifications.
+ *
+ * Each call only scans the bytes that just arrived; brace depth and string/escape
+ * state are carried over between calls, so braces inside string values do not end
+ * a frame early. Scanning works on raw bytes: every structural JSON character is
+ * ASCII and can never appear inside a multi-byte UTF-8 sequence, so a code point
+ * split across two notifications is only decoded once its frame is complete.
+ *
+ * Not thread-safe: feed it from a single thread or a serialized Rx stream.
+ */
+public class JsonFrameReassembler {
+
+    public static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024;
+
+    private final int maxFrameBytes;
+    private byte[] buffer = new byte[256];
+    private int length;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private int droppedFrames;
+
+    public JsonFrameReassembler() {
+        this(DEFAULT_MAX_FRAME_BYTES);
+    }
+
+    public JsonFrameReassembler(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * Appends a notification payload and returns every frame it completed, in order.
+     * Bytes outside a top-level object (whitespace, stray separators) are skipped.
+     */
+    public List<String> feed(byte[] chunk) {
+        return feed(chunk, 0, chunk.length);
+    }
+
+    public List<String> feed(byte[] chunk, int offset, int count) {
+        List<String> frames = null;
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = chunk[i];
+            if (depth == 0) {
+                if (b != '{') continue;
+                length = 0;
+                depth = 1;
+                append(b);
+                continue;
+            }
+            if (length == maxFrameBytes) {
+                // Oversized or unterminated frame: drop it and resync on the next '{'
+                droppedFrames++;
+                reset();
+                continue;
+            }
+            append(b);
+            if (inString) {
+                if (escaped) escaped = false;
+                else if (b == '\\') escaped = true;
+                else if (b == '"') inString = false;
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                if (frames == null) frames = new ArrayList<>(1);
+                frames.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+                length = 0;
+            }
+        }
+        return frames != null ? frames : Collections.<String>emptyList();
+    }
+
+    /** Discards any partially received frame, e.g. after the link was re-established. */
+    public void reset() {
+        length = 0;
+        depth = 0;
+        inString = false;
+        escaped = false;
+    }
+
+    /** Number of bytes held for the frame currently being received. */
+    public int pendingBytes() {
+        return length;
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void append(byte b) {
+        if (length == buffer.length) {
+            byte[] grown = new byte[Math.min(buffer.length * 2, maxFrameBytes)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        buffer[length++] = b;
+    }
+}
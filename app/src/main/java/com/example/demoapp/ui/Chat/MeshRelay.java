@@ -0,0 +1,111 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Store-and-forward relay for group messages between peers that are out of each
+ * other's range. Every group message carries a random id and a hop limit (ttl).
+ * A node shows a message the first time its id arrives and, with relaying on,
+ * passes a copy with one hop less to its other peers. Ids are remembered in a
+ * bounded most-recently-seen cache, so copies looping back are dropped instead of
+ * rebroadcast. Peers' outboxes hold forwarded copies until those peers are
+ * reachable, which is the "store" half.
+ *
+ * One relay lives as long as the process, like the peer links and outboxes, so copies
+ * still circling the mesh are recognized after the chat screen is recreated.
+ *
+ * Thread-safe: ids are checked on the inbound thread and recorded on send.
+ */
+public class MeshRelay {
+
+    /** Hops a new message may travel; enough for a chain of five nodes. */
+    public static final int DEFAULT_TTL = 4;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static MeshRelay shared;
+
+    private final Map<Long, Boolean> recentIds;
+    private final Random random;
+    private volatile boolean enabled;
+    private int duplicates;
+    private int forwarded;
+
+    public MeshRelay(int cacheSize) {
+        this(cacheSize, new Random());
+    }
+
+    public static synchronized MeshRelay shared() {
+        if (shared == null) shared = new MeshRelay(DEFAULT_CACHE_SIZE);
+        return shared;
+    }
+
+    MeshRelay(int cacheSize, Random random) {
+        this.random = random;
+        recentIds = new LinkedHashMap<Long, Boolean>(cacheSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Relaying is opt-in: it costs this device airtime and battery for others' traffic. */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** A fresh non-zero id for a message this device originates; recorded as seen. */
+    public long newMessageId() {
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+        synchronized (recentIds) {
+            recentIds.put(id, Boolean.TRUE);
+        }
+        return id;
+    }
+
+    /**
+     * Records an arriving message. Returns false if its id was already seen, in
+     * which case the copy must be neither shown nor forwarded. Messages without an
+     * id (legacy peers) are always new.
+     */
+    public boolean firstSeen(ChatPayload payload) {
+        long id = payload.getMessageId();
+        if (id == 0) return true;
+        synchronized (recentIds) {
+            if (recentIds.put(id, Boolean.TRUE) == null) return true;
+            duplicates++;
+            return false;
+        }
+    }
+
+    /** The copy to pass on to other peers, or null if this one stops here. */
+    @Nullable
+    public ChatPayload forwardCopy(ChatPayload payload) {
+        if (!enabled || payload.getMessageId() == 0 || payload.getTtl() <= 1
+                || !ChatPayload.TYPE_GROUP_MESSAGE.equals(payload.getType())) {
+            return null;
+        }
+        synchronized (recentIds) {
+            forwarded++;
+        }
+        return payload.toBuilder().relay(payload.getMessageId(), payload.getTtl() - 1).build();
+    }
+
+    public String stats() {
+        synchronized (recentIds) {
+            return "relay " + (enabled ? "on" : "off") + ", forwarded " + forwarded
+                    + ", duplicates dropped " + duplicates + ", ids cached " + recentIds.size();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.demoapp.ui.Chat;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ble.FrameBatch;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Messages waiting to be written to one peer. Entries survive disconnects and are
+ * written through to a file, so a message typed while out of range goes out once the
+ * peer is reachable again. Control messages are handed out before chat text; within a
+ * priority order is FIFO.
+ *
+ * Methods are called from the main thread; the file is read and rewritten on a
+ * background thread.
+ */
+public class OutboundQueue {
+
+    public static final int PRIORITY_CONTROL = 0;
+    public static final int PRIORITY_CHAT = 1;
+
+    private static final String TAG = "OutboundQueue";
+    private static final int FILE_VERSION = 3;
+    private static final int MAX_ENTRIES = 500;
+    private static final ExecutorService DISK = Executors.newSingleThreadExecutor();
+    // One queue per peer for the whole process, so Fragment re-creation keeps them
+    private static final Map<String, OutboundQueue> QUEUES = new HashMap<>();
+
+    public static final class Entry {
+        public final long id;
+        /** Delivery tag of the chat row this entry was sent for; 0 for none (e.g. relayed). */
+        public final long tag;
+        public final int priority;
+        /** The message as it would be sent to a legacy peer (JSON text). */
+        public final String payload;
+        /** {@link ChatPayloadCodec} form, encoded once at enqueue time; null if none. */
+        @Nullable public final byte[] binary;
+
+        private final int utf8Length;
+
+        Entry(long id, long tag, int priority, String payload, @Nullable byte[] binary) {
+            this.id = id;
+            this.tag = tag;
+            this.priority = priority;
+            this.payload = payload;
+            this.binary = binary;
+            utf8Length = utf8Length(payload);
+        }
+
+        /** Bytes this entry takes on the wire, in its binary form if that is what is sent. */
+        public int encodedLength(boolean binaryCodec) {
+            return binaryCodec && binary != null ? binary.length : utf8Length;
+        }
+    }
+
+    private final File file;
+    private final List<Entry> entries = new ArrayList<>();
+    private long nextId;
+    // True until the entries left in the file have been merged in
+    private boolean loading;
+    @Nullable private Runnable onLoaded;
+
+    /** An empty queue writing to {@code file}; see {@link #load} for what is already in it. */
+    public OutboundQueue(File file) {
+        this.file = file;
+    }
+
+    /** The queue for the peer with this MAC, stored under {@code dir}. */
+    public static OutboundQueue forPeer(File dir, String mac) {
+        OutboundQueue queue = QUEUES.get(mac);
+        if (queue == null) {
+            queue = new OutboundQueue(new File(dir, mac.replace(":", "") + ".bin"));
+            QUEUES.put(mac, queue);
+            queue.load(AndroidSchedulers.mainThread());
+        }
+        return queue;
+    }
+
+    /**
+     * Reads whatever an earlier session left in the file on the disk thread, and merges
+     * it in on {@code deliverOn} ahead of anything offered meanwhile. The file is not
+     * rewritten before that, so none of it is lost.
+     */
+    public void load(Scheduler deliverOn) {
+        loading = true;
+        Single.fromCallable(this::read)
+                .subscribeOn(Schedulers.from(DISK))
+                .observeOn(deliverOn)
+                .subscribe(this::merge, t -> {
+                    Log.e(TAG, "Failed to load " + file, t);
+                    merge(Collections.emptyList());
+                });
+    }
+
+    /**
+     * Runs {@code action} once a pending {@link #load} has merged the stored entries in,
+     * e.g. to start sending them. Does nothing if no load is pending.
+     */
+    public void whenLoaded(Runnable action) {
+        if (loading) onLoaded = action;
+    }
+
+    public Entry offer(long tag, String payload, @Nullable byte[] binary, int priority) {
+        Entry entry = new Entry(nextId++, tag, priority, payload, binary);
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).priority > priority) index--;
+        entries.add(index, entry);
+        if (entries.size() > MAX_ENTRIES) dropOldestChat();
+        persist();
+        return entry;
+    }
+
+    /**
+     * The next entries to send: the head of the queue, followed by further entries of the
+     * same priority while they fit together, packed as a {@link FrameBatch}, in
+     * {@code maxBytes}. Pass zero to get only the head.
+     *
+     * @param binaryCodec whether entries go out in their binary form where they have one
+     */
+    public List<Entry> peekBatch(int maxBytes, boolean binaryCodec) {
+        if (entries.isEmpty()) return Collections.emptyList();
+        Entry head = entries.get(0);
+        List<Entry> batch = new ArrayList<>();
+        batch.add(head);
+        int total = FrameBatch.packedSize(head.encodedLength(binaryCodec));
+        for (int i = 1; i < entries.size() && total <= maxBytes; i++) {
+            Entry next = entries.get(i);
+            int size = FrameBatch.packedSize(next.encodedLength(binaryCodec));
+            if (next.priority != head.priority || total + size > maxBytes) break;
+            batch.add(next);
+            total += size;
+        }
+        return batch;
+    }
+
+    public void removeAll(List<Entry> sent) {
+        if (entries.removeAll(sent)) persist();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void dropOldestChat() {
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            if (it.next().priority == PRIORITY_CHAT) {
+                it.remove();
+                return;
+            }
+        }
+        entries.remove(entries.size() - 1);
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private List<Entry> read() {
+        List<Entry> stored = new ArrayList<>();
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) Log.e(TAG, "Failed to create " + dir);
+        if (!file.exists()) return stored;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int version = in.readInt();
+            if (version < 1 || version > FILE_VERSION) return stored;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long tag = version >= 3 ? in.readLong() : 0;
+                int priority = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                byte[] binary = null;
+                int binaryLength = version >= 2 ? in.readInt() : -1;
+                if (binaryLength >= 0) {
+                    binary = new byte[binaryLength];
+                    in.readFully(binary);
+                }
+                // Ids are handed out on merge
+                stored.add(new Entry(0, tag, priority, new String(payload, StandardCharsets.UTF_8), binary));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load " + file, e);
+        }
+        return stored;
+    }
+
+    private void merge(List<Entry> stored) {
+        List<Entry> merged = new ArrayList<>(stored.size() + entries.size());
+        for (Entry e : stored) merged.add(new Entry(nextId++, e.tag, e.priority, e.payload, e.binary));
+        merged.addAll(entries);
+        // Stable, so stored entries stay ahead of newer ones of the same priority
+        Collections.sort(merged, (a, b) -> Integer.compare(a.priority, b.priority));
+        entries.clear();
+        entries.addAll(merged);
+        while (entries.size() > MAX_ENTRIES) dropOldestChat();
+        loading = false;
+        persist();
+        Runnable action = onLoaded;
+        onLoaded = null;
+        if (action != null) action.run();
+    }
+
+    private void persist() {
+        if (loading) return;
+        final List<Entry> snapshot = new ArrayList<>(entries);
+        DISK.execute(() -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(snapshot.size());
+                for (Entry e : snapshot) {
+                    byte[] payload = e.payload.getBytes(StandardCharsets.UTF_8);
+                    out.writeLong(e.tag);
+                    out.writeByte(e.priority);
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    out.writeInt(e.binary != null ? e.binary.length : -1);
+                    if (e.binary != null) out.write(e.binary);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save " + file, e);
+                return;
+            }
+            if (!tmp.renameTo(file)) Log.e(TAG, "Failed to replace " + file);
+        });
+    }
+}
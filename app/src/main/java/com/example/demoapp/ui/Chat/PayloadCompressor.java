@@ -0,0 +1,107 @@
+package com.example.demoapp.ui.Chat;
+
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw DEFLATE with a preset dictionary built from the chat message schema, so even a
+ * single short message can reference the keys, type names and URL prefix every message
+ * repeats. Only payloads of at least {@code threshold} bytes are compressed, and only
+ * when the result is actually smaller.
+ *
+ * Not thread-safe: use one instance per sending or receiving thread.
+ */
+public class PayloadCompressor {
+
+    public static final int DEFAULT_THRESHOLD = 96;
+
+    /**
+     * Most useful strings last: DEFLATE reaches back 32 KB, but shorter distances
+     * cost fewer bits. Changing this breaks compatibility with existing peers.
+     */
+    static final byte[] DICTIONARY = ("\"location\":\"unavailable\""
+            + "\"creator\":\"SELF\",\"device_mac\":\"\",\"device_name\":\""
+            + "{\"type\":\"group_create\",\"type\":\"group_join\",\"type\":\"group_invite\","
+            + "\"group_name\":\"Group \","
+            + "\"location_url\":\"https://www.openstreetmap.org/?mlat=&mlon=\","
+            + "{\"message\":\"\",\"latitude\":,\"longitude\":,"
+            + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\",\"group_id\":\"\",\"type\":\"group_message\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final int threshold;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private byte[] scratch = new byte[512];
+
+    private long attempts;
+    private long compressedCount;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+
+    public PayloadCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public PayloadCompressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /** The compressed form, or null if the payload is below the threshold or would not shrink. */
+    @Nullable
+    public byte[] compress(byte[] data) {
+        if (data.length < threshold) return null;
+        long start = System.nanoTime();
+        attempts++;
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(data);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == scratch.length) scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            length += deflater.deflate(scratch, length, scratch.length - length);
+        }
+        nanos += System.nanoTime() - start;
+        if (length >= data.length) return null;
+        compressedCount++;
+        bytesIn += data.length;
+        bytesOut += length;
+        return Arrays.copyOf(scratch, length);
+    }
+
+    /** @throws DataFormatException if the data is corrupt or inflates past {@code maxLength} */
+    public byte[] decompress(byte[] data, int maxLength) throws DataFormatException {
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(data);
+        byte[] out = new byte[Math.min(maxLength, Math.max(64, data.length * 4))];
+        int length = 0;
+        while (!inflater.finished()) {
+            if (length == out.length) {
+                if (out.length == maxLength) throw new DataFormatException("Payload exceeds " + maxLength);
+                out = Arrays.copyOf(out, Math.min(maxLength, out.length * 2));
+            }
+            int n = inflater.inflate(out, length, out.length - length);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated payload");
+            }
+            length += n;
+        }
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    /** One line summary of what compression has saved so far, for logs. */
+    public String stats() {
+        return String.format(Locale.US,
+                "%d/%d compressed, %d -> %d bytes (saved %d), %.1f us/attempt",
+                compressedCount, attempts, bytesIn, bytesOut, bytesIn - bytesOut,
+                attempts == 0 ? 0.0 : nanos / 1000.0 / attempts);
+    }
+}
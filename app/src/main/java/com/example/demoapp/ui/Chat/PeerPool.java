@@ -0,0 +1,150 @@
+package com.example.demoapp.ui.Chat;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ble.BleConnectionManager;
+import com.polidea.rxandroidble3.RxBleConnection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+
+/**
+ * The chat peers this device talks to at once, one {@link PeerSession} each.
+ * Links are held in {@link BleConnectionManager} under {@link #LINK_OWNER}, so they
+ * stay up and keep reconnecting while the chat screen is away; a recreated screen
+ * {@link #restore}s the sessions for them.
+ *
+ * Main thread only.
+ */
+class PeerPool {
+
+    private static final String TAG = "PeerPool";
+    // Key under which the chat screen holds its peer links in BleConnectionManager
+    static final String LINK_OWNER = "chat";
+
+    private final BleConnectionManager manager;
+    private final File outboxDir;
+    private final GroupState groups;
+    private final MeshRelay relay;
+    private final PeerSession.Listener listener;
+    private final Map<String, PeerSession> sessions = new LinkedHashMap<>();
+    private final Map<String, CompositeDisposable> subscriptions = new LinkedHashMap<>();
+    @Nullable private String chatPeer;
+
+    PeerPool(BleConnectionManager manager, File outboxDir, GroupState groups, MeshRelay relay,
+             PeerSession.Listener listener) {
+        this.manager = manager;
+        this.outboxDir = outboxDir;
+        this.groups = groups;
+        this.relay = relay;
+        this.listener = listener;
+    }
+
+    /** Adds a peer; does nothing if it is already in the pool. */
+    void connect(String mac) {
+        if (sessions.containsKey(mac)) return;
+        manager.hold(LINK_OWNER, mac);
+        PeerSession session = new PeerSession(mac, OutboundQueue.forPeer(outboxDir, mac), groups, relay,
+                listener);
+        sessions.put(mac, session);
+
+        CompositeDisposable subs = new CompositeDisposable();
+        // Runs again after every automatic reconnect, restoring writers and notifications
+        subs.add(manager.link(mac)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(session::attach, t -> Log.e(TAG, mac + ": link", t)));
+        // While the manager reconnects, sends to this peer wait in its outbox
+        subs.add(manager.client().getBleDevice(mac).observeConnectionStateChanges()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(state -> {
+                    if (state == RxBleConnection.RxBleConnectionState.DISCONNECTED) session.detach();
+                }, t -> Log.e(TAG, mac + ": state", t)));
+        subscriptions.put(mac, subs);
+    }
+
+    /** Re-creates sessions for the links still held from an earlier screen. */
+    void restore() {
+        for (String mac : manager.heldDevices(LINK_OWNER)) connect(mac);
+    }
+
+    void disconnect(String mac) {
+        manager.release(LINK_OWNER, mac);
+        close(mac);
+    }
+
+    void disconnectAll() {
+        for (String mac : new ArrayList<>(sessions.keySet())) disconnect(mac);
+    }
+
+    /** Drops the sessions but leaves the links held, e.g. when the view goes away. */
+    void closeAll() {
+        for (String mac : new ArrayList<>(sessions.keySet())) close(mac);
+    }
+
+    /**
+     * Queues the message for each of the given peers that is in the pool. Each peer
+     * writes from its own outbox on its own connection, so the peers are written in
+     * parallel and one failing peer doesn't hold up the others.
+     */
+    void send(List<String> macs, long tag, String payload, @Nullable byte[] binary, int priority) {
+        for (String mac : macs) {
+            PeerSession session = sessions.get(mac);
+            if (session != null) session.send(tag, payload, binary, priority);
+        }
+    }
+
+    /** Makes this peer the one direct (non-group) messages go to. */
+    void select(String mac) {
+        chatPeer = mac;
+    }
+
+    /** The peer direct messages go to: the one last selected, else the first in the pool. */
+    @Nullable
+    String chatPeer() {
+        if (chatPeer != null && sessions.containsKey(chatPeer)) return chatPeer;
+        return sessions.isEmpty() ? null : sessions.keySet().iterator().next();
+    }
+
+    /** MACs of the peers a message sent now would be queued for. */
+    List<String> macs() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    int connectedCount() {
+        int count = 0;
+        for (PeerSession session : sessions.values()) if (session.isConnected()) count++;
+        return count;
+    }
+
+    @Nullable
+    PeerSession get(String mac) {
+        return sessions.get(mac);
+    }
+
+    List<PeerSession> sessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    private void close(String mac) {
+        CompositeDisposable subs = subscriptions.remove(mac);
+        if (subs != null) subs.dispose();
+        PeerSession session = sessions.remove(mac);
+        if (session != null) session.detach();
+    }
+}
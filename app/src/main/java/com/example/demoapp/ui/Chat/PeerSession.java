@@ -0,0 +1,473 @@
+package com.example.demoapp.ui.Chat;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.ChatMessage;
+import com.example.demoapp.ble.BleFrame;
+import com.example.demoapp.ble.BleLink;
+import com.example.demoapp.ble.BleMtu;
+import com.example.demoapp.ble.CharacteristicWriter;
+import com.example.demoapp.ble.FrameAck;
+import com.example.demoapp.ble.FrameBatch;
+import com.example.demoapp.ble.FrameEncoder;
+import com.example.demoapp.ble.LinkFeatures;
+import com.example.demoapp.ble.PipelinedWriter;
+import com.example.demoapp.ble.RxBleChunkWriter;
+import com.example.demoapp.ble.SentFrame;
+import com.polidea.rxandroidble3.RxBleConnection;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Everything tied to one chat peer: its link, writers, negotiated features and its
+ * own outbox. Sessions never share state, so a slow or failing peer only delays its
+ * own queue. Each new {@link BleLink} (first connect or automatic reconnect) is
+ * passed to {@link #attach}, which sets the session up from scratch.
+ *
+ * With a peer that supports {@link LinkFeatures#ACK}, a written frame stays in the
+ * outbox until the peer acknowledges it. A partial ack is answered with just the
+ * missing chunks; silence is answered with the last chunk, which makes the peer report
+ * what it holds. After {@link SentFrame#MAX_RETRANSMITS} rounds the entries fail.
+ *
+ * Main thread only.
+ */
+class PeerSession {
+
+    private static final String TAG = "PeerSession";
+    static final UUID RX_CHAR_UUID = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+    static final UUID TX_CHAR_UUID = UUID.fromString("6e400002-b5a3-f393-e0a9-e50e24dcca9e");
+    /** Readable on peers that support {@link LinkFeatures}; holds their feature bits. */
+    static final UUID FEATURES_CHAR_UUID = UUID.fromString("6e400004-b5a3-f393-e0a9-e50e24dcca9e");
+    // How long to wait for an ack after the last chunk of a frame was written
+    private static final long ACK_TIMEOUT_MS = 1500;
+
+    interface Listener {
+        /** A message, group note or invitation arrived from this peer. */
+        void onInbound(PeerSession peer, InboundEvent event);
+
+        /** The link came up or went down. */
+        void onLinkChanged(PeerSession peer);
+
+        /**
+         * Outbox entries moved to a {@code ChatMessage.DELIVERY_*} state. Queued entries
+         * stay in the outbox for the next attempt; {@code error} says why, if anything
+         * went wrong. {@code last} is true for the final report on these entries: delivered,
+         * failed, or sent to a peer that does not send acks.
+         */
+        void onDelivery(PeerSession peer, List<OutboundQueue.Entry> entries, int state, boolean last,
+                        @Nullable String error);
+    }
+
+    final String mac;
+    private final OutboundQueue outbox;
+    private final GroupState groups;
+    private final MeshRelay relay;
+    private final Listener listener;
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    // Subscriptions of the current link; replaced on every attach
+    private CompositeDisposable linkDisposables = new CompositeDisposable();
+
+    @Nullable private RxBleConnection connection;
+    // The link's frame ids, which outlive this session
+    @Nullable private FrameEncoder frameEncoder;
+    private int mtu = BleMtu.DEFAULT;
+    // Largest write for the current connection, from the MTU negotiated by the manager
+    private int chunkSize = BleMtu.payloadSize(BleMtu.DEFAULT);
+    // Acknowledged writes, one chunk at a time: control messages and legacy peers
+    @Nullable private PipelinedWriter ackedTx;
+    // Write-without-response with several chunks in flight; null if the peer lacks it
+    @Nullable private PipelinedWriter fastTx;
+    // True while a frame from the outbox is being written
+    private boolean draining;
+    // Features both sides support, from the peer's features characteristic or hello; zero for legacy peers
+    private int peerFeatures;
+    // False until the peer's features characteristic was read, or found missing
+    private boolean featuresKnown;
+    // Frame written and waiting for its ack, with the outbox entries it carries
+    @Nullable private SentFrame inFlight;
+    @Nullable private List<OutboundQueue.Entry> inFlightBatch;
+    private boolean inFlightControl;
+    // True while missing chunks are being written again; partial acks are stale meanwhile
+    private boolean resending;
+    @Nullable private Disposable ackTimer;
+
+    PeerSession(String mac, OutboundQueue outbox, GroupState groups, MeshRelay relay, Listener listener) {
+        this.mac = mac;
+        this.outbox = outbox;
+        this.groups = groups;
+        this.relay = relay;
+        this.listener = listener;
+        // Entries stored by an earlier session may only arrive after the link is up
+        outbox.whenLoaded(this::drainOutbox);
+    }
+
+    boolean isConnected() {
+        return connection != null;
+    }
+
+    int getMtu() {
+        return mtu;
+    }
+
+    int queued() {
+        return outbox.size();
+    }
+
+    void attach(BleLink link) {
+        detach();
+        connection = link.connection;
+        frameEncoder = link.frames;
+        mtu = link.mtu;
+        chunkSize = link.chunkSize();
+        Log.d(TAG, mac + ": mtu=" + mtu + ", chunk size=" + chunkSize);
+        setUpWriters();
+        subscribeNotifications();
+        listener.onLinkChanged(this);
+    }
+
+    /** Forgets everything tied to the current connection; the next link starts fresh. */
+    void detach() {
+        boolean wasConnected = connection != null;
+        if (inFlightBatch != null) {
+            listener.onDelivery(this, inFlightBatch, ChatMessage.DELIVERY_QUEUED, false, "link lost");
+        }
+        inFlight = null;
+        inFlightBatch = null;
+        resending = false;
+        ackTimer = null;
+        linkDisposables.dispose();
+        linkDisposables = new CompositeDisposable();
+        connection = null;
+        frameEncoder = null;
+        ackedTx = null;
+        fastTx = null;
+        draining = false;
+        peerFeatures = 0;
+        featuresKnown = false;
+        chunkSize = BleMtu.payloadSize(BleMtu.DEFAULT);
+        if (wasConnected) listener.onLinkChanged(this);
+    }
+
+    /**
+     * Queues a message for this peer and starts writing if the link is up.
+     *
+     * @param tag the chat row's delivery tag, reported back through {@link Listener#onDelivery}
+     */
+    void send(long tag, String payload, @Nullable byte[] binary, int priority) {
+        outbox.offer(tag, payload, binary, priority);
+        drainOutbox();
+    }
+
+    /**
+     * Every write to the peer's characteristic goes through one {@link CharacteristicWriter},
+     * so acks, control frames and retransmits never race the fast path over the write type.
+     * Nothing is written until the writers exist and the peer's features are known.
+     */
+    private void setUpWriters() {
+        RxBleConnection conn = connection;
+        Disposable d = conn.discoverServices()
+                .flatMap(services -> services.getCharacteristic(RX_CHAR_UUID))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(characteristic -> {
+                    if (connection != conn) return;
+                    CharacteristicWriter writer = new CharacteristicWriter(conn, characteristic);
+                    ackedTx = new PipelinedWriter(writer.acknowledged(), 1, Schedulers.computation());
+                    if (RxBleChunkWriter.supportsWriteWithoutResponse(characteristic)) {
+                        fastTx = new PipelinedWriter(writer.withoutResponse(),
+                                PipelinedWriter.DEFAULT_WINDOW, Schedulers.computation());
+                    }
+                    readPeerFeatures(conn);
+                }, t -> {
+                    Log.e(TAG, mac + ": discover", t);
+                    if (connection != conn) return;
+                    // Acknowledged writes only; with no fast path nothing changes the write type
+                    ackedTx = new PipelinedWriter(RxBleChunkWriter.acknowledged(conn, RX_CHAR_UUID), 1,
+                            Schedulers.computation());
+                    readPeerFeatures(conn);
+                });
+        linkDisposables.add(d);
+    }
+
+    /**
+     * Legacy peers show every message they receive as a chat row, so the hello only goes
+     * to peers that expose {@link #FEATURES_CHAR_UUID}. Any other peer is legacy.
+     */
+    private void readPeerFeatures(RxBleConnection conn) {
+        Disposable d = conn.readCharacteristic(FEATURES_CHAR_UUID)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(value -> {
+                    if (connection != conn) return;
+                    peerFeatures = LinkFeatures.fromBytes(value) & LinkFeatures.SUPPORTED;
+                    Log.d(TAG, mac + ": peer features=" + peerFeatures);
+                    sendHello();
+                }, t -> {
+                    if (connection != conn) return;
+                    Log.d(TAG, mac + ": no features characteristic, legacy peer");
+                    featuresKnown = true;
+                    drainOutbox();
+                });
+        linkDisposables.add(d);
+    }
+
+    private void subscribeNotifications() {
+        // Decoding, parsing and group updates run on the inbound thread; the UI
+        // only applies finished events
+        RxBleConnection conn = connection;
+        InboundFrameDecoder decoder = new InboundFrameDecoder(new InboundFrameDecoder.AckHandler() {
+            @Override
+            public void onAck(FrameAck ack) {
+                AndroidSchedulers.mainThread().scheduleDirect(() -> {
+                    if (connection == conn) PeerSession.this.onAck(ack);
+                });
+            }
+
+            @Override
+            public void sendAck(FrameAck ack) {
+                AndroidSchedulers.mainThread().scheduleDirect(() -> {
+                    if (connection == conn) PeerSession.this.sendAck(ack);
+                });
+            }
+        });
+        InboundPipeline pipeline = new InboundPipeline(groups, relay, mac);
+        Disposable d = connection
+                .setupNotification(TX_CHAR_UUID)
+                .flatMap(obs -> obs)
+                .observeOn(InboundPipeline.SCHEDULER)
+                .concatMapIterable(decoder::feed)
+                .map(pipeline::process)
+                .filter(event -> event.kind != InboundEvent.KIND_DUPLICATE)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::onInbound, t -> Log.e(TAG, mac + ": notif", t));
+        linkDisposables.add(d);
+    }
+
+    private void onInbound(InboundEvent event) {
+        if (event.kind == InboundEvent.KIND_HELLO) {
+            peerFeatures = event.features;
+            Log.d(TAG, mac + ": peer features=" + peerFeatures);
+            drainOutbox();
+        } else {
+            listener.onInbound(this, event);
+        }
+    }
+
+    /**
+     * Writes the outbox one frame at a time, control messages first. Small chat
+     * messages waiting together share a frame when the peer supports batches.
+     * Entries only leave the outbox once written, or once acknowledged if the peer
+     * sends acks; after a failure they wait for the next send or reconnect.
+     */
+    private void drainOutbox() {
+        if (draining || connection == null || ackedTx == null || !featuresKnown) return;
+        boolean canBatch = LinkFeatures.has(peerFeatures, LinkFeatures.FRAMING | LinkFeatures.BATCH);
+        List<OutboundQueue.Entry> batch = outbox.peekBatch(canBatch ? chunkSize - BleFrame.HEADER_SIZE : 0,
+                LinkFeatures.has(peerFeatures, LinkFeatures.BINARY_CODEC));
+        if (batch.isEmpty()) return;
+
+        draining = true;
+        boolean control = batch.get(0).priority == OutboundQueue.PRIORITY_CONTROL;
+        boolean acked = LinkFeatures.has(peerFeatures, LinkFeatures.FRAMING | LinkFeatures.ACK);
+        List<byte[]> chunks = toChunks(batch);
+        Disposable d = txFor(control).write(chunks)
+                .ignoreElements()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> {
+                    listener.onDelivery(this, batch, ChatMessage.DELIVERY_SENT, !acked, null);
+                    if (acked) {
+                        inFlight = new SentFrame(chunks);
+                        inFlightBatch = batch;
+                        inFlightControl = control;
+                        startAckTimer();
+                        return;
+                    }
+                    draining = false;
+                    outbox.removeAll(batch);
+                    Log.d(TAG, mac + ": sent " + batch.size() + " message(s), " + outbox.size() + " queued");
+                    drainOutbox();
+                }, t -> {
+                    draining = false;
+                    Log.e(TAG, mac + ": send failed", t);
+                    listener.onDelivery(this, batch, ChatMessage.DELIVERY_QUEUED, false, t.getMessage());
+                });
+        linkDisposables.add(d);
+    }
+
+    private void onAck(FrameAck ack) {
+        SentFrame frame = inFlight;
+        if (frame == null || !frame.matches(ack)) return;
+        if (ack.isComplete()) {
+            List<OutboundQueue.Entry> batch = inFlightBatch;
+            finishInFlight();
+            outbox.removeAll(batch);
+            Log.d(TAG, mac + ": delivered " + batch.size() + " message(s) after "
+                    + frame.getRetransmits() + " retransmit(s), " + outbox.size() + " queued");
+            listener.onDelivery(this, batch, ChatMessage.DELIVERY_DELIVERED, true, null);
+            drainOutbox();
+        } else if (!resending) {
+            retransmit(frame.missing(ack));
+        }
+    }
+
+    private void onAckTimeout() {
+        if (inFlight != null && !resending) retransmit(Collections.singletonList(inFlight.probe()));
+    }
+
+    private void retransmit(List<byte[]> chunks) {
+        SentFrame frame = inFlight;
+        if (!frame.startRetransmit()) {
+            List<OutboundQueue.Entry> batch = inFlightBatch;
+            finishInFlight();
+            outbox.removeAll(batch);
+            Log.w(TAG, mac + ": giving up on frame " + frame.id);
+            listener.onDelivery(this, batch, ChatMessage.DELIVERY_FAILED, true, "not acknowledged");
+            drainOutbox();
+            return;
+        }
+        Log.d(TAG, mac + ": resending " + chunks.size() + " chunk(s) of frame " + frame.id);
+        resending = true;
+        if (ackTimer != null) ackTimer.dispose();
+        Disposable d = txFor(inFlightControl).write(chunks)
+                .ignoreElements()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> {
+                    if (inFlight != frame) return;
+                    resending = false;
+                    startAckTimer();
+                }, t -> {
+                    if (inFlight != frame) return;
+                    List<OutboundQueue.Entry> batch = inFlightBatch;
+                    finishInFlight();
+                    Log.e(TAG, mac + ": resend failed", t);
+                    listener.onDelivery(this, batch, ChatMessage.DELIVERY_QUEUED, false, t.getMessage());
+                });
+        linkDisposables.add(d);
+    }
+
+    private void startAckTimer() {
+        if (ackTimer != null) ackTimer.dispose();
+        ackTimer = Completable.timer(ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::onAckTimeout);
+        linkDisposables.add(ackTimer);
+    }
+
+    private void finishInFlight() {
+        if (ackTimer != null) ackTimer.dispose();
+        ackTimer = null;
+        inFlight = null;
+        inFlightBatch = null;
+        resending = false;
+        draining = false;
+    }
+
+    /**
+     * Tells the peer which chunks of its frame arrived. Acks take the fast path, which
+     * shares the characteristic's writer with control frames; a lost one is recovered by
+     * the peer's probe.
+     */
+    private void sendAck(FrameAck ack) {
+        if (ackedTx == null || !LinkFeatures.has(peerFeatures, LinkFeatures.FRAMING | LinkFeatures.ACK)) return;
+        Disposable d = txFor(false).write(frameEncoder.encode(ack.encode(), BleFrame.FLAG_CONTROL, chunkSize))
+                .ignoreElements()
+                .subscribe(() -> { }, t -> Log.e(TAG, mac + ": ack", t));
+        linkDisposables.add(d);
+    }
+
+    /**
+     * Announces our protocol features to a peer known to support them, then starts
+     * writing the outbox. Sent as plain JSON, which every feature level parses.
+     */
+    private void sendHello() {
+        try {
+            JSONObject hello = new JSONObject();
+            hello.put("type", "hello");
+            hello.put("features", LinkFeatures.SUPPORTED);
+            Disposable d = txFor(true)
+                    .write(toLegacyChunks(hello.toString().getBytes(StandardCharsets.UTF_8)))
+                    .ignoreElements()
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(() -> {
+                        featuresKnown = true;
+                        drainOutbox();
+                    }, t -> {
+                        // The peer may still send its own hello; don't hold the outbox
+                        Log.e(TAG, mac + ": hello", t);
+                        featuresKnown = true;
+                        drainOutbox();
+                    });
+            linkDisposables.add(d);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create hello message", e);
+        }
+    }
+
+    private List<byte[]> toChunks(List<OutboundQueue.Entry> batch) {
+        if (!LinkFeatures.has(peerFeatures, LinkFeatures.FRAMING)) {
+            return toLegacyChunks(batch.get(0).payload.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] payload;
+        int flags;
+        if (batch.size() == 1) {
+            FrameBatch.Item item = encodeItem(batch.get(0));
+            payload = item.payload;
+            flags = item.flags;
+        } else {
+            List<FrameBatch.Item> items = new ArrayList<>(batch.size());
+            for (OutboundQueue.Entry entry : batch) items.add(encodeItem(entry));
+            payload = FrameBatch.pack(items);
+            flags = BleFrame.FLAG_BATCH;
+        }
+        if (LinkFeatures.has(peerFeatures, LinkFeatures.DEFLATE)) {
+            byte[] compressed = compressor.compress(payload);
+            if (compressed != null) {
+                payload = compressed;
+                flags |= BleFrame.FLAG_DEFLATE;
+                Log.d(TAG, "deflate: " + compressor.stats());
+            }
+        }
+        return frameEncoder.encode(payload, flags, chunkSize);
+    }
+
+    private FrameBatch.Item encodeItem(OutboundQueue.Entry entry) {
+        // Messages the binary codec cannot represent still go out as framed JSON
+        if (entry.binary != null && LinkFeatures.has(peerFeatures, LinkFeatures.BINARY_CODEC)) {
+            return new FrameBatch.Item(BleFrame.FLAG_BINARY, entry.binary);
+        }
+        return new FrameBatch.Item(0, entry.payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<byte[]> toLegacyChunks(byte[] data) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < data.length; i += chunkSize) {
+            int end = Math.min(data.length, i + chunkSize);
+            chunks.add(Arrays.copyOfRange(data, i, end));
+        }
+        return chunks;
+    }
+
+    /**
+     * Chat data to a framing peer goes through the pipelined write-without-response
+     * path; control messages always use acknowledged writes.
+     */
+    private PipelinedWriter txFor(boolean control) {
+        return !control && fastTx != null
+                && LinkFeatures.has(peerFeatures, LinkFeatures.FRAMING) ? fastTx : ackedTx;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.demoapp.ui.Map;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.view.MotionEvent;
+
+import com.example.demoapp.sensor.PollutionGrid;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+/**
+ * Draws the clustered locations of chat messages in one pass over the current zoom
+ * level's clusters, skipping those off screen: a circle per cluster, sized and
+ * labelled by its count. It replaces one {@code Marker} per message, which osmdroid
+ * would lay out and draw one by one.
+ *
+ * A tap on a cluster zooms in to its points; a tap on a single message, or on a
+ * cluster whose points cannot be told apart, opens that message. Like
+ * {@link PollutionHeatmapOverlay}, this assumes the map is not rotated.
+ */
+class ChatLocationOverlay extends Overlay {
+
+    interface Listener {
+        void onMessageTapped(long messageId);
+    }
+
+    private static final float POINT_RADIUS_DP = 7;
+    private static final float CLUSTER_RADIUS_DP = 14;
+    private static final float TEXT_SIZE_DP = 12;
+
+    private final Listener listener;
+    private final float density;
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final GeoPoint corner = new GeoPoint(0.0, 0.0);
+    private final Point northWest = new Point();
+    private final Point southEast = new Point();
+    private volatile LocationClusters clusters = LocationClusters.empty();
+    // Screen mapping of the last frame: x = originX + mercatorX * scaleX, likewise y
+    private double originX;
+    private double originY;
+    private double scaleX;
+    private double scaleY;
+
+    ChatLocationOverlay(float density, Listener listener) {
+        this.density = density;
+        this.listener = listener;
+        fillPaint.setColor(0xCC1E88E5);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setColor(Color.WHITE);
+        strokePaint.setStrokeWidth(2 * density);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(TEXT_SIZE_DP * density);
+        textPaint.setFakeBoldText(true);
+    }
+
+    /** Swaps in freshly computed clusters; the caller invalidates the map. */
+    void setClusters(LocationClusters clusters) {
+        this.clusters = clusters;
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+        if (shadow || !isEnabled()) return;
+        Projection projection = mapView.getProjection();
+        if (!updateMapping(projection)) return;
+        LocationClusters.Level level = clusters.level(projection.getZoomLevel());
+        float margin = CLUSTER_RADIUS_DP * 2 * density;
+        float width = canvas.getWidth() + margin;
+        float height = canvas.getHeight() + margin;
+        float textOffset = (textPaint.descent() + textPaint.ascent()) / 2;
+        for (int c = 0; c < level.size; c++) {
+            float x = (float) (originX + level.x[c] * scaleX);
+            float y = (float) (originY + level.y[c] * scaleY);
+            if (x < -margin || y < -margin || x > width || y > height) continue;
+            int count = level.count[c];
+            float radius = radiusFor(count);
+            canvas.drawCircle(x, y, radius, fillPaint);
+            canvas.drawCircle(x, y, radius, strokePaint);
+            if (count > 1) canvas.drawText(count > 999 ? "999+" : String.valueOf(count), x, y - textOffset, textPaint);
+        }
+    }
+
+    @Override
+    public boolean onSingleTapConfirmed(MotionEvent e, MapView mapView) {
+        if (!isEnabled() || !updateMapping(mapView.getProjection())) return false;
+        LocationClusters.Level level = clusters.level(mapView.getZoomLevelDouble());
+        int hit = -1;
+        float best = Float.MAX_VALUE;
+        for (int c = 0; c < level.size; c++) {
+            float dx = (float) (originX + level.x[c] * scaleX) - e.getX();
+            float dy = (float) (originY + level.y[c] * scaleY) - e.getY();
+            float distance = dx * dx + dy * dy;
+            // A little slack around small circles makes them easier to hit
+            float reach = radiusFor(level.count[c]) + 8 * density;
+            if (distance <= reach * reach && distance < best) {
+                best = distance;
+                hit = c;
+            }
+        }
+        if (hit < 0) return false;
+        boolean splittable = level.maxX[hit] > level.minX[hit] || level.maxY[hit] > level.minY[hit];
+        if (level.count[hit] == 1 || !splittable
+                || mapView.getZoomLevelDouble() >= mapView.getMaxZoomLevel()) {
+            listener.onMessageTapped(level.id[hit]);
+        } else {
+            BoundingBox box = new BoundingBox(latitude(level.minY[hit]), longitude(level.maxX[hit]),
+                    latitude(level.maxY[hit]), longitude(level.minX[hit]));
+            mapView.zoomToBoundingBox(box, true, (int) (CLUSTER_RADIUS_DP * 4 * density));
+        }
+        return true;
+    }
+
+    private float radiusFor(int count) {
+        if (count == 1) return POINT_RADIUS_DP * density;
+        return (CLUSTER_RADIUS_DP + 3 * (float) Math.log10(count)) * density;
+    }
+
+    /** Maps the visible box's corners to the screen; false if there is nothing to map. */
+    private boolean updateMapping(Projection projection) {
+        BoundingBox box = projection.getBoundingBox();
+        double west = PollutionGrid.mercatorX(box.getLonWest());
+        double east = PollutionGrid.mercatorX(box.getLonEast());
+        double north = PollutionGrid.mercatorY(box.getLatNorth());
+        double south = PollutionGrid.mercatorY(box.getLatSouth());
+        if (east <= west || south <= north) return false;
+        corner.setCoords(box.getLatNorth(), box.getLonWest());
+        projection.toPixels(corner, northWest);
+        corner.setCoords(box.getLatSouth(), box.getLonEast());
+        projection.toPixels(corner, southEast);
+        scaleX = (southEast.x - northWest.x) / (east - west);
+        scaleY = (southEast.y - northWest.y) / (south - north);
+        originX = northWest.x - west * scaleX;
+        originY = northWest.y - north * scaleY;
+        return true;
+    }
+
+    private static double longitude(double mercatorX) {
+        return mercatorX * 360 - 180;
+    }
+
+    private static double latitude(double mercatorY) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * mercatorY))));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demoapp.ui.Map;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.example.demoapp.sensor.PollutionGrid;
+import com.example.demoapp.ui.Chat.ChatHistoryStore;
+
+import java.util.Arrays;
+
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Positions of every geotagged chat message, kept for the whole process so a new map
+ * screen starts from the clusters the last one computed. {@link #refresh()} reads
+ * only the rows added since the previous call and re-clusters on a computation
+ * thread; with nothing new it returns the current clusters as they are.
+ */
+final class ChatLocations {
+
+    private static final int PAGE = 1024;
+    private static ChatLocations instance;
+
+    private final ChatHistoryStore store;
+    // Written on the store's thread only
+    private long[] ids = new long[PAGE];
+    private double[] xs = new double[PAGE];
+    private double[] ys = new double[PAGE];
+    private int size;
+    private long lastId;
+    private volatile LocationClusters clusters = LocationClusters.empty();
+
+    private ChatLocations(ChatHistoryStore store) {
+        this.store = store;
+    }
+
+    static synchronized ChatLocations get(Context context) {
+        if (instance == null) instance = new ChatLocations(ChatHistoryStore.get(context));
+        return instance;
+    }
+
+    /** The clusters as of the last refresh; never null. */
+    LocationClusters current() {
+        return clusters;
+    }
+
+    Single<LocationClusters> refresh() {
+        return Maybe.fromCallable(this::loadNew)
+                .subscribeOn(store.scheduler())
+                .observeOn(Schedulers.computation())
+                .map(snapshot -> {
+                    LocationClusters built = new LocationClusters(snapshot.ids, snapshot.xs, snapshot.ys,
+                            snapshot.ids.length);
+                    // A slower, older refresh must not replace a newer result
+                    synchronized (this) {
+                        if (built.points() > clusters.points()) clusters = built;
+                        return clusters;
+                    }
+                })
+                .switchIfEmpty(Single.fromCallable(this::current));
+    }
+
+    /** Appends the rows added since the last call; returns a copy to cluster, or null if none. */
+    @Nullable
+    private Snapshot loadNew() {
+        long[] pageIds = new long[PAGE];
+        double[] pageLat = new double[PAGE];
+        double[] pageLon = new double[PAGE];
+        int before = size;
+        int n;
+        do {
+            n = store.loadLocations(lastId, pageIds, pageLat, pageLon);
+            if (size + n > ids.length) {
+                int capacity = Math.max(ids.length * 2, size + n);
+                ids = Arrays.copyOf(ids, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+            }
+            for (int i = 0; i < n; i++) {
+                ids[size] = pageIds[i];
+                xs[size] = PollutionGrid.mercatorX(pageLon[i]);
+                ys[size] = PollutionGrid.mercatorY(pageLat[i]);
+                size++;
+            }
+            if (n > 0) lastId = pageIds[n - 1];
+        } while (n == PAGE);
+        if (size == before) return null;
+        return new Snapshot(Arrays.copyOf(ids, size), Arrays.copyOf(xs, size), Arrays.copyOf(ys, size));
+    }
+
+    private static final class Snapshot {
+        final long[] ids;
+        final double[] xs;
+        final double[] ys;
+
+        Snapshot(long[] ids, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.demoapp.ui.Map;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Points grouped into clusters for every map zoom level from {@link #MIN_ZOOM} to
+ * {@link #MAX_ZOOM}. At each level, points falling in the same {@link #CLUSTER_PX}
+ * square of the Web Mercator pixel grid form one cluster, drawn at their centroid.
+ * All levels are computed in the constructor, which callers run off the main thread;
+ * afterwards the object is immutable and can be read from any thread.
+ *
+ * Positions are fractions of the Mercator world, x from the west and y from the top,
+ * as returned by {@code PollutionGrid.mercatorX/Y}.
+ */
+final class LocationClusters {
+
+    static final int MIN_ZOOM = 2;
+    static final int MAX_ZOOM = 19;
+    /** Edge of the square, in screen pixels at its zoom, whose points merge. */
+    static final int CLUSTER_PX = 64;
+
+    /** The clusters of one zoom level, in parallel arrays. */
+    static final class Level {
+        final int size;
+        final double[] x;
+        final double[] y;
+        final int[] count;
+        /** Newest point of each cluster, opened when a cluster cannot be split further. */
+        final long[] id;
+        // Extent of each cluster's points, for zooming in on it
+        final double[] minX;
+        final double[] minY;
+        final double[] maxX;
+        final double[] maxY;
+
+        Level(int capacity) {
+            int n = Math.max(capacity, 0);
+            size = n;
+            x = new double[n];
+            y = new double[n];
+            count = new int[n];
+            id = new long[n];
+            minX = new double[n];
+            minY = new double[n];
+            maxX = new double[n];
+            maxY = new double[n];
+        }
+    }
+
+    private final Level[] levels = new Level[MAX_ZOOM - MIN_ZOOM + 1];
+    private final int points;
+
+    /** Clusters the first {@code n} points; ids are expected in ascending order. */
+    LocationClusters(long[] ids, double[] xs, double[] ys, int n) {
+        points = n;
+        int[] clusterOf = new int[n];
+        for (int z = MIN_ZOOM; z <= MAX_ZOOM; z++) {
+            double cellsAcross = 256.0 * (1L << z) / CLUSTER_PX;
+            Map<Long, Integer> cells = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                long key = ((long) (xs[i] * cellsAcross) << 32) | (long) (ys[i] * cellsAcross);
+                Integer cluster = cells.get(key);
+                if (cluster == null) {
+                    cluster = cells.size();
+                    cells.put(key, cluster);
+                }
+                clusterOf[i] = cluster;
+            }
+            Level level = new Level(cells.size());
+            for (int c = 0; c < level.size; c++) {
+                level.minX[c] = level.minY[c] = Double.POSITIVE_INFINITY;
+                level.maxX[c] = level.maxY[c] = Double.NEGATIVE_INFINITY;
+            }
+            for (int i = 0; i < n; i++) {
+                int c = clusterOf[i];
+                level.x[c] += xs[i];
+                level.y[c] += ys[i];
+                level.count[c]++;
+                level.id[c] = ids[i];
+                level.minX[c] = Math.min(level.minX[c], xs[i]);
+                level.minY[c] = Math.min(level.minY[c], ys[i]);
+                level.maxX[c] = Math.max(level.maxX[c], xs[i]);
+                level.maxY[c] = Math.max(level.maxY[c], ys[i]);
+            }
+            for (int c = 0; c < level.size; c++) {
+                level.x[c] /= level.count[c];
+                level.y[c] /= level.count[c];
+            }
+            levels[z - MIN_ZOOM] = level;
+        }
+    }
+
+    static LocationClusters empty() {
+        return new LocationClusters(new long[0], new double[0], new double[0], 0);
+    }
+
+    int points() {
+        return points;
+    }
+
+    /** The clusters to draw at a (fractional) map zoom level. */
+    Level level(double zoom) {
+        int z = (int) Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, Math.floor(zoom)));
+        return levels[z - MIN_ZOOM];
+    }
+}
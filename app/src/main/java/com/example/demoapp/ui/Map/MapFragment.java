@@ -6,23 +6,25 @@ import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
 import com.example.demoapp.R;
+import com.example.demoapp.sensor.PollutionHeatmap;
+import com.example.demoapp.ui.Chat.ChatHistoryStore;
 
 import org.osmdroid.config.Configuration;
 import org.osmdroid.tileprovider.cachemanager.CacheManager;
-import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
@@ -34,12 +36,21 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+
 public class MapFragment extends Fragment {
 
+    private static final String TAG = "MapFragment";
     private static final int REQUEST_PERMISSIONS_REQUEST_CODE = 1;
+    // Zoom at which a location opened from the chat is shown
+    private static final double FOCUS_ZOOM = 17.0;
     private MapView mapView;
     private MyLocationNewOverlay myLocationOverlay;
-    private Marker receivedMarker;
+    private ChatLocationOverlay chatLocationOverlay;
+    private MapTileSwitcher tileSwitcher;
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
@@ -52,11 +63,34 @@ public class MapFragment extends Fragment {
         Configuration.getInstance().setUserAgentValue(requireContext().getPackageName());
         mapView = rootView.findViewById(R.id.mapView);
 
-        // Always use the online MAPNIK source
-        mapView.setTileSource(TileSourceFactory.MAPNIK);
+        // Online MAPNIK raster, or vector tiles from local map files while offline;
+        // the switcher applies the right one from onResume
+        tileSwitcher = new MapTileSwitcher(mapView);
         mapView.setMultiTouchControls(true);
         mapView.getController().setZoom(15.0);
 
+        // Pollution heatmap under the markers; aggregation runs in the background and
+        // the overlay only redraws when the grid changed
+        PollutionHeatmap heatmap = PollutionHeatmap.get(requireContext());
+        mapView.getOverlays().add(new PollutionHeatmapOverlay(heatmap.grid()));
+        disposables.add(heatmap.changes()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(samples -> mapView.invalidate()));
+
+        // Every geotagged chat message, clustered in the background; the clusters from
+        // the last map screen are drawn right away while new rows are added
+        ChatLocations chatLocations = ChatLocations.get(requireContext());
+        chatLocationOverlay = new ChatLocationOverlay(getResources().getDisplayMetrics().density,
+                this::showMessage);
+        chatLocationOverlay.setClusters(chatLocations.current());
+        mapView.getOverlays().add(chatLocationOverlay);
+        disposables.add(chatLocations.refresh()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(clusters -> {
+                    chatLocationOverlay.setClusters(clusters);
+                    mapView.invalidate();
+                }, t -> Log.e(TAG, "Loading chat locations failed", t)));
+
         // my location overlay
         GpsMyLocationProvider locProvider = new GpsMyLocationProvider(requireContext());
         myLocationOverlay = new MyLocationNewOverlay(locProvider, mapView);
@@ -80,26 +114,15 @@ public class MapFragment extends Fragment {
             }
         });
 
-        // handle manual taps (optional)
-        mapView.setOnTouchListener((v, event) -> {
-            if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                GeoPoint tapped = (GeoPoint) mapView.getProjection()
-                        .fromPixels((int) event.getX(), (int) event.getY());
-                if (tapped != null) {
-                    // displayLocationInfo(tapped);
-                }
-                return true;
-            }
-            return false;
-        });
-
-        // incoming location args from ChatFragment
+        // incoming location args from ChatFragment; NaN when the map is opened directly
         Bundle args = getArguments();
-        if (args != null && args.containsKey("lat") && args.containsKey("lon")) {
-            float lat = args.getFloat("lat");
-            float lon = args.getFloat("lon");
-            GeoPoint fromChat = new GeoPoint(lat, lon);
-            showReceivedLocationMarker(fromChat);
+        float lat = args != null ? args.getFloat("lat", Float.NaN) : Float.NaN;
+        float lon = args != null ? args.getFloat("lon", Float.NaN) : Float.NaN;
+        if (!Float.isNaN(lat) && !Float.isNaN(lon)) {
+            // The message itself is drawn by the chat location overlay
+            myLocationOverlay.disableFollowLocation();
+            mapView.getController().setZoom(FOCUS_ZOOM);
+            mapView.getController().setCenter(new GeoPoint((double) lat, (double) lon));
         } else {
             GeoPoint defaultPoint = new GeoPoint(48.8583, 2.2944);
             mapView.getController().setCenter(defaultPoint);
@@ -162,24 +185,24 @@ public class MapFragment extends Fragment {
         }
     }
 
-    private void showReceivedLocationMarker(GeoPoint point) {
-        if (receivedMarker != null) {
-            mapView.getOverlays().remove(receivedMarker);
-        }
-        receivedMarker = new Marker(mapView);
-        receivedMarker.setPosition(point);
-        receivedMarker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
-        receivedMarker.setTitle("Message Location");
-        double latitude = point.getLatitude();
-        double longitude = point.getLongitude();
-        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
-        String info = "Lat: " + latitude + "\nLon: " + longitude + "\nTime: " + time;
-        receivedMarker.setSnippet(info);
-        mapView.getOverlays().add(receivedMarker);
-        mapView.getController().setCenter(point);
-        receivedMarker.showInfoWindow();
-        mapView.invalidate();
-        Toast.makeText(requireContext(), info, Toast.LENGTH_LONG).show();
+    /** Opens a message tapped on the map, read from the chat history. */
+    private void showMessage(long messageId) {
+        ChatHistoryStore store = ChatHistoryStore.get(requireContext());
+        disposables.add(Maybe.fromCallable(() -> store.load(messageId))
+                .subscribeOn(store.scheduler())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(message -> {
+                    String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
+                            .format(new Date(message.getTimestamp()));
+                    String text = message.getPayload() != null && message.getPayload().getText() != null
+                            ? message.getPayload().getText() : message.getMessage();
+                    String from = message.isSent() ? "You" : message.getSenderName();
+                    new AlertDialog.Builder(requireContext())
+                            .setTitle(from + ", " + time)
+                            .setMessage(text != null && !text.isEmpty() ? text : "(location only)")
+                            .setPositiveButton(android.R.string.ok, null)
+                            .show();
+                }, t -> Toast.makeText(requireContext(), "Couldn't open the message", Toast.LENGTH_SHORT).show()));
     }
 
     private void addDefaultMarker(GeoPoint point, String title) {
@@ -194,6 +217,7 @@ public class MapFragment extends Fragment {
     public void onResume() {
         super.onResume();
         mapView.onResume();
+        tileSwitcher.start();
         if (myLocationOverlay != null) myLocationOverlay.enableMyLocation();
     }
 
@@ -201,9 +225,16 @@ public class MapFragment extends Fragment {
     public void onPause() {
         super.onPause();
         mapView.onPause();
+        tileSwitcher.stop();
         if (myLocationOverlay != null) myLocationOverlay.disableMyLocation();
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        disposables.clear();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
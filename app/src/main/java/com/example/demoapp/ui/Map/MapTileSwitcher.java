@@ -0,0 +1,146 @@
+package com.example.demoapp.ui.Map;
+
+import android.app.Application;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.osmdroid.mapsforge.MapsForgeTileProvider;
+import org.osmdroid.mapsforge.MapsForgeTileSource;
+import org.osmdroid.tileprovider.MapTileProviderBasic;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
+import org.osmdroid.views.MapView;
+
+import java.io.File;
+
+/**
+ * Switches the map between online MAPNIK raster tiles and mapsforge vector tiles
+ * rendered on the device from local {@code .map} files, following connectivity.
+ *
+ * Both providers keep recent tiles in osmdroid's in-memory LRU, sized to the screen,
+ * and write fetched or rendered tiles to its SQLite tile cache, so a vector tile is
+ * rendered once and then read back from disk. A change of connectivity is applied
+ * only after it has held for {@link #SETTLE_MS}, so a flaky link doesn't make the map
+ * swap providers back and forth.
+ *
+ * Main thread only.
+ */
+class MapTileSwitcher {
+
+    static final long SETTLE_MS = 3000;
+    private static final String TAG = "MapTileSwitcher";
+
+    private final MapView mapView;
+    private final Context context;
+    private final ConnectivityManager connectivity;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable applyRunnable = this::apply;
+    private int mode = -1;
+    private boolean online;
+    private boolean started;
+
+    // Called on a binder thread; every change is posted to the main thread
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            post(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            post(false);
+        }
+    };
+
+    MapTileSwitcher(MapView mapView) {
+        this.mapView = mapView;
+        context = mapView.getContext().getApplicationContext();
+        connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Sets up the mapsforge graphics once per process
+        MapsForgeTileSource.createInstance((Application) context);
+    }
+
+    /** Shows the tiles for the current connectivity right away, then follows changes. */
+    void start() {
+        if (started) return;
+        started = true;
+        online = isOnlineNow();
+        apply();
+        if (connectivity != null) connectivity.registerDefaultNetworkCallback(callback);
+    }
+
+    void stop() {
+        if (!started) return;
+        started = false;
+        handler.removeCallbacks(applyRunnable);
+        if (connectivity != null) connectivity.unregisterNetworkCallback(callback);
+    }
+
+    int mode() {
+        return mode;
+    }
+
+    /** The folders searched for map files, for telling the user where to put them. */
+    File[] mapDirs() {
+        return new File[]{context.getExternalFilesDir(OfflineMaps.DIR), new File(context.getFilesDir(), OfflineMaps.DIR)};
+    }
+
+    private void post(boolean nowOnline) {
+        handler.post(() -> {
+            if (!started || nowOnline == online) return;
+            online = nowOnline;
+            handler.removeCallbacks(applyRunnable);
+            handler.postDelayed(applyRunnable, SETTLE_MS);
+        });
+    }
+
+    private void apply() {
+        File[] maps = OfflineMaps.find(mapDirs());
+        int next = OfflineMaps.modeFor(online, maps.length > 0);
+        if (next == mode) return;
+        // The old provider is detached by the map; a mapsforge one closes its files then
+        if (next == OfflineMaps.MODE_VECTOR) {
+            MapsForgeTileSource source = MapsForgeTileSource.createFromFiles(maps);
+            mapView.setTileProvider(new MapsForgeTileProvider(new SimpleRegisterReceiver(context), source,
+                    new SqlTileWriter()));
+        } else {
+            // Offline, the raster provider still serves tiles from its disk cache
+            MapTileProviderBasic provider = new MapTileProviderBasic(context, TileSourceFactory.MAPNIK);
+            provider.setUseDataConnection(next == OfflineMaps.MODE_RASTER);
+            mapView.setTileProvider(provider);
+        }
+        mode = next;
+        Log.d(TAG, "Tiles: " + describe(next) + (next == OfflineMaps.MODE_VECTOR ? " from " + maps.length + " files" : ""));
+    }
+
+    private boolean isOnlineNow() {
+        if (connectivity == null) return false;
+        Network network = connectivity.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivity.getNetworkCapabilities(network) : null;
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    @Nullable
+    static String describe(int mode) {
+        switch (mode) {
+            case OfflineMaps.MODE_RASTER:
+                return "online raster";
+            case OfflineMaps.MODE_VECTOR:
+                return "offline vector";
+            case OfflineMaps.MODE_RASTER_CACHED:
+                return "cached raster";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demoapp.ui.Map;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Where offline vector maps live and which tiles the map shows. Mapsforge {@code .map}
+ * files (e.g. a region from download.mapsforge.org) are copied into a {@link #DIR}
+ * folder of the app's external or internal files directory; no raster tiles need to be
+ * downloaded for that region.
+ */
+final class OfflineMaps {
+
+    static final String DIR = "maps";
+    static final String SUFFIX = ".map";
+
+    /** Online raster tiles, MAPNIK. */
+    static final int MODE_RASTER = 0;
+    /** Vector tiles rendered on the device from local map files. */
+    static final int MODE_VECTOR = 1;
+    /** Offline without map files: only raster tiles cached earlier can be shown. */
+    static final int MODE_RASTER_CACHED = 2;
+
+    private OfflineMaps() {
+    }
+
+    /** Readable map files in the given directories, sorted by name; null directories are skipped. */
+    static File[] find(@Nullable File... dirs) {
+        List<File> found = new ArrayList<>();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir == null) continue;
+                File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).endsWith(SUFFIX));
+                if (files == null) continue;
+                for (File file : files) if (file.isFile() && file.canRead() && file.length() > 0) found.add(file);
+            }
+        }
+        Collections.sort(found, (a, b) -> a.getName().compareTo(b.getName()));
+        return found.toArray(new File[0]);
+    }
+
+    /**
+     * Online always uses raster tiles, which cover the whole world; offline prefers
+     * local vector maps over whatever raster tiles happen to be cached.
+     */
+    static int modeFor(boolean online, boolean hasMapFiles) {
+        if (online) return MODE_RASTER;
+        return hasMapFiles ? MODE_VECTOR : MODE_RASTER_CACHED;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demoapp.ui.Map;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+
+import com.example.demoapp.sensor.PollutionGrid;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+/**
+ * Draws a {@link PollutionGrid} as colored cells under the map's other overlays. Each
+ * frame looks up only the cells of the visible {@link BoundingBox} at the grid level
+ * matching the zoom, so cells stay 23 to 45 px on screen and a frame touches a few
+ * thousand cells however many samples were aggregated.
+ *
+ * Web Mercator is linear on screen, so only the two corners of the box are projected
+ * and cell edges are interpolated from them; this assumes the map is not rotated.
+ * Colors follow the US EPA PM2.5 index bands.
+ */
+class PollutionHeatmapOverlay extends Overlay {
+
+    // Enough for a 4K screen at the smallest cell size
+    private static final int MAX_CELLS = 16_384;
+    private static final int ALPHA = 0x80;
+    // Upper bounds of the PM2.5 bands in µg/m³; the last color is everything above
+    private static final float[] BREAKPOINTS = {12f, 35.4f, 55.4f, 150.4f, 250.4f};
+    private static final int[] COLORS = {0x00E400, 0xFFFF00, 0xFF7E00, 0xFF0000, 0x8F3F97, 0x7E0023};
+
+    private final PollutionGrid grid;
+    private final int[] cells = new int[2 * MAX_CELLS];
+    private final float[] means = new float[MAX_CELLS];
+    private final Paint paint = new Paint();
+    private final GeoPoint corner = new GeoPoint(0.0, 0.0);
+    private final Point northWest = new Point();
+    private final Point southEast = new Point();
+
+    PollutionHeatmapOverlay(PollutionGrid grid) {
+        this.grid = grid;
+        paint.setStyle(Paint.Style.FILL);
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+        if (shadow || !isEnabled()) return;
+        Projection projection = mapView.getProjection();
+        BoundingBox box = projection.getBoundingBox();
+        int level = PollutionGrid.levelFor(projection.getZoomLevel());
+        long across = PollutionGrid.cellsAcross(level);
+        double west = PollutionGrid.mercatorX(box.getLonWest()) * across;
+        double east = PollutionGrid.mercatorX(box.getLonEast()) * across;
+        double north = PollutionGrid.mercatorY(box.getLatNorth()) * across;
+        double south = PollutionGrid.mercatorY(box.getLatSouth()) * across;
+        // Nothing to interpolate across, e.g. a box wrapping the date line
+        if (east <= west || south <= north) return;
+
+        int n = grid.collect(level, (int) west, (int) north, (int) Math.min(across - 1, (long) east),
+                (int) Math.min(across - 1, (long) south), cells, means);
+        if (n == 0) return;
+
+        corner.setCoords(box.getLatNorth(), box.getLonWest());
+        projection.toPixels(corner, northWest);
+        corner.setCoords(box.getLatSouth(), box.getLonEast());
+        projection.toPixels(corner, southEast);
+        // Screen pixels per cell; offsets stay in double, cell indices reach 2^21
+        double cellWidth = (southEast.x - northWest.x) / (east - west);
+        double cellHeight = (southEast.y - northWest.y) / (south - north);
+
+        for (int i = 0; i < n; i++) {
+            float left = (float) (northWest.x + (cells[2 * i] - west) * cellWidth);
+            float top = (float) (northWest.y + (cells[2 * i + 1] - north) * cellHeight);
+            paint.setColor(colorFor(means[i]));
+            canvas.drawRect(left, top, left + (float) cellWidth, top + (float) cellHeight, paint);
+        }
+    }
+
+    static int colorFor(float pm25) {
+        int band = 0;
+        while (band < BREAKPOINTS.length && pm25 > BREAKPOINTS[band]) band++;
+        return (ALPHA << 24) | COLORS[band];
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.demoapp.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+
+import static org.junit.Assert.*;
+
+public class CharacteristicWriterTest {
+
+    private static final int ACKED = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+    private static final int FAST = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+
+    /** Stands in for the characteristic and the connection's queue; finishes writes on demand. */
+    private static final class FakeGatt {
+        int writeType;
+        final List<Integer> queuedTypes = new ArrayList<>();
+        final List<SingleSubject<byte[]>> queued = new ArrayList<>();
+
+        CharacteristicWriter writer() {
+            return new CharacteristicWriter(type -> writeType = type, chunk -> {
+                SingleSubject<byte[]> op = SingleSubject.create();
+                queuedTypes.add(writeType);
+                queued.add(op);
+                return op;
+            });
+        }
+
+        void finish(int index) {
+            queued.get(index).onSuccess(new byte[0]);
+        }
+    }
+
+    @Test
+    public void sameTypeWritesOverlap() {
+        FakeGatt gatt = new FakeGatt();
+        CharacteristicWriter writer = gatt.writer();
+        writer.withoutResponse().write(new byte[1]).test();
+        writer.withoutResponse().write(new byte[1]).test();
+        writer.withoutResponse().write(new byte[1]).test();
+
+        assertEquals(3, gatt.queued.size());
+    }
+
+    @Test
+    public void otherTypeWaitsUntilQueuedWritesFinish() {
+        FakeGatt gatt = new FakeGatt();
+        CharacteristicWriter writer = gatt.writer();
+        TestObserver<byte[]> control = writer.acknowledged().write(new byte[1]).test();
+        TestObserver<byte[]> ack = writer.withoutResponse().write(new byte[1]).test();
+        writer.acknowledged().write(new byte[1]).test();
+
+        assertEquals(1, gatt.queued.size());
+        gatt.finish(0);
+        control.assertComplete();
+        assertEquals(2, gatt.queued.size());
+        gatt.finish(1);
+        ack.assertComplete();
+        assertEquals(3, gatt.queued.size());
+        assertEquals(ACKED, (int) gatt.queuedTypes.get(0));
+        assertEquals(FAST, (int) gatt.queuedTypes.get(1));
+        assertEquals(ACKED, (int) gatt.queuedTypes.get(2));
+    }
+
+    @Test
+    public void disposedWaitingWriteIsNeverQueued() {
+        FakeGatt gatt = new FakeGatt();
+        CharacteristicWriter writer = gatt.writer();
+        writer.acknowledged().write(new byte[1]).test();
+        writer.withoutResponse().write(new byte[1]).test().dispose();
+        TestObserver<byte[]> next = writer.acknowledged().write(new byte[1]).test();
+
+        assertEquals(2, gatt.queued.size());
+        assertEquals(ACKED, (int) gatt.queuedTypes.get(1));
+        gatt.finish(0);
+        gatt.finish(1);
+        next.assertComplete();
+        assertEquals(2, gatt.queued.size());
+    }
+
+    @Test
+    public void failedWriteReleasesTheQueue() {
+        FakeGatt gatt = new FakeGatt();
+        CharacteristicWriter writer = gatt.writer();
+        TestObserver<byte[]> failed = writer.withoutResponse().write(new byte[1]).test();
+        writer.acknowledged().write(new byte[1]).test();
+
+        gatt.queued.get(0).onError(new IllegalStateException());
+        failed.assertError(IllegalStateException.class);
+        assertEquals(2, gatt.queued.size());
+        assertEquals(ACKED, (int) gatt.queuedTypes.get(1));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.demoapp.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameAckTest {
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void roundTripsPartialAndCompleteAcks() {
+        BitSet received = new BitSet();
+        received.set(0);
+        received.set(2);
+        received.set(9);
+        FrameAck partial = FrameAck.decode(FrameAck.partial(513, 10, received).encode());
+        assertEquals(513, partial.id);
+        assertFalse(partial.isComplete());
+        for (int i = 0; i < 10; i++) assertEquals(String.valueOf(i), !received.get(i), partial.isMissing(i));
+
+        FrameAck complete = FrameAck.decode(FrameAck.complete(7).encode());
+        assertTrue(complete.isComplete());
+        assertFalse(complete.isMissing(0));
+        assertEquals(4, FrameAck.complete(7).encode().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedAck() {
+        FrameAck.decode(new byte[]{0, 1, 0, 20, 0});
+    }
+
+    @Test
+    public void assemblerReportsMissingChunksOnLastChunk() {
+        List<byte[]> chunks = new FrameEncoder().encode(payload(300), 0, 40);
+        FrameAssembler assembler = new FrameAssembler();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i == 2 || i == 5) continue;
+            assertNull(assembler.feed(chunks.get(i)));
+            FrameAck ack = assembler.takeAck();
+            // Only the last chunk asks for a report
+            assertEquals(i == chunks.size() - 1, ack != null);
+        }
+        SentFrame sent = new SentFrame(chunks);
+        FrameAck ack = FrameAck.decode(FrameAck.partial(sent.id, chunks.size(), bitmapOf(chunks, 2, 5)).encode());
+        List<byte[]> resend = sent.missing(ack);
+        assertEquals(2, resend.size());
+        assertSame(chunks.get(2), resend.get(0));
+
+        assertNull(assembler.feed(resend.get(0)));
+        assertNotNull(assembler.feed(resend.get(1)));
+        assertTrue(assembler.takeAck().isComplete());
+        assertNull(assembler.takeAck());
+    }
+
+    @Test
+    public void repeatedChunkOfFinishedMessageIsAckedAgain() {
+        List<byte[]> chunks = new FrameEncoder().encode(payload(50), 0, 40);
+        FrameAssembler assembler = new FrameAssembler();
+        for (byte[] chunk : chunks) assembler.feed(chunk);
+        assertTrue(assembler.takeAck().isComplete());
+        // The sender's probe after a lost ack
+        assertNull(assembler.feed(new SentFrame(chunks).probe()));
+        assertTrue(assembler.takeAck().isComplete());
+    }
+
+    @Test
+    public void controlFramesAreNotAcknowledged() {
+        byte[] ack = FrameAck.complete(3).encode();
+        List<byte[]> chunks = new FrameEncoder().encode(ack, BleFrame.FLAG_CONTROL, 40);
+        FrameAssembler assembler = new FrameAssembler();
+        assertNotNull(assembler.feed(chunks.get(0)));
+        assertNull(assembler.takeAck());
+    }
+
+    @Test
+    public void lossyLinkOnlyResendsMissingChunks() {
+        byte[] data = payload(2000);
+        List<byte[]> chunks = new FrameEncoder().encode(data, 0, 64);
+        SentFrame sent = new SentFrame(chunks);
+        FrameAssembler assembler = new FrameAssembler();
+        Random loss = new Random(3);
+
+        int written = 0;
+        int rounds = 0;
+        FrameAssembler.Message done = null;
+        List<byte[]> round = chunks;
+        while (done == null) {
+            FrameAck ack = null;
+            for (byte[] chunk : round) {
+                written++;
+                if (loss.nextInt(4) == 0) continue;
+                FrameAssembler.Message m = assembler.feed(chunk);
+                if (m != null) done = m;
+                FrameAck a = assembler.takeAck();
+                if (a != null) ack = a;
+            }
+            if (done != null) break;
+            assertTrue("too many rounds", ++rounds < 20);
+            // No report means the tail was lost too: probe, as the retransmit timer does
+            round = ack != null ? sent.missing(ack) : singleton(sent.probe());
+        }
+        assertArrayEquals(data, done.payload);
+        // A quarter of the chunks is lost; resending everything would cost far more
+        assertTrue("wrote " + written + " for " + chunks.size(), written < chunks.size() * 2);
+    }
+
+    private static BitSet bitmapOf(List<byte[]> chunks, int... lost) {
+        BitSet received = new BitSet();
+        received.set(0, chunks.size());
+        for (int i : lost) received.clear(i);
+        return received;
+    }
+
+    private static List<byte[]> singleton(byte[] chunk) {
+        List<byte[]> list = new ArrayList<>();
+        list.add(chunk);
+        return list;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demoapp.ble;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameAssemblerTest {
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void reassemblesOutOfOrderChunksWithDuplicates() {
+        byte[] data = payload(1000);
+        List<byte[]> chunks = new FrameEncoder().encode(data, 0x3, 64);
+        Collections.shuffle(chunks, new Random(7));
+        chunks.add(3, chunks.get(0));
+
+        FrameAssembler assembler = new FrameAssembler();
+        FrameAssembler.Message done = null;
+        for (byte[] chunk : chunks) {
+            FrameAssembler.Message m = assembler.feed(chunk);
+            if (m != null) {
+                assertNull("completed twice", done);
+                done = m;
+            }
+        }
+        assertNotNull(done);
+        assertEquals(0x3, done.flags);
+        assertArrayEquals(data, done.payload);
+        assertEquals(1, assembler.getDuplicateChunks());
+    }
+
+    @Test
+    public void dropsCorruptChunk() {
+        List<byte[]> chunks = new FrameEncoder().encode(payload(100), 0, 40);
+        chunks.get(1)[BleFrame.HEADER_SIZE + 2] ^= 0x10;
+
+        FrameAssembler assembler = new FrameAssembler();
+        for (byte[] chunk : chunks) assertNull(assembler.feed(chunk));
+        assertEquals(1, assembler.getCorruptChunks());
+    }
+
+    @Test
+    public void handlesEmptyPayloadAndInterleavedMessages() {
+        FrameEncoder encoder = new FrameEncoder();
+        List<byte[]> a = encoder.encode(payload(50), 0, 30);
+        List<byte[]> b = encoder.encode(new byte[0], 0, 30);
+
+        FrameAssembler assembler = new FrameAssembler();
+        assertNull(assembler.feed(a.get(0)));
+        FrameAssembler.Message empty = assembler.feed(b.get(0));
+        assertNotNull(empty);
+        assertEquals(0, empty.payload.length);
+        assertNull(assembler.feed(a.get(1)));
+        assertArrayEquals(payload(50), assembler.feed(a.get(2)).payload);
+    }
+
+    @Test
+    public void framesAreNeverMistakenForLegacyJson() {
+        for (byte[] chunk : new FrameEncoder().encode(payload(10), 0xF, 20)) {
+            assertTrue(BleFrame.isFrame(chunk));
+        }
+        assertFalse(BleFrame.isFrame("{\"message\":\"hello\"}".getBytes()));
+    }
+
+    @Test
+    public void sessionsOnOneLinkDoNotReuseFrameIds() {
+        BleLink link = new BleLink("AA:AA:AA:AA:AA:AA", null, BleMtu.DEFAULT);
+        FrameAssembler assembler = new FrameAssembler();
+        byte[] first = payload(30);
+        byte[] second = payload(31);
+
+        // Two chat screens, one after the other, writing to the same peer
+        for (FrameEncoder session : new FrameEncoder[]{link.frames, link.frames}) {
+            assertArrayEquals(first, assembler.feed(session.encode(first, 0, 64).get(0)).payload);
+            assertArrayEquals(second, assembler.feed(session.encode(second, 0, 64).get(0)).payload);
+        }
+        assertEquals(0, assembler.getDuplicateChunks());
+
+        // An encoder of their own would start over at id 0, which the peer takes for a duplicate
+        assertNull(assembler.feed(new FrameEncoder().encode(first, 0, 64).get(0)));
+        assertEquals(1, assembler.getDuplicateChunks());
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demoapp.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+
+import static org.junit.Assert.*;
+
+public class PipelinedWriterTest {
+
+    private static final long INTERVAL_MS = 15;
+    private static final int PACKETS_PER_INTERVAL = 6;
+    private static final int STACK_BUFFER = 10;
+
+    /**
+     * Loopback model of one connection: an acknowledged write completes one connection
+     * interval after it is issued; a write command is accepted while the stack buffer has
+     * room, and the controller drains a few packets per interval.
+     */
+    private static final class FakeLink {
+        final TestScheduler scheduler = new TestScheduler();
+        int buffered;
+
+        FakeLink() {
+            scheduler.schedulePeriodicallyDirect(
+                    () -> buffered = Math.max(0, buffered - PACKETS_PER_INTERVAL),
+                    INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        ChunkWriter acknowledged() {
+            return chunk -> Single.timer(INTERVAL_MS, TimeUnit.MILLISECONDS, scheduler).map(x -> chunk);
+        }
+
+        ChunkWriter withoutResponse() {
+            return chunk -> Single.defer(() -> {
+                if (buffered >= STACK_BUFFER) return Single.error(new WriteBufferFullException());
+                buffered++;
+                return Single.just(chunk);
+            });
+        }
+    }
+
+    private static List<byte[]> chunks(int count, int size) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) chunks.add(new byte[size]);
+        return chunks;
+    }
+
+    /** Runs until every chunk is accepted and returns the virtual time it took. */
+    private static long run(FakeLink link, PipelinedWriter writer, List<byte[]> chunks) {
+        AtomicBoolean done = new AtomicBoolean();
+        TestSubscriber<byte[]> ts = writer.write(chunks).doOnTerminate(() -> done.set(true)).test();
+        long elapsed = 0;
+        while (!done.get()) {
+            link.scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+            elapsed++;
+            assertTrue("stalled", elapsed < 600_000);
+        }
+        ts.assertNoErrors();
+        ts.assertValueCount(chunks.size());
+        return elapsed;
+    }
+
+    @Test
+    public void windowOfOneMatchesSequentialWrites() {
+        FakeLink link = new FakeLink();
+        long elapsed = run(link, new PipelinedWriter(link.acknowledged(), 1, link.scheduler), chunks(20, 20));
+        assertEquals(20 * INTERVAL_MS, elapsed);
+    }
+
+    @Test
+    public void backsOffWhenStackBufferIsFull() {
+        FakeLink link = new FakeLink();
+        PipelinedWriter writer = new PipelinedWriter(link.withoutResponse(), 32, link.scheduler);
+        run(link, writer, chunks(100, 20));
+        assertTrue(writer.getBackoffCount() > 0);
+    }
+
+    @Test
+    public void failsAfterNonBufferError() {
+        FakeLink link = new FakeLink();
+        ChunkWriter broken = chunk -> Single.error(new IllegalStateException("disconnected"));
+        writerFor(broken, link).write(chunks(3, 20)).test().assertError(IllegalStateException.class);
+    }
+
+    private static PipelinedWriter writerFor(ChunkWriter writer, FakeLink link) {
+        return new PipelinedWriter(writer, PipelinedWriter.DEFAULT_WINDOW, link.scheduler);
+    }
+
+    @Test
+    public void pipelinedPathFinishesBeforeAcknowledgedOne() {
+        List<byte[]> data = chunks(500, 244);
+
+        FakeLink ackedLink = new FakeLink();
+        long acked = run(ackedLink, new PipelinedWriter(ackedLink.acknowledged(), 1, ackedLink.scheduler), data);
+
+        FakeLink fastLink = new FakeLink();
+        PipelinedWriter fast = writerFor(fastLink.withoutResponse(), fastLink);
+        long pipelined = run(fastLink, fast, data);
+
+        assertTrue(pipelined < acked);
+    }
+}
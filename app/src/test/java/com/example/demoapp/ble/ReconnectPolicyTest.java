@@ -0,0 +1,52 @@
+package com.example.demoapp.ble;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    public void directConnectFirstThenAutoConnect() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(1));
+        for (int attempt = 0; attempt < ReconnectPolicy.DIRECT_ATTEMPTS; attempt++) {
+            assertFalse(policy.useAutoConnect(attempt));
+        }
+        assertTrue(policy.useAutoConnect(ReconnectPolicy.DIRECT_ATTEMPTS));
+    }
+
+    @Test
+    public void delaysGrowWithJitterUpToTheCap() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(7));
+        for (int failures = 1; failures <= 40; failures++) {
+            long cap = Math.min(ReconnectPolicy.MAX_DELAY_MS,
+                    ReconnectPolicy.BASE_DELAY_MS << Math.min(failures - 1, 20));
+            for (int i = 0; i < 50; i++) {
+                long delay = policy.delayMs(failures);
+                assertTrue("failures=" + failures + " delay=" + delay, delay >= cap / 2 && delay <= cap);
+            }
+        }
+        assertTrue(policy.delayMs(0) <= ReconnectPolicy.BASE_DELAY_MS);
+    }
+
+    @Test
+    public void metricsTrackOutagesAndSuccessRate() {
+        LinkMetrics metrics = new LinkMetrics();
+        metrics.attemptStarted();
+        metrics.connected(1_000);
+        // Link drops, one failed retry, then back after 3 s
+        metrics.down(10_000, true);
+        metrics.attemptStarted();
+        metrics.down(11_000, false);
+        metrics.attemptStarted();
+        metrics.connected(13_000);
+
+        assertEquals(3, metrics.getAttempts());
+        assertEquals(1, metrics.getDrops());
+        assertEquals(2.0 / 3, metrics.successRate(), 1e-9);
+        assertEquals(3_000, metrics.meanReconnectMs());
+        assertEquals(3_000, metrics.maxReconnectMs());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeoSampleLogTest {
+
+    // 2024-03-09 23:00 UTC
+    private static final long START = 1710025200000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static SensorReading reading(long t, float pm25, double lat, double lon) {
+        float[] values = SensorReading.emptyValues();
+        values[SensorMetric.PM25] = pm25;
+        return new SensorReading(t, values, lat, lon);
+    }
+
+    @Test
+    public void replaysTaggedReadingsAcrossDays() throws Exception {
+        File dir = tmp.newFolder();
+        GeoSampleLog log = new GeoSampleLog(dir);
+        // Two hours crossing midnight; every tenth reading has no fix
+        for (int i = 0; i < 7200; i++) {
+            long t = START + i * 1000L;
+            log.append(i % 10 == 0 ? new SensorReading(t, SensorReading.emptyValues())
+                    : reading(t, i, 48.85 + i * 1e-6, 2.35));
+        }
+        log.flush();
+        assertEquals(2, dir.list().length);
+
+        List<Long> times = new ArrayList<>();
+        float[] last = new float[1];
+        double[] lastLat = new double[1];
+        int count = log.replay(Long.MAX_VALUE, (t, lat, lon, values) -> {
+            times.add(t);
+            last[0] = values[SensorMetric.PM25];
+            lastLat[0] = lat;
+        });
+        assertEquals(6480, count);
+        assertEquals(START + 1000, (long) times.get(0));
+        assertEquals(7199f, last[0], 0);
+        assertEquals(48.857199, lastLat[0], 1e-6);
+
+        assertEquals(9, log.replay(START + 11_000, (t, lat, lon, values) -> { }));
+    }
+
+    @Test
+    public void skipsATornRecord() throws Exception {
+        File dir = tmp.newFolder();
+        GeoSampleLog log = new GeoSampleLog(dir);
+        log.append(reading(START, 5, 1, 2));
+        log.flush();
+        File file = dir.listFiles()[0];
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[GeoSampleLog.RECORD_BYTES / 2]);
+        }
+        assertEquals(1, log.replay(Long.MAX_VALUE, (t, lat, lon, values) -> { }));
+
+        // After a restart, the first write realigns the file
+        log = new GeoSampleLog(dir);
+        log.append(reading(START + 1000, 6, 1, 2));
+        log.flush();
+        assertEquals(2 * GeoSampleLog.RECORD_BYTES, file.length());
+        assertEquals(2, log.replay(Long.MAX_VALUE, (t, lat, lon, values) -> { }));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MinMaxDecimatorTest {
+
+    @Test
+    public void keepsExtremesPerColumn() {
+        MinMaxDecimator d = new MinMaxDecimator(10);
+        d.reset(1000, 1000);
+        for (int t = 0; t < 1000; t++) d.add(t, t % 100 == 42 ? 500 : t % 100);
+        for (int c = 0; c < 10; c++) {
+            assertTrue(d.has(c));
+            assertEquals(0f, d.min(c), 0);
+            // A one-sample spike survives
+            assertEquals(500f, d.max(c), 0);
+            assertEquals(0f, d.first(c), 0);
+            assertEquals(99f, d.last(c), 0);
+        }
+        float[] range = new float[2];
+        assertTrue(d.range(range));
+        assertEquals(500f, range[1], 0);
+    }
+
+    @Test
+    public void slidesWithoutTouchingOlderColumns() {
+        MinMaxDecimator d = new MinMaxDecimator(4);
+        d.reset(400, 400);
+        for (int t = 0; t < 400; t += 10) d.add(t, t / 100);
+        d.add(430, 9);
+        // Window is now [100, 500): the first column dropped, the new one holds one sample
+        assertEquals(100, d.windowStart());
+        assertEquals(1f, d.max(0), 0);
+        assertEquals(3f, d.max(2), 0);
+        assertEquals(9f, d.min(3), 0);
+        assertEquals(430, d.lastTime());
+
+        d.add(5000, 7);
+        assertFalse(d.has(0));
+        assertTrue(d.has(3));
+        assertEquals(4700, d.windowStart());
+    }
+
+    @Test
+    public void ignoresMissingAndLateSamples() {
+        MinMaxDecimator d = new MinMaxDecimator(2);
+        d.reset(200, 200);
+        d.add(-5, 1);
+        d.add(10, Float.NaN);
+        assertFalse(d.has(0));
+        float[] range = new float[2];
+        assertFalse(d.range(range));
+    }
+
+    @Test
+    public void linesLeaveGapsAndJoinNeighbours() {
+        MinMaxDecimator d = new MinMaxDecimator(4);
+        d.reset(4, 4);
+        d.add(0, 0);
+        d.add(1, 10);
+        d.add(3, 5);
+        float[] lines = new float[8 * 4];
+        int n = d.toLines(0, 0, 4, 10, 0, 10, lines);
+        // Three strokes, one join between the first two columns, none across the gap
+        assertEquals(4 * 4, n);
+        assertEquals(0.5f, lines[0], 0);
+        assertEquals(10f, lines[1], 0);
+        // Join from the first column's last value to the second column's first
+        assertEquals(1.5f, lines[6], 0);
+        assertEquals(0f, lines[7], 0);
+        assertEquals(3.5f, lines[12], 0);
+    }
+
+    @Test
+    public void anySpanDrawsAtMostTwoSegmentsPerColumn() {
+        int columns = 1080;
+        float[] lines = new float[8 * columns];
+        long[] spans = {10 * 60_000L, 10 * 60 * 60_000L};
+        for (long span : spans) {
+            // Ten samples a second over the whole span
+            int n = (int) (span / 100);
+            MinMaxDecimator d = new MinMaxDecimator(columns);
+            d.reset(span, span);
+            float lo = Float.MAX_VALUE;
+            float hi = -Float.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                float value = (float) Math.sin(i / 500.0) * 50 + 50;
+                lo = Math.min(lo, value);
+                hi = Math.max(hi, value);
+                d.add(i * 100L, value);
+            }
+
+            int floats = d.toLines(0, 0, columns, 500, 0, 100, lines);
+            assertTrue(floats > 0);
+            assertTrue(floats / 4 <= 2 * columns);
+            float[] range = new float[2];
+            assertTrue(d.range(range));
+            assertEquals(lo, range[0], 0);
+            assertEquals(hi, range[1], 0);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PollutionGridTest {
+
+    @Test
+    public void averagesSamplesInTheSameCell() {
+        PollutionGrid grid = new PollutionGrid();
+        grid.add(48.8583, 2.2944, 10);
+        grid.add(48.8583, 2.294401, 30);
+        grid.add(48.8583, 2.2944, Float.NaN);
+        assertEquals(2, grid.samples());
+        assertEquals(1, grid.cells(PollutionGrid.MAX_LEVEL));
+
+        int level = PollutionGrid.MAX_LEVEL;
+        long across = PollutionGrid.cellsAcross(level);
+        int cx = (int) (PollutionGrid.mercatorX(2.2944) * across);
+        int cy = (int) (PollutionGrid.mercatorY(48.8583) * across);
+        int[] cells = new int[8];
+        float[] means = new float[4];
+        assertEquals(1, grid.collect(level, cx - 1, cy - 1, cx + 1, cy + 1, cells, means));
+        assertEquals(cx, cells[0]);
+        assertEquals(cy, cells[1]);
+        assertEquals(20f, means[0], 1e-4);
+        // Outside the range nothing is found
+        assertEquals(0, grid.collect(level, cx + 1, cy, cx + 5, cy, cells, means));
+    }
+
+    @Test
+    public void mercatorMatchesTileGrid() {
+        assertEquals(0.5, PollutionGrid.mercatorX(0), 1e-12);
+        assertEquals(0.5, PollutionGrid.mercatorY(0), 1e-12);
+        assertEquals(0, PollutionGrid.mercatorY(89), 1e-9);
+        assertEquals(PollutionGrid.MIN_LEVEL, PollutionGrid.levelFor(1.2));
+        assertEquals(15, PollutionGrid.levelFor(15.4));
+        assertEquals(PollutionGrid.MAX_LEVEL, PollutionGrid.levelFor(21));
+    }
+
+    @Test
+    public void scanAndLookupAgree() {
+        PollutionGrid grid = new PollutionGrid();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            grid.add(48.80 + random.nextDouble() * 0.1, 2.25 + random.nextDouble() * 0.1, random.nextInt(100));
+        }
+        int level = 14;
+        long across = PollutionGrid.cellsAcross(level);
+        int minX = (int) (PollutionGrid.mercatorX(2.25) * across);
+        int maxX = (int) (PollutionGrid.mercatorX(2.35) * across);
+        int minY = (int) (PollutionGrid.mercatorY(48.90) * across);
+        int maxY = (int) (PollutionGrid.mercatorY(48.80) * across);
+        int[] cells = new int[2 * 4096];
+        float[] means = new float[4096];
+        // A small range is looked up cell by cell, the whole world is scanned
+        int looked = grid.collect(level, minX, minY, maxX, maxY, cells, means);
+        int scanned = grid.collect(level, 0, 0, (int) across - 1, (int) across - 1, cells, means);
+        assertEquals(grid.cells(level), looked);
+        assertEquals(looked, scanned);
+    }
+
+    @Test
+    public void visibleQueryFindsARandomWalk() {
+        PollutionGrid grid = new PollutionGrid();
+        Random random = new Random(1);
+        int n = 20_000;
+        // A random walk through a city, one sample a second
+        double lat = 48.85;
+        double lon = 2.35;
+        for (int i = 0; i < n; i++) {
+            lat += (random.nextDouble() - 0.5) * 1e-4;
+            lon += (random.nextDouble() - 0.5) * 1e-4;
+            grid.add(lat, lon, 20 + random.nextInt(40));
+        }
+
+        // A phone screen of cells around the last position at zoom 16
+        int level = 16;
+        long across = PollutionGrid.cellsAcross(level);
+        int cx = (int) (PollutionGrid.mercatorX(lon) * across);
+        int cy = (int) (PollutionGrid.mercatorY(lat) * across);
+        int[] cells = new int[2 * 16_384];
+        float[] means = new float[16_384];
+        int found = grid.collect(level, cx - 17, cy - 37, cx + 17, cy + 37, cells, means);
+        assertTrue(found > 0);
+        assertTrue(found <= grid.cells(level));
+        boolean sawLast = false;
+        for (int i = 0; i < found; i++) {
+            assertTrue(means[i] >= 20 && means[i] < 60);
+            sawLast |= cells[2 * i] == cx && cells[2 * i + 1] == cy;
+        }
+        assertTrue(sawLast);
+    }
+}
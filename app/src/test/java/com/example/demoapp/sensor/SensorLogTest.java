@@ -0,0 +1,121 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SensorLogTest {
+
+    // 2024-03-09 23:00 UTC
+    private static final long START = 1710025200000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static SensorReading reading(long t, float pm25) {
+        float[] values = SensorReading.emptyValues();
+        values[SensorMetric.PM25] = pm25;
+        values[SensorMetric.TEMPERATURE] = 20;
+        return new SensorReading(t, values);
+    }
+
+    @Test
+    public void rollsByDayAndSizeAndQueriesAcrossSegments() throws Exception {
+        File dir = tmp.newFolder();
+        SensorLog log = new SensorLog(dir, 64 * 1024);
+        // Two hours at one sample a second, crossing midnight
+        int n = 7200;
+        for (int i = 0; i < n; i++) log.append(reading(START + i * 1000L, i));
+        log.flush();
+
+        String[] names = dir.list();
+        Arrays.sort(names);
+        assertTrue(names.length > 2);
+        assertTrue(names[0].startsWith("20240309-000"));
+        assertTrue(names[names.length - 1].startsWith("20240310-"));
+
+        long[] t = new long[n];
+        float[] v = new float[n];
+        assertEquals(n, log.copyRange(SensorMetric.PM25, 0, Long.MAX_VALUE, t, v));
+        for (int i = 0; i < n; i++) assertEquals(i, v[i], 0);
+
+        // 10 minutes either side of midnight
+        long from = START + 3000 * 1000L;
+        int count = log.copyRange(SensorMetric.PM25, from, from + 1200 * 1000L, t, v);
+        assertEquals(1200, count);
+        assertEquals(from, t[0]);
+        assertEquals(4199f, v[count - 1], 0);
+
+        assertEquals(0, log.copyRange(SensorMetric.CO2, 0, Long.MAX_VALUE, t, v));
+        assertEquals(10, log.copyRange(SensorMetric.PM25, 0, Long.MAX_VALUE, new long[10], new float[10]));
+    }
+
+    @Test
+    public void tornWriteIsIgnored() throws Exception {
+        File dir = tmp.newFolder();
+        SensorLog log = new SensorLog(dir, SensorLog.DEFAULT_MAX_SEGMENT_BYTES);
+        for (int i = 0; i < 300; i++) log.append(reading(START + i, i));
+        log.flush();
+        File segment = dir.listFiles()[0];
+        // Cut the last record in half, as a crash mid-write would
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - LogSegment.RECORD_BYTES / 2);
+        }
+        SensorLog reopened = new SensorLog(dir, SensorLog.DEFAULT_MAX_SEGMENT_BYTES);
+        long[] t = new long[300];
+        float[] v = new float[300];
+        assertEquals(299, reopened.copyRange(SensorMetric.PM25, 0, Long.MAX_VALUE, t, v));
+
+        // Appends after a restart go to a new segment, never into the old one
+        reopened.append(reading(START + 1000, 1));
+        reopened.flush();
+        assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    public void clockSteppingBackKeepsTimestampsOrdered() throws Exception {
+        File dir = tmp.newFolder();
+        SensorLog log = new SensorLog(dir, SensorLog.DEFAULT_MAX_SEGMENT_BYTES);
+        for (int i = 0; i < 600; i++) log.append(reading(START + i * 1000L, 0));
+        // The wall clock is set back five minutes
+        for (int i = 0; i < 600; i++) log.append(reading(START + 300_000L + i * 1000L, 1));
+        log.flush();
+
+        long[] t = new long[1200];
+        float[] v = new float[1200];
+        assertEquals(1200, log.copyRange(SensorMetric.PM25, 0, Long.MAX_VALUE, t, v));
+        for (int i = 1; i < 1200; i++) assertTrue(t[i] >= t[i - 1]);
+
+        long from = START + 600_000L;
+        int count = log.copyRange(SensorMetric.PM25, from, from + 100_000L, t, v);
+        assertEquals(100, count);
+        assertEquals(from, t[0]);
+        assertEquals(1f, v[0], 0);
+    }
+
+    @Test
+    public void rangeInTheMiddleOfManySegmentsIsFound() throws Exception {
+        File dir = tmp.newFolder();
+        SensorLog log = new SensorLog(dir, 16 * 1024);
+        // Three days at one sample a minute
+        int n = 3 * 24 * 60;
+        for (int i = 0; i < n; i++) log.append(reading(START + i * 60_000L, i % 100));
+        log.flush();
+        assertTrue(dir.list().length > 4);
+
+        long[] t = new long[120];
+        float[] v = new float[120];
+        long from = START + 36 * 3600 * 1000L;
+        int count = log.copyRange(SensorMetric.PM25, from, from + 3600 * 1000L, t, v);
+        assertEquals(60, count);
+        assertEquals(from, t[0]);
+        assertEquals(from + 59 * 60_000L, t[count - 1]);
+        assertEquals((36 * 60) % 100, v[0], 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SensorParserTest {
+
+    @Test
+    public void parsesJson() {
+        SensorReading r = SensorParser.parse("{\"pm25\":12.5,\"PM10\":20,\"temp\":21.4,\"fw\":\"1.2\"}", 42);
+        assertNotNull(r);
+        assertEquals(42, r.timestamp);
+        assertEquals(12.5f, r.get(SensorMetric.PM25), 0);
+        assertEquals(20f, r.get(SensorMetric.PM10), 0);
+        assertEquals(21.4f, r.get(SensorMetric.TEMPERATURE), 1e-6);
+        assertFalse(r.has(SensorMetric.CO2));
+    }
+
+    @Test
+    public void parsesKeyValuePairsWithUnits() {
+        SensorReading r = SensorParser.parse("PM2.5=12.5ug/m3, PM10:20; RH=55 %\nCO2=612ppm"
+                .getBytes(StandardCharsets.UTF_8), 1);
+        assertNotNull(r);
+        assertEquals(12.5f, r.get(SensorMetric.PM25), 0);
+        assertEquals(20f, r.get(SensorMetric.PM10), 0);
+        assertEquals(55f, r.get(SensorMetric.HUMIDITY), 0);
+        assertEquals(612f, r.get(SensorMetric.CO2), 0);
+    }
+
+    @Test
+    public void parsesBareNumbersInMetricOrder() {
+        SensorReading r = SensorParser.parse("4.1, 12.5, 20", 1);
+        assertNotNull(r);
+        assertEquals(4.1f, r.get(SensorMetric.PM1), 0);
+        assertEquals(12.5f, r.get(SensorMetric.PM25), 0);
+        assertEquals(20f, r.get(SensorMetric.PM10), 0);
+        assertFalse(r.has(SensorMetric.VOC));
+    }
+
+    @Test
+    public void rejectsPayloadsWithoutKnownValues() {
+        assertNull(SensorParser.parse("", 1));
+        assertNull(SensorParser.parse("hello", 1));
+        assertNull(SensorParser.parse("{\"battery\":80}", 1));
+        assertNull(SensorParser.parse("{broken", 1));
+    }
+}
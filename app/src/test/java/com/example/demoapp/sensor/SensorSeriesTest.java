@@ -0,0 +1,80 @@
+package com.example.demoapp.sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorSeriesTest {
+
+    private static float[] sample(float pm25) {
+        float[] values = SensorReading.emptyValues();
+        values[SensorMetric.PM25] = pm25;
+        return values;
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        SensorSeries series = new SensorSeries(4);
+        for (int i = 0; i < 10; i++) series.append(i * 1000L, sample(i));
+        assertEquals(4, series.size());
+        assertEquals(6000, series.timestampAt(0));
+        assertEquals(9f, series.valueAt(SensorMetric.PM25, 3), 0);
+    }
+
+    @Test
+    public void windowQueriesAcrossTheWrap() {
+        SensorSeries series = new SensorSeries(100);
+        for (int i = 0; i < 250; i++) series.append(i * 10L, sample(i));
+        // Held: 150..249
+        long[] t = new long[100];
+        float[] v = new float[100];
+        int n = series.copyRange(SensorMetric.PM25, 1995, 2105, t, v);
+        assertEquals(11, n);
+        assertEquals(2000, t[0]);
+        assertEquals(210f, v[10], 0);
+
+        float[] stats = new float[3];
+        assertEquals(10, series.summarize(SensorMetric.PM25, 2000, 2100, stats));
+        assertEquals(200f, stats[0], 0);
+        assertEquals(209f, stats[1], 0);
+        assertEquals(204.5f, stats[2], 1e-4);
+
+        assertEquals(0, series.firstAtOrAfter(0));
+        assertEquals(100, series.firstAtOrAfter(10_000));
+        assertEquals(0, series.summarize(SensorMetric.PM25, 0, 1000, stats));
+        assertTrue(Float.isNaN(stats[2]));
+    }
+
+    @Test
+    public void skipsMissingValuesAndKeepsTimeOrdered() {
+        SensorSeries series = new SensorSeries(8);
+        series.append(1000, sample(1));
+        series.append(2000, SensorReading.emptyValues());
+        // Clock stepped back; held at the previous time
+        series.append(1500, sample(3));
+        assertEquals(2000, series.timestampAt(2));
+
+        long[] t = new long[8];
+        float[] v = new float[8];
+        assertEquals(2, series.copyRange(SensorMetric.PM25, 0, Long.MAX_VALUE, t, v));
+        assertEquals(3f, v[1], 0);
+    }
+
+    @Test
+    public void summarizesTheNewestHourAfterWrapping() {
+        SensorSeries series = new SensorSeries(7200);
+        float[] s = sample(12);
+        // Wraps the ring twice over at one sample a second
+        int n = 7200 * 3;
+        for (int i = 0; i < n; i++) series.append(i * 1000L, s);
+        assertEquals(7200, series.size());
+
+        float[] stats = new float[3];
+        assertEquals(3600, series.summarize(SensorMetric.PM25, (n - 3600) * 1000L, n * 1000L, stats));
+        assertEquals(12f, stats[0], 0);
+        assertEquals(12f, stats[1], 0);
+        assertEquals(12f, stats[2], 0);
+        // Overwritten samples are gone
+        assertEquals(0, series.summarize(SensorMetric.PM25, 0, (n - 7200) * 1000L, stats));
+    }
+}
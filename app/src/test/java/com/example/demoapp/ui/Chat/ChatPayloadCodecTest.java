@@ -0,0 +1,79 @@
+package com.example.demoapp.ui.Chat;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChatPayloadCodecTest {
+
+    private static JSONObject locationMessage() throws Exception {
+        // Same shape ChatFragment.sendMessageWithLocation + sendJsonMessage produce
+        JSONObject json = new JSONObject();
+        json.put("message", "Smoke near the north gate");
+        json.put("latitude", 48.8583701);
+        json.put("longitude", 2.2944813);
+        json.put("location_url", ChatPayload.locationUrl(48.8583701, 2.2944813));
+        json.put("sender_mac", "30:30:F9:77:05:32");
+        json.put("sender_name", "Me");
+        json.put("group_id", "1a2b3c4d");
+        json.put("type", "group_message");
+        json.put("msg_id", "9f3c0e2a1b4d5e6f");
+        json.put("ttl", 4);
+        return json;
+    }
+
+    private static JSONObject[] allTypes() throws Exception {
+        return new JSONObject[]{
+                new JSONObject("{\"type\":\"group_create\",\"group_id\":\"1a2b3c4d\","
+                        + "\"group_name\":\"Group 1a2b3c4d\",\"creator\":\"SELF\","
+                        + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\"}"),
+                new JSONObject("{\"type\":\"group_join\",\"group_id\":\"1a2b3c4d\","
+                        + "\"device_mac\":\"AA:BB:CC:DD:EE:FF\",\"device_name\":\"Ravi\","
+                        + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\"}"),
+                new JSONObject("{\"type\":\"group_invite\",\"group_id\":\"1a2b3c4d\","
+                        + "\"group_name\":\"Group 1a2b3c4d\",\"sender_mac\":\"SELF\",\"sender_name\":\"Me\"}"),
+                locationMessage(),
+                new JSONObject("{\"message\":\"hi\",\"location\":\"unavailable\","
+                        + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\"}")
+        };
+    }
+
+    @Test
+    public void roundTripsEveryMessageType() throws Exception {
+        for (JSONObject json : allTypes()) {
+            ChatPayload payload = ChatPayload.fromJson(json);
+            assertNotNull(json.toString(), payload);
+            JSONObject decoded = ChatPayloadCodec.decode(ChatPayloadCodec.encode(payload)).toJson();
+            assertEquals(json.toString(), json.length(), decoded.length());
+            for (String key : JSONObject.getNames(json)) {
+                assertEquals(key, String.valueOf(json.get(key)), String.valueOf(decoded.get(key)));
+            }
+        }
+    }
+
+    @Test
+    public void unknownKeysFallBackToJson() throws Exception {
+        assertNull(ChatPayload.fromJson(new JSONObject("{\"message\":\"x\",\"extra\":1}")));
+        assertNull(ChatPayload.fromJson(new JSONObject("{\"type\":\"hello\",\"features\":3}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedPayload() throws Exception {
+        byte[] data = ChatPayloadCodec.encode(ChatPayload.fromJson(locationMessage()));
+        ChatPayloadCodec.decode(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test
+    public void binaryIsSmallerThanJsonForEveryMessageType() throws Exception {
+        for (JSONObject json : allTypes()) {
+            int jsonSize = json.toString().getBytes(StandardCharsets.UTF_8).length;
+            int binarySize = ChatPayloadCodec.encode(ChatPayload.fromJson(json)).length;
+            assertTrue(json.optString("type", "chat") + ": " + binarySize + " >= " + jsonSize,
+                    binarySize < jsonSize);
+        }
+    }
+}
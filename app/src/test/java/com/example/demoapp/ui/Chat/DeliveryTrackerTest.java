@@ -0,0 +1,100 @@
+package com.example.demoapp.ui.Chat;
+
+import com.example.demoapp.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DeliveryTrackerTest {
+
+    private static final String A = "AA:AA:AA:AA:AA:AA";
+    private static final String B = "BB:BB:BB:BB:BB:BB";
+
+    private static long sent(DeliveryTracker tracker, String... macs) {
+        long tag = DeliveryTracker.newTag();
+        tracker.track(tag, Arrays.asList(macs));
+        return tag;
+    }
+
+    @Test
+    public void deliveredOnlyOnceEveryPeerAcked() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long tag = sent(tracker, A, B);
+
+        assertNull(tracker.update(tag, A, ChatMessage.DELIVERY_SENT, false, null));
+        DeliveryTracker.Report report = tracker.update(tag, B, ChatMessage.DELIVERY_SENT, false, null);
+        assertNotNull(report);
+        assertEquals(tag, report.tag);
+        assertEquals(ChatMessage.DELIVERY_SENT, report.state);
+
+        assertNull(tracker.update(tag, A, ChatMessage.DELIVERY_DELIVERED, true, null));
+        report = tracker.update(tag, B, ChatMessage.DELIVERY_DELIVERED, true, null);
+        assertNotNull(report);
+        assertEquals(ChatMessage.DELIVERY_DELIVERED, report.state);
+        assertFalse(tracker.isTracked(tag));
+    }
+
+    @Test
+    public void oneFailedPeerFailsTheRow() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long tag = sent(tracker, A, B);
+
+        DeliveryTracker.Report report = tracker.update(tag, A, ChatMessage.DELIVERY_FAILED, true, "A: not acknowledged");
+        assertNotNull(report);
+        assertEquals(ChatMessage.DELIVERY_FAILED, report.state);
+        assertEquals("A: not acknowledged", report.error);
+        // B's later delivery doesn't hide the failure
+        assertNull(tracker.update(tag, B, ChatMessage.DELIVERY_DELIVERED, true, null));
+        assertFalse(tracker.isTracked(tag));
+    }
+
+    @Test
+    public void requeueAfterLostLinkKeepsReason() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long tag = sent(tracker, A);
+
+        tracker.update(tag, A, ChatMessage.DELIVERY_SENT, false, null);
+        DeliveryTracker.Report report = tracker.update(tag, A, ChatMessage.DELIVERY_QUEUED, false, "A: link lost");
+        assertEquals(ChatMessage.DELIVERY_QUEUED, report.state);
+        assertEquals("A: link lost", report.error);
+        report = tracker.update(tag, A, ChatMessage.DELIVERY_DELIVERED, true, null);
+        assertNull(report.error);
+        // Unknown tags are left to the caller
+        assertNull(tracker.update(tag, A, ChatMessage.DELIVERY_DELIVERED, true, null));
+    }
+
+    @Test
+    public void sharedTrackerOutlivesTheScreen() {
+        long tag = sent(DeliveryTracker.shared(), A, B);
+        DeliveryTracker.shared().update(tag, A, ChatMessage.DELIVERY_FAILED, true, "A: not acknowledged");
+
+        // A recreated screen still folds B's report into the failed row
+        assertNull(DeliveryTracker.shared().update(tag, B, ChatMessage.DELIVERY_DELIVERED, true, null));
+        assertFalse(DeliveryTracker.shared().isTracked(tag));
+    }
+
+    @Test
+    public void rowSentOverLinkWithoutAcksIsForgotten() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long tag = sent(tracker, A, B);
+
+        // A doesn't send acks, so sent is all it will ever report
+        tracker.update(tag, A, ChatMessage.DELIVERY_SENT, true, null);
+        assertTrue(tracker.isTracked(tag));
+        DeliveryTracker.Report report = tracker.update(tag, B, ChatMessage.DELIVERY_DELIVERED, true, null);
+        assertEquals(ChatMessage.DELIVERY_SENT, report.state);
+        assertFalse(tracker.isTracked(tag));
+    }
+
+    @Test
+    public void oldestRowsAreDroppedPastTheCap() {
+        DeliveryTracker tracker = new DeliveryTracker();
+        long first = sent(tracker, A);
+        for (int i = 0; i < DeliveryTracker.MAX_ROWS; i++) sent(tracker, A);
+
+        assertFalse(tracker.isTracked(first));
+    }
+}
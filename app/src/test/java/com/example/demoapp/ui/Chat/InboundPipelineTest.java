@@ -0,0 +1,141 @@
+package com.example.demoapp.ui.Chat;
+
+import com.example.demoapp.ble.BleFrame;
+import com.example.demoapp.ble.FrameEncoder;
+import com.example.demoapp.ble.LinkFeatures;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InboundPipelineTest {
+
+    private static final String PEER = "AA:BB:CC:DD:EE:09";
+
+    @Test
+    public void groupMessagesUpdateSharedStateInOrder() {
+        GroupState groups = new GroupState();
+        InboundPipeline pipeline = new InboundPipeline(groups, new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE),
+                PEER);
+
+        InboundEvent created = pipeline.process(
+                "{\"type\":\"group_create\",\"group_id\":\"g1\",\"group_name\":\"Hikers\",\"creator\":\"AA:BB:CC:DD:EE:01\"}");
+        assertTrue(created.groupChanged);
+        assertEquals("Group created: Hikers", created.text);
+        assertEquals("g1", groups.getGroupId());
+
+        InboundEvent joined = pipeline.process(
+                "{\"type\":\"group_join\",\"group_id\":\"g1\",\"device_mac\":\"AA:BB:CC:DD:EE:02\",\"device_name\":\"Bob\"}");
+        assertEquals("Bob joined the group", joined.text);
+        assertEquals(2, groups.memberCount());
+
+        InboundEvent message = pipeline.process(
+                "{\"type\":\"group_message\",\"group_id\":\"g1\",\"sender_mac\":\"AA:BB:CC:DD:EE:02\",\"message\":\"hi\"}");
+        assertEquals(InboundEvent.KIND_MESSAGE, message.kind);
+        assertEquals("Bob", message.senderName);
+        assertEquals("g1", message.groupId);
+        assertTrue(message.isGroupMessage);
+        assertNotNull(message.payload);
+        assertEquals("hi", message.payload.getText());
+    }
+
+    @Test
+    public void helloAndInviteBecomeTheirOwnEvents() {
+        InboundPipeline pipeline = new InboundPipeline(new GroupState(), new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE),
+                PEER);
+
+        InboundEvent hello = pipeline.process("{\"type\":\"hello\",\"features\":255}");
+        assertEquals(InboundEvent.KIND_HELLO, hello.kind);
+        assertEquals(LinkFeatures.SUPPORTED, hello.features);
+
+        InboundEvent invite = pipeline.process("{\"type\":\"group_invite\",\"group_id\":\"g9\"}");
+        assertEquals(InboundEvent.KIND_INVITE, invite.kind);
+        assertEquals("g9", invite.groupId);
+        assertEquals("Group g9", invite.groupName);
+    }
+
+    @Test
+    public void unparseableFramesAreShownRaw() {
+        InboundPipeline pipeline = new InboundPipeline(new GroupState(), new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE),
+                PEER);
+        InboundEvent event = pipeline.process("{not json");
+        assertEquals("RX: {not json", event.text);
+        assertNull(event.payload);
+        assertFalse(event.isGroupMessage);
+    }
+
+    @Test
+    public void selfNamedMembersAreKeptByLinkMac() {
+        GroupState groups = new GroupState();
+        groups.create("g1", "Hikers");
+        groups.putDeviceName(PEER, "Alice");
+        InboundPipeline pipeline = new InboundPipeline(groups, new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE),
+                PEER);
+
+        InboundEvent joined = pipeline.process(
+                "{\"type\":\"group_join\",\"group_id\":\"g1\",\"device_mac\":\"SELF\",\"device_name\":\"Me\"}");
+        assertEquals("Alice joined the group", joined.text);
+        assertTrue(groups.isMember(PEER));
+        assertEquals(2, groups.memberCount());
+    }
+
+    @Test
+    public void relayedMessagesNameTheirOriginator() {
+        GroupState groups = new GroupState();
+        groups.create("g1", "Hikers");
+        groups.putDeviceName(PEER, "Alice");
+        MeshRelay relay = new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE);
+        relay.setEnabled(true);
+        InboundPipeline pipeline = new InboundPipeline(groups, relay, PEER);
+
+        InboundEvent message = pipeline.process("{\"type\":\"group_message\",\"group_id\":\"g1\","
+                + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\",\"message\":\"hi\",\"msg_id\":\"7b\",\"ttl\":4}");
+        // Not shown as this device's own message
+        assertEquals(PEER, message.senderMac);
+        assertEquals("Alice", message.senderName);
+        assertNotNull(message.forward);
+        assertEquals(PEER, message.forward.getSenderMac());
+        assertEquals("Alice", message.forward.getSenderName());
+
+        // The next node, which never saw Alice, still knows who wrote it
+        MeshRelay nextRelay = new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE);
+        nextRelay.setEnabled(true);
+        InboundPipeline next = new InboundPipeline(new GroupState(), nextRelay, "AA:BB:CC:DD:EE:0A");
+        InboundEvent relayed = next.process(InboundFrameDecoder.Frame.binary(message.forward));
+        assertEquals(PEER, relayed.senderMac);
+        assertEquals("Alice", relayed.senderName);
+        assertEquals(PEER, relayed.forward.getSenderMac());
+    }
+
+    @Test
+    public void binaryFramesArriveAsPayloads() {
+        GroupState groups = new GroupState();
+        groups.enter("g1", "Hikers");
+        InboundPipeline pipeline = new InboundPipeline(groups, new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE),
+                PEER);
+        ChatPayload sent = new ChatPayload.Builder(ChatPayload.TYPE_GROUP_MESSAGE)
+                .sender("AA:BB:CC:DD:EE:02", "Bob")
+                .group("g1", null)
+                .text("binary hi")
+                .build();
+
+        InboundFrameDecoder decoder = new InboundFrameDecoder();
+        List<InboundFrameDecoder.Frame> frames = new ArrayList<>();
+        for (byte[] chunk : new FrameEncoder().encode(ChatPayloadCodec.encode(sent), BleFrame.FLAG_BINARY, 20)) {
+            frames.addAll(decoder.feed(chunk));
+        }
+        assertEquals(1, frames.size());
+        assertNull(frames.get(0).json);
+        assertNotNull(frames.get(0).payload);
+
+        InboundEvent message = pipeline.process(frames.get(0));
+        assertEquals(InboundEvent.KIND_MESSAGE, message.kind);
+        assertEquals("binary hi", message.text);
+        assertEquals("g1", message.groupId);
+        assertTrue(message.isGroupMessage);
+        assertSame(frames.get(0).payload, message.payload);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demoapp.ui.Chat;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonFrameReassemblerTest {
+
+    private static List<String> feedInChunks(JsonFrameReassembler r, String text, int chunkSize) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        List<String> frames = new ArrayList<>();
+        for (int i = 0; i < data.length; i += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(data, i, Math.min(data.length, i + chunkSize));
+            frames.addAll(r.feed(chunk));
+        }
+        return frames;
+    }
+
+    @Test
+    public void emitsFrameOnlyWhenComplete() {
+        JsonFrameReassembler r = new JsonFrameReassembler();
+        assertTrue(r.feed("{\"message\":\"hi".getBytes(StandardCharsets.UTF_8)).isEmpty());
+        assertEquals(Arrays.asList("{\"message\":\"hi\"}"),
+                r.feed("\"}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, r.pendingBytes());
+    }
+
+    @Test
+    public void ignoresBracesAndEscapedQuotesInsideStrings() {
+        String json = "{\"message\":\"a } { \\\" }}\",\"n\":{\"x\":1}}";
+        assertEquals(Arrays.asList(json), feedInChunks(new JsonFrameReassembler(), json, 3));
+    }
+
+    @Test
+    public void decodesMultiByteCharactersSplitAcrossChunks() {
+        String json = "{\"message\":\"caf\u00e9 \u2603 \ud83d\ude00\"}";
+        for (int size = 1; size < 8; size++) {
+            assertEquals(Arrays.asList(json), feedInChunks(new JsonFrameReassembler(), json, size));
+        }
+    }
+
+    @Test
+    public void emitsBackToBackFramesFromOneChunk() {
+        List<String> frames = new JsonFrameReassembler()
+                .feed("{\"a\":1}\n{\"b\":2}{\"c\"".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"b\":2}"), frames);
+    }
+
+    @Test
+    public void dropsOversizedFrameAndResyncs() {
+        JsonFrameReassembler r = new JsonFrameReassembler(16);
+        List<String> frames = feedInChunks(r, "{\"message\":\"way too long\"}{\"ok\":1}", 5);
+        assertEquals(Arrays.asList("{\"ok\":1}"), frames);
+        assertEquals(1, r.getDroppedFrames());
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.demoapp.ui.Chat;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Floods one message through simulated meshes of {@link MeshRelay} nodes and
+ * checks delivery ratio and duplicate traffic.
+ */
+public class MeshRelaySimulationTest {
+
+    private static final class Result {
+        int delivered;
+        int transmissions;
+        int duplicates;
+        int[] forwardsPerNode;
+
+        double deliveryRatio(int nodes) {
+            // The origin already has its own message
+            return (double) delivered / (nodes - 1);
+        }
+    }
+
+    private static final class Hop {
+        final int from;
+        final int to;
+        final ChatPayload payload;
+
+        Hop(int from, int to, ChatPayload payload) {
+            this.from = from;
+            this.to = to;
+            this.payload = payload;
+        }
+    }
+
+    private static List<List<Integer>> line(int n) {
+        List<List<Integer>> graph = empty(n);
+        for (int i = 0; i + 1 < n; i++) link(graph, i, i + 1);
+        return graph;
+    }
+
+    private static List<List<Integer>> ring(int n) {
+        List<List<Integer>> graph = line(n);
+        link(graph, n - 1, 0);
+        return graph;
+    }
+
+    private static List<List<Integer>> random(int n, int extraLinks, Random rnd) {
+        List<List<Integer>> graph = empty(n);
+        // A random spanning tree keeps the mesh connected, extra links add loops
+        for (int i = 1; i < n; i++) link(graph, i, rnd.nextInt(i));
+        for (int i = 0; i < extraLinks; i++) {
+            int a = rnd.nextInt(n);
+            int b = rnd.nextInt(n);
+            if (a != b && !graph.get(a).contains(b)) link(graph, a, b);
+        }
+        return graph;
+    }
+
+    private static List<List<Integer>> empty(int n) {
+        List<List<Integer>> graph = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) graph.add(new ArrayList<>());
+        return graph;
+    }
+
+    private static void link(List<List<Integer>> graph, int a, int b) {
+        graph.get(a).add(b);
+        graph.get(b).add(a);
+    }
+
+    /** Sends one message from node 0; every hop is lost with probability {@code loss}. */
+    private static Result flood(List<List<Integer>> graph, int ttl, double loss, long seed) throws Exception {
+        int n = graph.size();
+        Random rnd = new Random(seed);
+        MeshRelay[] nodes = new MeshRelay[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new MeshRelay(MeshRelay.DEFAULT_CACHE_SIZE, new Random(seed + i));
+            nodes[i].setEnabled(true);
+        }
+        JSONObject json = new JSONObject();
+        json.put("type", "group_message");
+        json.put("message", "PM2.5 spike at the bus stop");
+        json.put("sender_mac", "SELF");
+        json.put("sender_name", "Me");
+        json.put("group_id", "1a2b3c4d");
+        json.put("msg_id", Long.toHexString(nodes[0].newMessageId()));
+        json.put("ttl", ttl);
+        ChatPayload original = ChatPayload.fromJson(json);
+        assertNotNull(original);
+
+        Result result = new Result();
+        result.forwardsPerNode = new int[n];
+        Deque<Hop> inFlight = new ArrayDeque<>();
+        for (int peer : graph.get(0)) {
+            result.transmissions++;
+            if (rnd.nextDouble() >= loss) inFlight.add(new Hop(0, peer, original));
+        }
+        while (!inFlight.isEmpty()) {
+            Hop hop = inFlight.poll();
+            MeshRelay node = nodes[hop.to];
+            // Same order as InboundPipeline: drop seen ids, then pick the copy to pass on
+            if (!node.firstSeen(hop.payload)) {
+                result.duplicates++;
+                continue;
+            }
+            result.delivered++;
+            ChatPayload forward = node.forwardCopy(hop.payload);
+            if (forward == null) continue;
+            result.forwardsPerNode[hop.to]++;
+            for (int peer : graph.get(hop.to)) {
+                if (peer == hop.from) continue;
+                result.transmissions++;
+                if (rnd.nextDouble() >= loss) inFlight.add(new Hop(hop.to, peer, forward));
+            }
+        }
+        return result;
+    }
+
+    private static int edges(List<List<Integer>> graph) {
+        int ends = 0;
+        for (List<Integer> peers : graph) ends += peers.size();
+        return ends / 2;
+    }
+
+    @Test
+    public void lineDeliversEverywhereWhenTtlCoversTheHops() throws Exception {
+        int n = MeshRelay.DEFAULT_TTL + 1;
+        Result r = flood(line(n), MeshRelay.DEFAULT_TTL, 0, 1);
+        assertEquals(1.0, r.deliveryRatio(n), 0);
+        assertEquals(0, r.duplicates);
+        assertEquals(n - 1, r.transmissions);
+    }
+
+    @Test
+    public void ttlStopsTheMessage() throws Exception {
+        Result r = flood(line(10), 3, 0, 1);
+        assertEquals(3, r.delivered);
+    }
+
+    @Test
+    public void ringDoesNotLoop() throws Exception {
+        int n = 12;
+        List<List<Integer>> graph = ring(n);
+        Result r = flood(graph, n, 0, 1);
+        assertEquals(1.0, r.deliveryRatio(n), 0);
+        // Both directions meet once on the far side; that copy is dropped, not resent
+        assertTrue(r.duplicates <= 2);
+        assertTrue(r.duplicates <= edges(graph));
+        for (int forwards : r.forwardsPerNode) assertTrue(forwards <= 1);
+    }
+
+    @Test
+    public void randomMeshForwardsAtMostOncePerNode() throws Exception {
+        Random rnd = new Random(42);
+        int n = 30;
+        for (double loss : new double[]{0, 0.1, 0.3}) {
+            List<List<Integer>> graph = random(n, 20, rnd);
+            Result r = flood(graph, 8, loss, 7);
+            for (int forwards : r.forwardsPerNode) assertTrue(forwards <= 1);
+            // Each node sends at most once to each neighbour, plus the origin's sends
+            assertTrue(r.transmissions <= 2 * edges(graph));
+            // No more than one dropped copy per link for the one message flooded
+            assertTrue(r.duplicates <= edges(graph));
+            if (loss == 0) assertEquals(1.0, r.deliveryRatio(n), 0);
+        }
+    }
+
+    @Test
+    public void relayOffStillSuppressesDuplicates() throws Exception {
+        MeshRelay relay = new MeshRelay(2);
+        ChatPayload payload = ChatPayload.fromJson(new JSONObject("{\"type\":\"group_message\","
+                + "\"message\":\"hi\",\"sender_mac\":\"SELF\",\"sender_name\":\"Me\",\"group_id\":\"1a2b3c4d\","
+                + "\"msg_id\":\"2a\",\"ttl\":4}"));
+        assertNotNull(payload);
+        assertTrue(relay.firstSeen(payload));
+        assertFalse(relay.firstSeen(payload));
+        assertNull(relay.forwardCopy(payload));
+    }
+
+    @Test
+    public void sharedRelayRecognizesCopiesAfterTheScreenIsRecreated() throws Exception {
+        ChatPayload payload = ChatPayload.fromJson(new JSONObject("{\"type\":\"group_message\","
+                + "\"message\":\"hi\",\"sender_mac\":\"AA:BB:CC:DD:EE:01\",\"group_id\":\"1a2b3c4d\","
+                + "\"msg_id\":\"3b\",\"ttl\":4}"));
+        assertNotNull(payload);
+        assertTrue(MeshRelay.shared().firstSeen(payload));
+        // A copy that looped back after navigation is still dropped
+        assertFalse(MeshRelay.shared().firstSeen(payload));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demoapp.ui.Chat;
+
+import com.example.demoapp.ble.FrameBatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private OutboundQueue queue() {
+        return new OutboundQueue(new File(tmp.getRoot(), "peer.bin"));
+    }
+
+    @Test
+    public void batchIsSizedByUtf8BytesAndItemOverhead() {
+        OutboundQueue queue = queue();
+        // 10 chars but 20 UTF-8 bytes each
+        String text = "éééééééééé";
+        for (int i = 0; i < 3; i++) queue.offer(0, text, null, OutboundQueue.PRIORITY_CHAT);
+
+        int item = FrameBatch.packedSize(20);
+        assertEquals(2, queue.peekBatch(2 * item, false).size());
+        assertEquals(1, queue.peekBatch(2 * item - 1, false).size());
+    }
+
+    @Test
+    public void binaryEntriesAreSizedByTheirBinaryForm() {
+        OutboundQueue queue = queue();
+        for (int i = 0; i < 4; i++) {
+            queue.offer(0, "{\"message\":\"a fairly long chat line\"}", new byte[8], OutboundQueue.PRIORITY_CHAT);
+        }
+
+        int maxBytes = 4 * FrameBatch.packedSize(8);
+        assertEquals(4, queue.peekBatch(maxBytes, true).size());
+        assertEquals(1, queue.peekBatch(maxBytes, false).size());
+    }
+
+    @Test
+    public void batchStopsAtPriorityChange() {
+        OutboundQueue queue = queue();
+        queue.offer(0, "a", null, OutboundQueue.PRIORITY_CHAT);
+        queue.offer(0, "b", null, OutboundQueue.PRIORITY_CONTROL);
+        queue.offer(0, "c", null, OutboundQueue.PRIORITY_CHAT);
+
+        List<OutboundQueue.Entry> batch = queue.peekBatch(100, false);
+        assertEquals(1, batch.size());
+        assertEquals("b", batch.get(0).payload);
+        queue.removeAll(batch);
+        assertEquals(2, queue.peekBatch(100, false).size());
+    }
+
+    @Test
+    public void storedEntriesLoadAheadOfNewOnes() throws Exception {
+        File file = new File(tmp.getRoot(), "peer.bin");
+        ExecutorService main = Executors.newSingleThreadExecutor();
+        try {
+            OutboundQueue earlier = new OutboundQueue(file);
+            earlier.offer(0, "old", null, OutboundQueue.PRIORITY_CHAT);
+
+            CountDownLatch loaded = new CountDownLatch(1);
+            OutboundQueue queue = new OutboundQueue(file);
+            main.submit(() -> {
+                queue.load(Schedulers.from(main));
+                queue.whenLoaded(loaded::countDown);
+                queue.offer(0, "new", null, OutboundQueue.PRIORITY_CHAT);
+            }).get();
+            assertTrue(loaded.await(5, TimeUnit.SECONDS));
+
+            List<OutboundQueue.Entry> batch = main.submit(() -> queue.peekBatch(100, false)).get();
+            assertEquals(2, batch.size());
+            assertEquals("old", batch.get(0).payload);
+            assertEquals("new", batch.get(1).payload);
+        } finally {
+            main.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demoapp.ui.Chat;
+
+import com.example.demoapp.ble.FrameBatch;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.*;
+
+public class PayloadCompressorTest {
+
+    private static final String LOCATION_JSON = "{\"message\":\"Smoke near the north gate\","
+            + "\"latitude\":48.8583701,\"longitude\":2.2944813,"
+            + "\"location_url\":\"https://www.openstreetmap.org/?mlat=48.8583701&mlon=2.2944813\","
+            + "\"sender_mac\":\"SELF\",\"sender_name\":\"Me\",\"group_id\":\"1a2b3c4d\",\"type\":\"group_message\"}";
+
+    private static final String JOIN_JSON = "{\"type\":\"group_join\",\"group_id\":\"1a2b3c4d\","
+            + "\"device_mac\":\"SELF\",\"device_name\":\"Me\",\"sender_mac\":\"SELF\",\"sender_name\":\"Me\"}";
+
+    private static byte[] binaryBatch() throws Exception {
+        List<FrameBatch.Item> items = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            JSONObject json = new JSONObject(LOCATION_JSON);
+            json.put("message", "reading " + i + " ok");
+            items.add(new FrameBatch.Item(1, ChatPayloadCodec.encode(ChatPayload.fromJson(json))));
+        }
+        return FrameBatch.pack(items);
+    }
+
+    @Test
+    public void roundTripsAboveThreshold() throws Exception {
+        PayloadCompressor compressor = new PayloadCompressor();
+        byte[] data = LOCATION_JSON.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compressor.compress(data);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < data.length / 2);
+        assertArrayEquals(data, new PayloadCompressor().decompress(compressed, 1024));
+    }
+
+    @Test
+    public void skipsSmallPayloads() {
+        assertNull(new PayloadCompressor().compress("{\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void refusesToInflatePastLimit() throws Exception {
+        byte[] big = new byte[4096];
+        byte[] compressed = new PayloadCompressor().compress(big);
+        new PayloadCompressor().decompress(compressed, 1000);
+    }
+
+    @Test
+    public void shrinksLargeMessagesAndRoundTripsExactly() throws Exception {
+        byte[][] large = {LOCATION_JSON.getBytes(StandardCharsets.UTF_8), binaryBatch()};
+        for (byte[] data : large) {
+            PayloadCompressor compressor = new PayloadCompressor(0);
+            byte[] compressed = compressor.compress(data);
+            assertNotNull(compressed);
+            assertTrue(compressed.length + " >= " + data.length, compressed.length < data.length);
+            assertArrayEquals(data, compressor.decompress(compressed, 4096));
+        }
+
+        // Small messages may not shrink, but whatever comes out must inflate back unchanged
+        byte[] join = JOIN_JSON.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = new PayloadCompressor(0).compress(join);
+        if (compressed != null) assertArrayEquals(join, new PayloadCompressor().decompress(compressed, 4096));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demoapp.ui.Map;
+
+import com.example.demoapp.sensor.PollutionGrid;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationClustersTest {
+
+    private static LocationClusters clustersOf(double[][] latLon) {
+        int n = latLon.length;
+        long[] ids = new long[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+            xs[i] = PollutionGrid.mercatorX(latLon[i][1]);
+            ys[i] = PollutionGrid.mercatorY(latLon[i][0]);
+        }
+        return new LocationClusters(ids, xs, ys, n);
+    }
+
+    @Test
+    public void mergesWhenZoomedOutAndSplitsWhenZoomedIn() {
+        // Two messages a street apart in Paris, one in Berlin
+        LocationClusters clusters = clustersOf(new double[][]{
+                {48.8583, 2.2944}, {48.8590, 2.2960}, {52.5200, 13.4050}});
+        assertEquals(3, clusters.points());
+
+        LocationClusters.Level far = clusters.level(5);
+        assertEquals(2, far.size);
+        assertEquals(2, far.count[0]);
+        // The newest point stands for the cluster
+        assertEquals(2, far.id[0]);
+        assertTrue(far.maxX[0] > far.minX[0]);
+
+        LocationClusters.Level near = clusters.level(LocationClusters.MAX_ZOOM + 3);
+        assertEquals(3, near.size);
+        assertEquals(1, near.count[1]);
+    }
+
+    @Test
+    public void levelCountsNeverGrowWhenZoomingOut() {
+        Random random = new Random(5);
+        double[][] points = new double[2000][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[]{48 + random.nextDouble(), 2 + random.nextDouble()};
+        }
+        LocationClusters clusters = clustersOf(points);
+        int previous = Integer.MAX_VALUE;
+        for (int z = LocationClusters.MAX_ZOOM; z >= LocationClusters.MIN_ZOOM; z--) {
+            LocationClusters.Level level = clusters.level(z);
+            int total = 0;
+            for (int c = 0; c < level.size; c++) total += level.count[c];
+            assertEquals(points.length, total);
+            assertTrue(level.size <= previous);
+            previous = level.size;
+        }
+        assertEquals(1, clusters.level(LocationClusters.MIN_ZOOM).size);
+    }
+
+    @Test
+    public void emptyHasEmptyLevels() {
+        assertEquals(0, LocationClusters.empty().level(12).size);
+    }
+}
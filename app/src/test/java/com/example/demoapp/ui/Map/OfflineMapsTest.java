@@ -0,0 +1,44 @@
+package com.example.demoapp.ui.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class OfflineMapsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void write(File file, int bytes) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[bytes]);
+        }
+    }
+
+    @Test
+    public void findsNonEmptyMapFilesAcrossDirectories() throws Exception {
+        File external = tmp.newFolder("external");
+        File internal = tmp.newFolder("internal");
+        write(new File(external, "germany.map"), 10);
+        write(new File(internal, "france.MAP"), 10);
+        write(new File(internal, "empty.map"), 0);
+        write(new File(internal, "notes.txt"), 10);
+
+        File[] found = OfflineMaps.find(external, null, internal, new File(internal, "missing"));
+        assertEquals(2, found.length);
+        assertEquals("france.MAP", found[0].getName());
+        assertEquals("germany.map", found[1].getName());
+    }
+
+    @Test
+    public void prefersRasterOnlineAndVectorOffline() {
+        assertEquals(OfflineMaps.MODE_RASTER, OfflineMaps.modeFor(true, true));
+        assertEquals(OfflineMaps.MODE_VECTOR, OfflineMaps.modeFor(false, true));
+        assertEquals(OfflineMaps.MODE_RASTER_CACHED, OfflineMaps.modeFor(false, false));
+    }
+}